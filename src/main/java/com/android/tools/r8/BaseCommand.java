@@ -231,6 +231,12 @@ abstract class BaseCommand {
       return self();
     }
 
+    /** Set the startup-profile file, listing the classes and methods used during startup. */
+    public B setStartupProfileFile(Path file) {
+      app.setStartupProfileFile(file);
+      return self();
+    }
+
     /** True if the print-help flag is enabled. */
     public boolean isPrintHelp() {
       return printHelp;
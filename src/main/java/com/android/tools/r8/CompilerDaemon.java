@@ -0,0 +1,256 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import static com.android.tools.r8.utils.FileUtils.isArchive;
+
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.utils.LibraryClassSnapshot;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Long-running compiler process serving D8 and R8 requests.
+ *
+ * <p>Starting a fresh JVM for every compilation means re-reading the library archives and running
+ * the compiler without a warm JIT, which for small incremental compilations costs more than the
+ * compilation itself. The daemon keeps a single thread pool and the content of the library
+ * archives, as {@link LibraryClassSnapshot}s, alive across requests. Lambda class caches given
+ * with {@code --lambda-cache} are also kept in memory and shared by the requests using them. All
+ * program state (options, item factory, application) is still created per request, so requests
+ * are isolated from each other.
+ *
+ * <p>Requests are processed one at a time. Each request is a single line:
+ *
+ * <pre>
+ *   d8 [d8 options] &lt;input-files&gt;
+ *   r8 [r8 options] &lt;input-files&gt;
+ *   quit
+ * </pre>
+ *
+ * and is answered by a single line, either {@code OK <milliseconds>} or {@code ERROR <message>}.
+ * Requests are read from stdin, or from connections to a loopback socket if a port is given.
+ */
+public final class CompilerDaemon {
+
+  static final String USAGE_MESSAGE = String.join("\n", ImmutableList.of(
+      "Usage: compilerdaemon [options]",
+      " where options are:",
+      "  --port <port>       # Serve requests on a loopback socket instead of stdin.",
+      "  --threads <number>  # Number of compilation threads shared by all requests.",
+      "  --help              # Print this message."));
+
+  private static final String QUIT = "quit";
+
+  private final ExecutorService executor;
+
+  // Library archive content keyed by the archive path. An entry is only reused as long as the
+  // archive has not been modified since it was read.
+  private final Map<Path, CachedLibrary> libraries = new HashMap<>();
+
+  // Lambda class caches keyed by the path of the cache file. The file is only read by the first
+  // request using it, and written by every request.
+  private final Map<Path, LambdaClassCache> lambdaClassCaches = new HashMap<>();
+
+  private static class CachedLibrary {
+    final long lastModified;
+    final ClassFileResourceProvider provider;
+
+    CachedLibrary(long lastModified, ClassFileResourceProvider provider) {
+      this.lastModified = lastModified;
+      this.provider = provider;
+    }
+  }
+
+  public CompilerDaemon(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Process a single request line and return the response line.
+   *
+   * <p>Returns {@code null} if the request asks the daemon to stop.
+   */
+  public synchronized String process(String request) {
+    String[] words = request.trim().split("\\s+");
+    if (words.length == 0 || words[0].isEmpty()) {
+      return "ERROR Empty request";
+    }
+    String tool = words[0];
+    if (tool.equals(QUIT)) {
+      return null;
+    }
+    List<String> args = new ArrayList<>();
+    List<Path> libraryArchives = new ArrayList<>();
+    for (int i = 1; i < words.length; i++) {
+      if (words[i].equals("--lib") && i + 1 < words.length && isArchive(Paths.get(words[i + 1]))) {
+        libraryArchives.add(Paths.get(words[++i]));
+      } else {
+        args.add(words[i]);
+      }
+    }
+    long start = System.nanoTime();
+    try {
+      switch (tool) {
+        case "d8":
+          runD8(args.toArray(new String[args.size()]), libraryArchives);
+          break;
+        case "r8":
+          runR8(args.toArray(new String[args.size()]), libraryArchives);
+          break;
+        default:
+          return "ERROR Unknown tool: " + tool;
+      }
+    } catch (CompilationException | ProguardRuleParserException e) {
+      return "ERROR Compilation failed: " + e.getMessage();
+    } catch (IOException e) {
+      return "ERROR Failed to read or write application files: " + e.getMessage();
+    } catch (RuntimeException e) {
+      Throwable cause = e.getCause() == null ? e : e.getCause();
+      cause.printStackTrace();
+      return "ERROR Compilation failed with an internal error: " + cause;
+    }
+    return "OK " + (System.nanoTime() - start) / 1000000;
+  }
+
+  private void runD8(String[] args, List<Path> libraryArchives)
+      throws IOException, CompilationException {
+    D8Command.Builder builder = D8Command.parse(args);
+    for (Path archive : libraryArchives) {
+      builder.addLibraryResourceProvider(getLibrary(archive));
+    }
+    if (builder.getLambdaClassCacheFile() != null) {
+      builder.setLambdaClassCache(getLambdaClassCache(builder.getLambdaClassCacheFile()));
+    }
+    if (builder.getOutputPath() == null) {
+      builder.setOutputPath(Paths.get("."));
+    }
+    D8.run(builder.build(), executor);
+  }
+
+  private void runR8(String[] args, List<Path> libraryArchives)
+      throws IOException, CompilationException, ProguardRuleParserException {
+    R8Command.Builder builder = R8Command.parse(args);
+    for (Path archive : libraryArchives) {
+      builder.getAppBuilder().addLibraryResourceProvider(getLibrary(archive));
+    }
+    if (builder.getOutputPath() == null) {
+      builder.setOutputPath(Paths.get("."));
+    }
+    R8.run(builder.build(), executor);
+  }
+
+  private ClassFileResourceProvider getLibrary(Path archive) throws IOException {
+    Path key = archive.toAbsolutePath().normalize();
+    long lastModified = Files.getLastModifiedTime(key).toMillis();
+    CachedLibrary library = libraries.get(key);
+    if (library == null || library.lastModified != lastModified) {
+      try {
+        library = new CachedLibrary(lastModified,
+            LibraryClassSnapshot.fromArchives(Collections.singletonList(key), executor));
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getMessage(), e.getCause());
+      }
+      libraries.put(key, library);
+    }
+    return library.provider;
+  }
+
+  private LambdaClassCache getLambdaClassCache(Path file) throws IOException {
+    Path key = file.toAbsolutePath().normalize();
+    LambdaClassCache cache = lambdaClassCaches.get(key);
+    if (cache == null) {
+      cache = LambdaClassCache.read(key);
+      lambdaClassCaches.put(key, cache);
+    }
+    return cache;
+  }
+
+  /** Serve requests from {@code input} until it is exhausted or a quit request is seen. */
+  public boolean serve(InputStream input, OutputStream output) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    PrintStream writer = new PrintStream(output, true, StandardCharsets.UTF_8.name());
+    String request;
+    while ((request = reader.readLine()) != null) {
+      if (request.trim().isEmpty()) {
+        continue;
+      }
+      String response = process(request);
+      if (response == null) {
+        return false;
+      }
+      writer.println(response);
+    }
+    return true;
+  }
+
+  private static void serve(CompilerDaemon daemon, int port) throws IOException {
+    try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+      boolean running = true;
+      while (running) {
+        try (Socket socket = server.accept()) {
+          running = daemon.serve(socket.getInputStream(), socket.getOutputStream());
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = -1;
+    int threads = -1;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i].trim();
+      if (arg.equals("--port")) {
+        port = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--help")) {
+        System.out.println(USAGE_MESSAGE);
+        return;
+      } else {
+        System.err.println("Unknown option: " + arg);
+        System.err.println(USAGE_MESSAGE);
+        System.exit(1);
+      }
+    }
+    if (threads == -1) {
+      threads = Integer.max(1, Integer.min(Runtime.getRuntime().availableProcessors(), 16) / 2);
+    }
+    ExecutorService executor = ThreadUtils.getExecutorService(threads);
+    try {
+      CompilerDaemon daemon = new CompilerDaemon(executor);
+      if (port >= 0) {
+        serve(daemon, port);
+      } else {
+        // Responses go to stdout, so divert any output from the compilers to stderr.
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        daemon.serve(System.in, out);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
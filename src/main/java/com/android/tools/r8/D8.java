@@ -20,6 +20,7 @@ import com.android.tools.r8.utils.Timing;
 import java.io.IOException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -61,8 +62,10 @@ public final class D8 {
    */
   public static D8Output run(D8Command command) throws IOException {
     InternalOptions options = command.getInternalOptions();
+    readLambdaClassCache(command, options);
     CompilationResult result = runForTesting(command.getInputApp(), options);
     assert result != null;
+    writeLambdaClassCache(command, options);
     D8Output output = new D8Output(result.androidApp, command.getOutputMode());
     if (command.getOutputPath() != null) {
       output.write(command.getOutputPath());
@@ -82,9 +85,11 @@ public final class D8 {
    */
   public static D8Output run(D8Command command, ExecutorService executor) throws IOException {
     InternalOptions options = command.getInternalOptions();
+    readLambdaClassCache(command, options);
     CompilationResult result = runForTesting(
         command.getInputApp(), options, executor);
     assert result != null;
+    writeLambdaClassCache(command, options);
     D8Output output = new D8Output(result.androidApp, command.getOutputMode());
     if (command.getOutputPath() != null) {
       output.write(command.getOutputPath());
@@ -92,6 +97,23 @@ public final class D8 {
     return output;
   }
 
+  // A cache given to the command is used as is, otherwise it is read from the cache file, if any.
+  private static void readLambdaClassCache(D8Command command, InternalOptions options)
+      throws IOException {
+    Path file = command.getLambdaClassCacheFile();
+    if (options.lambdaClassCache == null && file != null) {
+      options.lambdaClassCache = LambdaClassCache.read(file);
+    }
+  }
+
+  private static void writeLambdaClassCache(D8Command command, InternalOptions options)
+      throws IOException {
+    Path file = command.getLambdaClassCacheFile();
+    if (file != null) {
+      options.lambdaClassCache.write(file);
+    }
+  }
+
   private static void run(String[] args) throws IOException, CompilationException {
     D8Command.Builder builder = D8Command.parse(args);
     if (builder.getOutputPath() == null) {
@@ -103,7 +125,7 @@ public final class D8 {
       return;
     }
     if (command.isPrintVersion()) {
-      System.out.println("D8 v0.0.1");
+      System.out.println("D8 " + Version.LABEL);
       return;
     }
     run(command);
@@ -162,7 +184,9 @@ public final class D8 {
       Timing timing = new Timing("DX timer");
       DexApplication app = new ApplicationReader(inputApp, options, timing).read(executor);
       AppInfo appInfo = new AppInfo(app);
-      app = optimize(app, appInfo, options, timing, executor);
+      final CfgPrinter printer = options.printCfg ? new CfgPrinter() : null;
+      IRConverter converter = new IRConverter(timing, app, appInfo, options, printer);
+      app = optimize(converter, options, printer, executor);
 
       // If a method filter is present don't produce output since the application is likely partial.
       if (options.hasMethodsFilter()) {
@@ -171,12 +195,11 @@ public final class D8 {
         return null;
       }
 
+      AndroidApp androidApp =
+          new ApplicationWriter(app, appInfo, options, NamingLens.getIdentityLens(), null)
+              .write(null, executor);
       CompilationResult output =
-          new CompilationResult(
-              new ApplicationWriter(app, appInfo, options, NamingLens.getIdentityLens(), null)
-                .write(null, executor),
-                app,
-                appInfo);
+          new CompilationResult(converter.updateLambdaClassCache(androidApp), app, appInfo);
 
       options.printWarnings();
       return output;
@@ -190,13 +213,10 @@ public final class D8 {
   }
 
   private static DexApplication optimize(
-      DexApplication application, AppInfo appInfo, InternalOptions options,
-      Timing timing, ExecutorService executor)
+      IRConverter converter, InternalOptions options, CfgPrinter printer,
+      ExecutorService executor)
       throws IOException, ExecutionException {
-    final CfgPrinter printer = options.printCfg ? new CfgPrinter() : null;
-
-    IRConverter converter = new IRConverter(timing, application, appInfo, options, printer);
-    application = converter.convertToDex(executor);
+    DexApplication application = converter.convertToDex(executor);
 
     if (options.printCfg) {
       if (options.printCfgFile == null || options.printCfgFile.isEmpty()) {
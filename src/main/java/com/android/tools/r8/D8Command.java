@@ -36,6 +36,9 @@ public class D8Command extends BaseCommand {
    * Builder for constructing a D8Command.
    */
   public static class Builder extends BaseCommand.Builder<D8Command, Builder> {
+    private LambdaClassCache lambdaClassCache = null;
+    private Path lambdaClassCacheFile = null;
+
     private Builder() {
       super(CompilationMode.DEBUG);
     }
@@ -88,6 +91,31 @@ public class D8Command extends BaseCommand {
       return this;
     }
 
+    /**
+     * Share compiled lambda classes with other compilations using the same cache.
+     *
+     * <p>The cache is only used when producing a dex file per class.
+     */
+    public Builder setLambdaClassCache(LambdaClassCache cache) {
+      this.lambdaClassCache = cache;
+      return this;
+    }
+
+    /**
+     * Read compiled lambda classes from {@code file} before compiling and write them back after.
+     *
+     * <p>If a cache is also set, the cache is used instead of reading the file.
+     */
+    public Builder setLambdaClassCacheFile(Path file) {
+      this.lambdaClassCacheFile = file;
+      return this;
+    }
+
+    /** Get the file the lambda class cache is written to. */
+    public Path getLambdaClassCacheFile() {
+      return lambdaClassCacheFile;
+    }
+
     @Override
     Builder self() {
       return this;
@@ -104,7 +132,8 @@ public class D8Command extends BaseCommand {
 
       validate();
       return new D8Command(
-          getAppBuilder().build(), getOutputPath(), getOutputMode(), getMode(), getMinApiLevel());
+          getAppBuilder().build(), getOutputPath(), getOutputMode(), getMode(), getMinApiLevel(),
+          lambdaClassCache, lambdaClassCacheFile);
     }
   }
 
@@ -120,6 +149,11 @@ public class D8Command extends BaseCommand {
       "  --classpath <file>  # Add <file> as a classpath resource.",
       "  --min-api           # Minimum Android API level compatibility",
       "  --file-per-class    # Produce a separate dex file per class",
+      "  --startup-profile <file>",
+      "                      # Lay out the classes and methods listed in <file> for startup.",
+      "  --lambda-cache <file>",
+      "                      # Reuse lambda classes compiled with --file-per-class",
+      "                      # and kept in <file>.",
       "  --version           # Print the version of d8.",
       "  --help              # Print this message."));
 
@@ -171,6 +205,10 @@ public class D8Command extends BaseCommand {
         builder.addClasspathFiles(Paths.get(args[++i]));
       } else if (arg.equals("--min-api")) {
         builder.setMinApiLevel(Integer.valueOf(args[++i]));
+      } else if (arg.equals("--startup-profile")) {
+        builder.setStartupProfileFile(Paths.get(args[++i]));
+      } else if (arg.equals("--lambda-cache")) {
+        builder.setLambdaClassCacheFile(Paths.get(args[++i]));
       } else {
         if (arg.startsWith("--")) {
           throw new CompilationException("Unknown option: " + arg);
@@ -181,17 +219,30 @@ public class D8Command extends BaseCommand {
     return builder.setOutputPath(outputPath);
   }
 
+  private final LambdaClassCache lambdaClassCache;
+  private final Path lambdaClassCacheFile;
+
   private D8Command(
       AndroidApp inputApp,
       Path outputPath,
       OutputMode outputMode,
       CompilationMode mode,
-      int minApiLevel) {
+      int minApiLevel,
+      LambdaClassCache lambdaClassCache,
+      Path lambdaClassCacheFile) {
     super(inputApp, outputPath, outputMode, mode, minApiLevel);
+    this.lambdaClassCache = lambdaClassCache;
+    this.lambdaClassCacheFile = lambdaClassCacheFile;
   }
 
   private D8Command(boolean printHelp, boolean printVersion) {
     super(printHelp, printVersion);
+    this.lambdaClassCache = null;
+    this.lambdaClassCacheFile = null;
+  }
+
+  public Path getLambdaClassCacheFile() {
+    return lambdaClassCacheFile;
   }
 
   @Override
@@ -215,7 +266,10 @@ public class D8Command extends BaseCommand {
     internal.removeSwitchMaps = false;
     assert internal.outline.enabled;
     internal.outline.enabled = false;
+    assert !internal.packDexCode;
+    internal.packDexCode = true;
     internal.outputMode = getOutputMode();
+    internal.lambdaClassCache = lambdaClassCache;
     return internal;
   }
 }
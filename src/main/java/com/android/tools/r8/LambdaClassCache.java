@@ -0,0 +1,179 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled lambda classes which can be shared by many compilations and persisted between them.
+ *
+ * <p>Incremental builds producing a dex file per class synthesize and compile the same lambda
+ * classes over and over again. The cache holds, for each lambda class, the dex file it was
+ * written to. Dex items carry per-compilation state, so the cache does not reference any item
+ * factory and the dex file is added to the output as is when the lambda class is needed again.
+ *
+ * <p>Entries are keyed by the content they are compiled from: the lambda descriptor, which is
+ * identified by the hash of its call site, the lambda class type, the method the lambda class
+ * delegates to and the options affecting the generated code. The code generated for a key may
+ * change between compiler versions, so a persisted cache is only used by the version which
+ * wrote it, see {@link Version#LABEL}.
+ *
+ * <p>The cache holds at most a given number of lambda classes. When it is written, the least
+ * recently used lambda classes above that number are dropped.
+ */
+public final class LambdaClassCache {
+
+  /** Default maximum number of lambda classes in a cache. */
+  public static final int DEFAULT_MAX_SIZE = 16 * 1024;
+
+  private static final int MAGIC = 0x4c414d42;
+  // Bump when the file format changes.
+  private static final int FORMAT = 2;
+
+  private static class Entry {
+    final byte[] dex;
+    volatile long lastUse;
+
+    Entry(byte[] dex, long lastUse) {
+      this.dex = dex;
+      this.lastUse = lastUse;
+    }
+  }
+
+  private final int maxSize;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  // Persisted entries are read with non-positive use times, in order of their last use.
+  private final AtomicLong clock = new AtomicLong();
+  private volatile boolean modified = false;
+
+  public LambdaClassCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public LambdaClassCache(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Invalid lambda class cache size: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /** Number of lambda classes in the cache. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Returns the dex file of the lambda class for {@code key}, or null if not cached. */
+  public byte[] lookup(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    entry.lastUse = clock.incrementAndGet();
+    // The order of use changed, which is persisted.
+    modified = true;
+    return entry.dex;
+  }
+
+  /** Adds the dex file of the lambda class for {@code key}, if not already cached. */
+  public void put(String key, byte[] dex) {
+    if (entries.putIfAbsent(key, new Entry(dex, clock.incrementAndGet())) == null) {
+      modified = true;
+    }
+  }
+
+  /** Read a cache written by {@link #write}, holding at most {@link #DEFAULT_MAX_SIZE} classes. */
+  public static LambdaClassCache read(Path file) throws IOException {
+    return read(file, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Read a cache written by {@link #write}, holding at most {@code maxSize} lambda classes.
+   *
+   * <p>Returns an empty cache if the file does not exist or was written by a different version.
+   */
+  public static LambdaClassCache read(Path file, int maxSize) throws IOException {
+    LambdaClassCache cache = new LambdaClassCache(maxSize);
+    if (!Files.exists(file)) {
+      return cache;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != MAGIC
+          || input.readInt() != FORMAT
+          || !input.readUTF().equals(Version.LABEL)) {
+        return cache;
+      }
+      // Entries are written most recently used first.
+      int count = Math.min(input.readInt(), maxSize);
+      for (int i = 0; i < count; i++) {
+        String key = input.readUTF();
+        byte[] dex = new byte[input.readInt()];
+        input.readFully(dex);
+        cache.entries.put(key, new Entry(dex, -i));
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Write the cache to {@code file}, if it changed or was used since it was created or last
+   * written.
+   *
+   * <p>Least recently used lambda classes above the maximum size of the cache are dropped first.
+   * The content is written to a temporary file first, so a concurrent reader never sees a
+   * partially written cache.
+   */
+  public synchronized void write(Path file) throws IOException {
+    if (!modified) {
+      return;
+    }
+    // Entries may be added or used concurrently, which marks the cache modified again.
+    modified = false;
+    // Copy the use times, so concurrent uses do not change the order while sorting.
+    List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.size());
+    entries.forEach((key, entry) ->
+        snapshot.add(new SimpleImmutableEntry<>(key, new Entry(entry.dex, entry.lastUse))));
+    snapshot.sort((a, b) -> Long.compare(b.getValue().lastUse, a.getValue().lastUse));
+    if (snapshot.size() > maxSize) {
+      List<Map.Entry<String, Entry>> evicted = snapshot.subList(maxSize, snapshot.size());
+      evicted.forEach(entry -> entries.remove(entry.getKey()));
+      evicted.clear();
+    }
+    Path parent = file.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT);
+        output.writeUTF(Version.LABEL);
+        output.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> entry : snapshot) {
+          output.writeUTF(entry.getKey());
+          output.writeInt(entry.getValue().dex.length);
+          output.write(entry.getValue().dex);
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      modified = true;
+      throw e;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
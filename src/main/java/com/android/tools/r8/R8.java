@@ -13,6 +13,7 @@ import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.ClassAndMemberPublicizer;
 import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexField;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.GraphLense;
 import com.android.tools.r8.ir.conversion.IRConverter;
@@ -26,6 +27,7 @@ import com.android.tools.r8.shaking.AbstractMethodRemover;
 import com.android.tools.r8.shaking.AnnotationRemover;
 import com.android.tools.r8.shaking.DiscardedChecker;
 import com.android.tools.r8.shaking.Enqueuer;
+import com.android.tools.r8.shaking.HorizontalClassMerger;
 import com.android.tools.r8.shaking.MainDexListBuilder;
 import com.android.tools.r8.shaking.ProguardRuleParserException;
 import com.android.tools.r8.shaking.ProguardTypeMatcher;
@@ -54,6 +56,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -113,7 +116,7 @@ public class R8 {
         timing.begin("DebugStripper");
         DebugStripper stripper =
             new DebugStripper(application.getProguardMap(), options, appInfo.dexItemFactory);
-        application.classes().forEach(stripper::processClass);
+        stripper.processClasses(application.classes(), executorService);
       } finally {
         timing.end();
       }
@@ -263,11 +266,20 @@ public class R8 {
         if (!options.skipClassMerging && options.inlineAccessors) {
           timing.begin("ClassMerger");
           graphLense = new SimpleClassMerger(application, appInfo.withLiveness(), graphLense,
-              timing).run();
+              timing).run(executorService);
+          timing.end();
+        }
+        Set<DexField> synthesizedFields = Collections.emptySet();
+        if (!options.skipHorizontalClassMerging && options.inlineAccessors) {
+          timing.begin("HorizontalClassMerger");
+          HorizontalClassMerger merger = new HorizontalClassMerger(application,
+              appInfo.withLiveness(), graphLense, timing);
+          graphLense = merger.run(executorService);
+          synthesizedFields = merger.getTypeTagFields();
           timing.end();
         }
         appInfo = appInfo.withLiveness().prunedCopyFrom(application);
-        appInfo = appInfo.withLiveness().rewrittenWithLense(graphLense);
+        appInfo = appInfo.withLiveness().rewrittenWithLense(graphLense, synthesizedFields);
       }
 
       graphLense = new BridgeMethodAnalysis(graphLense, appInfo.withSubtyping()).run();
@@ -319,7 +331,7 @@ public class R8 {
       NamingLens namingLens =
           options.skipMinification
               ? NamingLens.getIdentityLens()
-              : new Minifier(appInfo.withLiveness(), rootSet, options).run(timing);
+              : new Minifier(appInfo.withLiveness(), rootSet, options).run(executorService, timing);
       timing.end();
 
       // If a method filter is present don't produce output since the application is likely partial.
@@ -347,6 +359,10 @@ public class R8 {
               packageDistribution,
               options);
 
+      if (options.printTimes) {
+        // Report how much of the program, classpath and library classes were actually used.
+        System.out.println(application);
+      }
       options.printWarnings();
       return new CompilationResult(androidApp, application, appInfo);
     } catch (ExecutionException e) {
@@ -388,7 +404,8 @@ public class R8 {
       outputApp.write(command.getOutputPath(), options.outputMode);
     }
 
-    if (options.printMapping && !options.skipMinification) {
+    // A mapping file given by -printmapping has already been written by the application writer.
+    if (options.printMapping && !options.skipMinification && options.printMappingFile == null) {
       assert outputApp.hasProguardMap();
       try (Closer closer = Closer.create()) {
         OutputStream mapOut = openPathWithDefault(
@@ -460,7 +477,7 @@ public class R8 {
       return;
     }
     if (command.isPrintVersion()) {
-      System.out.println("R8 v0.0.1");
+      System.out.println("R8 " + Version.LABEL);
       return;
     }
     run(command);
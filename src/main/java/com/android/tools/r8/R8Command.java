@@ -205,6 +205,8 @@ public class R8Command extends BaseCommand {
       "  --no-minification       # Force disable minification of names.",
       "  --multidex-rules <file> # Enable automatic classes partitioning for legacy multidex.",
       "                          # <file> is a Proguard configuration file (with only keep rules).",
+      "  --startup-profile <file>",
+      "                          # Lay out the classes and methods listed in <file> for startup.",
       "  --version               # Print the version of r8.",
       "  --help                  # Print this message."));
 
@@ -279,6 +281,8 @@ public class R8Command extends BaseCommand {
         builder.addProguardConfigurationFiles(Paths.get(args[++i]));
       } else if (arg.equals("--pg-map")) {
         builder.setProguardMapFile(Paths.get(args[++i]));
+      } else if (arg.equals("--startup-profile")) {
+        builder.setStartupProfileFile(Paths.get(args[++i]));
       } else if (arg.equals("--ignore-missing-classes")) {
         builder.setIgnoreMissingClasses(true);
       } else if (arg.startsWith("@")) {
@@ -401,6 +405,8 @@ public class R8Command extends BaseCommand {
     internal.keepRules = proguardConfiguration.getRules();
     internal.dontWarnPatterns = proguardConfiguration.getDontWarnPatterns();
     internal.outputMode = getOutputMode();
+    assert !internal.packDexCode;
+    internal.packDexCode = true;
     if (internal.debug) {
       // TODO(zerny): Should we support removeSwitchMaps in debug mode? b/62936642
       internal.removeSwitchMaps = false;
@@ -0,0 +1,13 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+/** Version of the D8 and R8 tools. */
+public final class Version {
+
+  public static final String LABEL = "v0.0.1";
+
+  private Version() {
+  }
+}
@@ -6,6 +6,7 @@ package com.android.tools.r8.code;
 import com.android.tools.r8.graph.DexCallSite;
 import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.DexValue;
 import com.android.tools.r8.graph.DexValue.DexValueMethodHandle;
 import com.android.tools.r8.graph.DexValue.DexValueType;
@@ -61,6 +62,10 @@ public class InvokeCustom extends Format35c {
   }
 
   static void registerCallSite(UseRegistry registry, DexCallSite callSite) {
+    registry.registerCallSiteReference(callSite.methodProto.returnType);
+    for (DexType parameter : callSite.methodProto.parameters.values) {
+      registry.registerCallSiteReference(parameter);
+    }
     InvokeCustom.registerMethodHandle(registry, callSite.bootstrapMethod);
 
     // Register bootstrap method arguments, only Type and MethodHandle need to be register.
@@ -74,6 +79,9 @@ public class InvokeCustom extends Format35c {
   }
 
   static void registerMethodHandle(UseRegistry registry, DexMethodHandle methodHandle) {
+    registry.registerCallSiteReference(methodHandle.isMethodHandle()
+        ? methodHandle.asMethod().holder
+        : methodHandle.asField().clazz);
     switch (methodHandle.type) {
       case INSTANCE_GET:
         registry.registerInstanceFieldRead(methodHandle.asField());
@@ -0,0 +1,340 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.code;
+
+import com.android.tools.r8.dex.IndexedItemCollection;
+import com.android.tools.r8.errors.InternalCompilerError;
+import com.android.tools.r8.errors.Unreachable;
+import com.android.tools.r8.graph.DexCallSite;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.IndexedDexItem;
+import com.android.tools.r8.graph.ObjectToOffsetMapping;
+import com.android.tools.r8.graph.OffsetToObjectMapping;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instructions of a code item kept as the code units of the dex format.
+ *
+ * <p>The references to items in the code units are indexes into tables local to this code, one
+ * table for each kind of item. Next to the code units, the position and the item of each reference
+ * are kept, so the code units can be written to a dex file by patching in the index of the items in
+ * that file. The {@link Instruction} objects are only created when the instructions are unpacked.
+ */
+public class PackedInstructions {
+
+  // Kinds of referenced items, each with their own table of local indexes.
+  private static final int STRING = 0;
+  private static final int TYPE = 1;
+  private static final int FIELD = 2;
+  private static final int METHOD = 3;
+  private static final int PROTO = 4;
+  private static final int CALL_SITE = 5;
+  private static final int METHOD_HANDLE = 6;
+  private static final int KINDS = 7;
+
+  // Marks the position of a reference stored in two code units, as for const-string/jumbo.
+  private static final int WIDE_REFERENCE = 1 << 31;
+
+  private final short[] codeUnits;
+  private final int instructionCount;
+  private final int[] referencePositions;
+  private final IndexedDexItem[] references;
+
+  private PackedInstructions(short[] codeUnits, int instructionCount, int[] referencePositions,
+      IndexedDexItem[] references) {
+    this.codeUnits = codeUnits;
+    this.instructionCount = instructionCount;
+    this.referencePositions = referencePositions;
+    this.references = references;
+  }
+
+  public static PackedInstructions pack(Instruction[] instructions) {
+    int size = 0;
+    for (Instruction instruction : instructions) {
+      size += instruction.getSize();
+    }
+    short[] codeUnits = new short[size];
+    ShortBuffer buffer = ShortBuffer.wrap(codeUnits);
+    LocalIndexMapping mapping = new LocalIndexMapping();
+    ReferenceCollector collector = new ReferenceCollector();
+    List<Integer> positions = new ArrayList<>();
+    for (Instruction instruction : instructions) {
+      int start = buffer.position();
+      assert instruction.getOffset() == start;
+      instruction.write(buffer, mapping);
+      int firstReference = collector.references.size();
+      instruction.collectIndexedItems(collector);
+      // The first reference is right after the opcode. For the instructions with a proto
+      // reference, the proto follows after the method reference and the arguments.
+      for (int i = firstReference; i < collector.references.size(); i++) {
+        int position = start + (i == firstReference ? 1 : 3);
+        assert (codeUnits[position] & 0xffff)
+            == mapping.getLocalIndex(collector.references.get(i));
+        positions.add(instruction instanceof Format31c ? position | WIDE_REFERENCE : position);
+      }
+      assert collector.references.size() - firstReference <= 2;
+    }
+    int[] referencePositions = new int[positions.size()];
+    for (int i = 0; i < referencePositions.length; i++) {
+      referencePositions[i] = positions.get(i);
+    }
+    return new PackedInstructions(codeUnits, instructions.length, referencePositions,
+        collector.references.toArray(new IndexedDexItem[collector.references.size()]));
+  }
+
+  public Instruction[] unpack() {
+    int[] counts = new int[KINDS];
+    for (IndexedDexItem reference : references) {
+      counts[kindOf(reference)]++;
+    }
+    OffsetToObjectMapping mapping = new OffsetToObjectMapping();
+    mapping.initializeStrings(counts[STRING]);
+    mapping.initializeTypes(counts[TYPE]);
+    mapping.initializeFields(counts[FIELD]);
+    mapping.initializeMethods(counts[METHOD]);
+    mapping.initializeProtos(counts[PROTO]);
+    mapping.initializeCallSites(counts[CALL_SITE]);
+    mapping.initializeMethodHandles(counts[METHOD_HANDLE]);
+    // Local indexes are handed out in order of first reference, so an item is seen for the first
+    // time when its index is the number of distinct items of its kind seen so far.
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < references.length; i++) {
+      IndexedDexItem reference = references[i];
+      int kind = kindOf(reference);
+      int index = codeUnits[referencePositions[i] & ~WIDE_REFERENCE] & 0xffff;
+      if (index == counts[kind]) {
+        counts[kind]++;
+        setLocalIndex(mapping, kind, index, reference);
+      }
+    }
+    Instruction[] instructions = new InstructionFactory()
+        .readSequenceFrom(ShortBuffer.wrap(codeUnits), 0, codeUnits.length, mapping);
+    assert instructions.length == instructionCount;
+    return instructions;
+  }
+
+  public int getInstructionCount() {
+    return instructionCount;
+  }
+
+  public int getCodeUnitCount() {
+    return codeUnits.length;
+  }
+
+  public void collectIndexedItems(IndexedItemCollection indexedItems) {
+    for (IndexedDexItem reference : references) {
+      reference.collectIndexedItems(indexedItems);
+    }
+  }
+
+  public void write(ShortBuffer dest, ObjectToOffsetMapping mapping) {
+    int start = dest.position();
+    dest.put(codeUnits);
+    for (int i = 0; i < references.length; i++) {
+      int position = start + (referencePositions[i] & ~WIDE_REFERENCE);
+      int index = references[i].getOffset(mapping);
+      if ((referencePositions[i] & WIDE_REFERENCE) != 0) {
+        dest.put(position, (short) (index & 0xffff));
+        dest.put(position + 1, (short) ((index >> 16) & 0xffff));
+      } else {
+        if (index != (index & 0xffff)) {
+          assert references[i] instanceof DexString;
+          throw new InternalCompilerError("String-index overflow.");
+        }
+        dest.put(position, (short) index);
+      }
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(codeUnits) * 7 + Arrays.hashCode(references);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other instanceof PackedInstructions) {
+      PackedInstructions o = (PackedInstructions) other;
+      return Arrays.equals(codeUnits, o.codeUnits)
+          && Arrays.equals(referencePositions, o.referencePositions)
+          && Arrays.equals(references, o.references);
+    }
+    return false;
+  }
+
+  private static int kindOf(IndexedDexItem item) {
+    if (item instanceof DexString) {
+      return STRING;
+    }
+    if (item instanceof DexType) {
+      return TYPE;
+    }
+    if (item instanceof DexField) {
+      return FIELD;
+    }
+    if (item instanceof DexMethod) {
+      return METHOD;
+    }
+    if (item instanceof DexProto) {
+      return PROTO;
+    }
+    if (item instanceof DexCallSite) {
+      return CALL_SITE;
+    }
+    if (item instanceof DexMethodHandle) {
+      return METHOD_HANDLE;
+    }
+    throw new Unreachable("Unexpected reference from code: " + item);
+  }
+
+  private static void setLocalIndex(OffsetToObjectMapping mapping, int kind, int index,
+      IndexedDexItem item) {
+    switch (kind) {
+      case STRING:
+        mapping.setString(index, (DexString) item);
+        break;
+      case TYPE:
+        mapping.setType(index, (DexType) item);
+        break;
+      case FIELD:
+        mapping.setField(index, (DexField) item);
+        break;
+      case METHOD:
+        mapping.setMethod(index, (DexMethod) item);
+        break;
+      case PROTO:
+        mapping.setProto(index, (DexProto) item);
+        break;
+      case CALL_SITE:
+        mapping.setCallSites(index, (DexCallSite) item);
+        break;
+      case METHOD_HANDLE:
+        mapping.setMethodHandle(index, (DexMethodHandle) item);
+        break;
+      default:
+        throw new Unreachable();
+    }
+  }
+
+  /**
+   * Hands out indexes local to the code being packed, in order of first reference.
+   */
+  private static class LocalIndexMapping extends ObjectToOffsetMapping {
+
+    private final Map<IndexedDexItem, Integer> indexes = new IdentityHashMap<>();
+    private final int[] counts = new int[KINDS];
+
+    int getLocalIndex(IndexedDexItem item) {
+      Integer index = indexes.get(item);
+      if (index == null) {
+        index = counts[kindOf(item)]++;
+        assert index <= 0xffff;
+        indexes.put(item, index);
+      }
+      return index;
+    }
+
+    @Override
+    public int getOffsetFor(DexProto proto) {
+      return getLocalIndex(proto);
+    }
+
+    @Override
+    public int getOffsetFor(DexField field) {
+      return getLocalIndex(field);
+    }
+
+    @Override
+    public int getOffsetFor(DexMethod method) {
+      return getLocalIndex(method);
+    }
+
+    @Override
+    public int getOffsetFor(DexString string) {
+      return getLocalIndex(string);
+    }
+
+    @Override
+    public int getOffsetFor(DexType type) {
+      return getLocalIndex(type);
+    }
+
+    @Override
+    public int getOffsetFor(DexCallSite callSite) {
+      return getLocalIndex(callSite);
+    }
+
+    @Override
+    public int getOffsetFor(DexMethodHandle methodHandle) {
+      return getLocalIndex(methodHandle);
+    }
+  }
+
+  /**
+   * Collects the items referenced directly by the instructions, not their components.
+   */
+  private static class ReferenceCollector implements IndexedItemCollection {
+
+    private final List<IndexedDexItem> references = new ArrayList<>();
+
+    private boolean add(IndexedDexItem item) {
+      references.add(item);
+      return false;
+    }
+
+    @Override
+    public boolean addClass(DexProgramClass dexProgramClass) {
+      throw new Unreachable();
+    }
+
+    @Override
+    public boolean addField(DexField field) {
+      return add(field);
+    }
+
+    @Override
+    public boolean addMethod(DexMethod method) {
+      return add(method);
+    }
+
+    @Override
+    public boolean addString(DexString string) {
+      return add(string);
+    }
+
+    @Override
+    public boolean addProto(DexProto proto) {
+      return add(proto);
+    }
+
+    @Override
+    public boolean addType(DexType type) {
+      return add(type);
+    }
+
+    @Override
+    public boolean addCallSite(DexCallSite callSite) {
+      return add(callSite);
+    }
+
+    @Override
+    public boolean addMethodHandle(DexMethodHandle methodHandle) {
+      return add(methodHandle);
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.android.tools.r8.graph.DexLibraryClass;
 import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.graph.JarApplicationReader;
 import com.android.tools.r8.graph.JarClassFileReader;
+import com.android.tools.r8.naming.ClassNaming;
 import com.android.tools.r8.naming.ProguardMapReader;
 import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.ClassProvider;
@@ -32,6 +33,7 @@ import com.android.tools.r8.utils.ClasspathClassCollection;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LibraryClassCollection;
 import com.android.tools.r8.utils.MainDexList;
+import com.android.tools.r8.utils.StartupProfile;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.io.Closer;
@@ -39,6 +41,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
@@ -82,11 +85,21 @@ public class ApplicationReader {
       // (b) some of the class file resources don't provide information
       //     about class descriptor.
       // TODO: try and preload less classes.
-      readProguardMap(builder, executorService, futures, closer);
+      Future<List<Future<Map<String, ClassNaming>>>> proguardMapChunks =
+          readProguardMap(executorService, closer);
       readMainDexList(builder, executorService, futures, closer);
+      readStartupProfile(builder, executorService, futures, closer);
       ClassReader classReader = new ClassReader(executorService, futures, closer);
       classReader.readSources();
       ThreadUtils.awaitFutures(futures);
+      if (proguardMapChunks != null) {
+        try {
+          builder.setProguardMap(ProguardMapReader.mapperFromChunks(
+              ThreadUtils.awaitFutures(proguardMapChunks.get())));
+        } catch (InterruptedException e) {
+          throw new RuntimeException("Interrupted while waiting for future.", e);
+        }
+      }
       classReader.initializeLazyClassCollection(builder);
     } finally {
       timing.end();
@@ -127,15 +140,26 @@ public class ApplicationReader {
     }
   }
 
-  private void readProguardMap(DexApplication.Builder builder, ExecutorService executorService,
+  private Future<List<Future<Map<String, ClassNaming>>>> readProguardMap(
+      ExecutorService executorService, Closer closer) {
+    // Read the Proguard mapping file in parallel with DexCode and DexProgramClass items. The
+    // reading task submits the parsing of the mapping in chunks, to be combined once all of
+    // them have completed.
+    if (!inputApp.hasProguardMap()) {
+      return null;
+    }
+    return executorService.submit(() ->
+        ProguardMapReader.submitChunks(inputApp.getProguardMap(closer), executorService));
+  }
+
+  private void readMainDexList(DexApplication.Builder builder, ExecutorService executorService,
       List<Future<?>> futures, Closer closer)
       throws IOException {
-    // Read the Proguard mapping file in parallel with DexCode and DexProgramClass items.
-    if (inputApp.hasProguardMap()) {
+    if (inputApp.hasMainDexList()) {
       futures.add(executorService.submit(() -> {
         try {
-          InputStream map = inputApp.getProguardMap(closer);
-          builder.setProguardMap(ProguardMapReader.mapperFromInputStream(map));
+          InputStream input = inputApp.getMainDexList(closer);
+          builder.addToMainDexList(MainDexList.parse(input, itemFactory));
         } catch (IOException e) {
           throw new RuntimeException(e);
         }
@@ -143,14 +167,14 @@ public class ApplicationReader {
     }
   }
 
-  private void readMainDexList(DexApplication.Builder builder, ExecutorService executorService,
-      List<Future<?>> futures, Closer closer)
+  private void readStartupProfile(DexApplication.Builder builder,
+      ExecutorService executorService, List<Future<?>> futures, Closer closer)
       throws IOException {
-    if (inputApp.hasMainDexList()) {
+    if (inputApp.hasStartupProfile()) {
       futures.add(executorService.submit(() -> {
         try {
-          InputStream input = inputApp.getMainDexList(closer);
-          builder.addToMainDexList(MainDexList.parse(input, itemFactory));
+          InputStream input = inputApp.getStartupProfile(closer);
+          builder.setStartupProfile(StartupProfile.parse(input, itemFactory));
         } catch (IOException e) {
           throw new RuntimeException(e);
         }
@@ -185,7 +209,7 @@ public class ApplicationReader {
         for (Resource input : dexSources) {
           DexFile file = new DexFile(input.getStream(closer));
           computedMinApiLevel = verifyOrComputeMinApiLevel(computedMinApiLevel, file);
-          fileReaders.add(new DexFileReader(file, classKind, itemFactory));
+          fileReaders.add(new DexFileReader(file, classKind, itemFactory, options.packDexCode));
         }
         options.minApiLevel = computedMinApiLevel;
         for (DexFileReader reader : fileReaders) {
@@ -193,11 +217,8 @@ public class ApplicationReader {
         }
         // Read the DexCode items and DexProgramClass items in parallel.
         for (DexFileReader reader : fileReaders) {
-          futures.add(executorService.submit(() -> {
-            reader.addCodeItemsTo();  // Depends on Everything for parsing.
-            reader.addClassDefsTo(
-                classKind.bridgeConsumer(classes::add)); // Depends on Methods, Code items etc.
-          }));
+          reader.submitCodeItemsAndClassDefs(  // Depends on Everything for parsing.
+              classKind.bridgeConsumer(classes::add), executorService, futures);
         }
       }
     }
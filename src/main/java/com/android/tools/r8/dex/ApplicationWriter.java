@@ -20,6 +20,7 @@ import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.graph.DexTypeList;
 import com.android.tools.r8.graph.DexValue;
+import com.android.tools.r8.naming.LineNumberRebaser;
 import com.android.tools.r8.naming.MinifiedNameMapPrinter;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.AndroidApp;
@@ -27,12 +28,16 @@ import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.OutputMode;
 import com.android.tools.r8.utils.PackageDistribution;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -123,6 +128,15 @@ public class ApplicationWriter {
     application.timing.begin("DexApplication.write");
     try {
       application.dexItemFactory.sort(namingLens);
+      // Rebase the line numbers before anything is collected from the debug info. The original
+      // lines are recorded in the mapping file, so only do it when the map is written here.
+      LineNumberRebaser lineNumberRebaser = null;
+      if (options.rebaseDebugLineNumbers
+          && !namingLens.isIdentityLens()
+          && application.getProguardMap() == null) {
+        lineNumberRebaser = new LineNumberRebaser();
+        lineNumberRebaser.run(application.classes());
+      }
       SortAnnotations sortAnnotations = new SortAnnotations();
       application.classes().forEach((clazz) -> clazz.addDependencies(sortAnnotations));
 
@@ -147,10 +161,20 @@ public class ApplicationWriter {
             "Cannot combine package distribution definition with minimal-main-dex option.";
         distributor = new PackageMapDistributor(this, packageDistribution, executorService);
       } else {
-        distributor = new FillFilesDistributor(this, options.minimalMainDex);
+        distributor = new FillFilesDistributor(this, options.minimalMainDex, executorService);
       }
       Map<Integer, VirtualFile> newFiles = distributor.run();
 
+      // Start rendering the Proguard mapping file before the dex files are written. The printer
+      // takes copies of the DexProgramClass structures, which are destructively updated during
+      // dex file writing, before returning.
+      MinifiedNameMapPrinter proguardMapPrinter = null;
+      List<Future<String>> proguardMapChunks = null;
+      if (!namingLens.isIdentityLens()) {
+        proguardMapPrinter = new MinifiedNameMapPrinter(application, namingLens, lineNumberRebaser);
+        proguardMapChunks = proguardMapPrinter.submit(executorService);
+      }
+
       // Write the dex files and the Proguard mapping file in parallel. Use a linked hash map
       // as the order matters when addDexProgramData is called below.
       LinkedHashMap<VirtualFile, Future<byte[]>> dexDataFutures = new LinkedHashMap<>();
@@ -162,8 +186,10 @@ public class ApplicationWriter {
         }
       }
 
-      // Wait for all the spawned futures to terminate.
       AndroidApp.Builder builder = AndroidApp.builder();
+      writeProguardMapFile(proguardMapPrinter, proguardMapChunks, builder);
+
+      // Wait for all the spawned futures to terminate.
       try {
         for (Map.Entry<VirtualFile, Future<byte[]>> entry : dexDataFutures.entrySet()) {
           builder.addDexProgramData(entry.getValue().get(), entry.getKey().getClassDescriptors());
@@ -171,12 +197,6 @@ public class ApplicationWriter {
       } catch (InterruptedException e) {
         throw new RuntimeException("Interrupted while waiting for future.", e);
       }
-      // Write the proguard map file after writing the dex files, as the map writer traverses
-      // the DexProgramClass structures, which are destructively updated during dex file writing.
-      byte[] proguardMapResult = writeProguardMapFile();
-      if (proguardMapResult != null) {
-        builder.setProguardMapData(proguardMapResult);
-      }
       if (proguardSeedsData != null) {
         builder.setProguardSeedsData(proguardSeedsData);
       }
@@ -202,23 +222,37 @@ public class ApplicationWriter {
     return fileWriter.generate();
   }
 
-  private byte[] writeProguardMapFile() throws IOException {
-    // TODO(herhut): Should writing of the proguard-map file be split like this?
-    if (!namingLens.isIdentityLens()) {
-      MinifiedNameMapPrinter printer = new MinifiedNameMapPrinter(application, namingLens);
+  private void writeProguardMapFile(
+      MinifiedNameMapPrinter printer, List<Future<String>> chunks, AndroidApp.Builder builder)
+      throws IOException, ExecutionException {
+    if (printer == null) {
+      if (application.getProguardMap() != null) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new PrintWriter(bytes);
+        application.getProguardMap().write(writer, !options.skipDebugLineNumberOpt);
+        writer.flush();
+        builder.setProguardMapData(bytes.toByteArray());
+      }
+    } else if (options.printMapping && options.printMappingFile != null) {
+      // Stream the mapping straight to its destination instead of keeping it in memory. The
+      // chunks are written in order as they become available, while the dex files are written.
+      try (PrintStream stream = new PrintStream(
+          new BufferedOutputStream(Files.newOutputStream(options.printMappingFile)),
+          false, StandardCharsets.UTF_8.name())) {
+        printer.write(chunks, stream);
+        // PrintStream swallows IOExceptions, checkError flushes and reports if any occurred.
+        if (stream.checkError()) {
+          throw new IOException("Failed to write mapping file " + options.printMappingFile);
+        }
+      }
+      builder.setProguardMapFile(options.printMappingFile);
+    } else {
       ByteArrayOutputStream bytes = new ByteArrayOutputStream();
       PrintStream stream = new PrintStream(bytes);
-      printer.write(stream);
+      printer.write(chunks, stream);
       stream.flush();
-      return bytes.toByteArray();
-    } else if (application.getProguardMap() != null) {
-      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-      Writer writer = new PrintWriter(bytes);
-      application.getProguardMap().write(writer, !options.skipDebugLineNumberOpt);
-      writer.flush();
-      return bytes.toByteArray();
+      builder.setProguardMapData(bytes.toByteArray());
     }
-    return null;
   }
 
   private String mapMainDexListName(DexType type) {
@@ -47,6 +47,20 @@ public class DexFile {
     version = parseMagic(buffer);
   }
 
+  private DexFile(String name, ByteBuffer buffer, int version) {
+    this.name = name;
+    this.buffer = buffer;
+    this.version = version;
+  }
+
+  /**
+   * Returns a file sharing the content of this file, but with its own position. Used for reading
+   * different parts of the file concurrently.
+   */
+  DexFile duplicate() {
+    return new DexFile(name, buffer.duplicate().order(buffer.order()), version);
+  }
+
   // Parse the magic header and determine the dex file version.
   private int parseMagic(ByteBuffer buffer) {
     int index = 0;
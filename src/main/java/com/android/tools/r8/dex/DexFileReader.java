@@ -53,6 +53,8 @@ import com.android.tools.r8.graph.OffsetToObjectMapping;
 import com.android.tools.r8.logging.Log;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,12 +64,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class DexFileReader {
 
   final int NO_INDEX = -1;
+
+  // Code items are read in chunks spanning about this many bytes.
+  private static final int CODE_ITEMS_CHUNK_SIZE = 1 << 18;
   private DexFile file;
   private final Segment[] segments;
   private int[] stringIDs;
@@ -82,7 +92,7 @@ public class DexFileReader {
   }
 
   private static Segment[] parseMapFrom(DexFile dex) throws IOException {
-    DexFileReader reader = new DexFileReader(dex, ClassKind.PROGRAM, new DexItemFactory());
+    DexFileReader reader = new DexFileReader(dex, ClassKind.PROGRAM, new DexItemFactory(), false);
     return reader.segments;
   }
 
@@ -91,6 +101,7 @@ public class DexFileReader {
     indexedItems = null;
     codes = null;
     offsetMap = null;
+    debugInfos = null;
     file = null;
     stringIDs = null;
   }
@@ -104,12 +115,20 @@ public class DexFileReader {
   // Mapping from offset to dex item;
   private Int2ObjectMap<Object> offsetMap = new Int2ObjectOpenHashMap<>();
 
+  // Mapping from offset to debug info item.
+  private Map<Integer, DexDebugInfo> debugInfos = new ConcurrentHashMap<>();
+
   // Factory to canonicalize certain dexitems.
   private final DexItemFactory dexItemFactory;
 
-  public DexFileReader(DexFile file, ClassKind classKind, DexItemFactory dexItemFactory) {
+  // Whether the instructions of the code items are kept packed, see DexCode.pack().
+  private final boolean packCode;
+
+  public DexFileReader(
+      DexFile file, ClassKind classKind, DexItemFactory dexItemFactory, boolean packCode) {
     this.file = file;
     this.dexItemFactory = dexItemFactory;
+    this.packCode = packCode;
     file.setByteOrder();
     segments = parseMap();
     parseStringIDs();
@@ -120,21 +139,88 @@ public class DexFileReader {
     return indexedItems;
   }
 
-  void addCodeItemsTo() {
+  /**
+   * Submits tasks reading the code items and then the class defs to the given executor.
+   *
+   * <p>The code items are split in chunks of consecutive items, read in parallel. The class defs
+   * depend on the code items, so they are read by the task finishing the last chunk.
+   */
+  void submitCodeItemsAndClassDefs(Consumer<DexClass> classCollection, ExecutorService executor,
+      List<Future<?>> futures) {
     if (classKind == ClassKind.LIBRARY) {
       // Ignore contents of library files.
+      futures.add(executor.submit(() -> addClassDefsTo(classCollection)));
       return;
     }
     Segment segment = lookupSegment(Constants.TYPE_CODE_ITEM);
     if (segment.length == 0) {
+      futures.add(executor.submit(() -> addClassDefsTo(classCollection)));
       return;
     }
+    // Find the offsets of the code items, and where to split them in chunks.
+    int[] offsets = new int[segment.length];
+    IntList chunkStarts = new IntArrayList();
     file.position(segment.offset);
     for (int i = 0; i < segment.length; i++) {
       file.align(4);  // code items are 4 byte aligned.
-      int offset = file.position();
-      DexCode code = parseCodeItem();
-      codes.put(offset, code);  // Update the file local offset to code mapping.
+      offsets[i] = file.position();
+      if (i == 0 || offsets[i] - offsets[chunkStarts.getInt(chunkStarts.size() - 1)]
+          >= CODE_ITEMS_CHUNK_SIZE) {
+        chunkStarts.add(i);
+      }
+      skipCodeItem();
+    }
+    chunkStarts.add(segment.length);
+    AtomicInteger remainingChunks = new AtomicInteger(chunkStarts.size() - 1);
+    for (int i = 0; i < chunkStarts.size() - 1; i++) {
+      int start = chunkStarts.getInt(i);
+      int end = chunkStarts.getInt(i + 1);
+      futures.add(executor.submit(() -> {
+        addCodeItemsTo(offsets, start, end);
+        if (remainingChunks.decrementAndGet() == 0) {
+          addClassDefsTo(classCollection);  // Depends on Methods, Code items etc.
+        }
+      }));
+    }
+  }
+
+  private void addCodeItemsTo(int[] offsets, int start, int end) {
+    DexFile file = this.file.duplicate();
+    DexCode[] result = new DexCode[end - start];
+    for (int i = start; i < end; i++) {
+      file.position(offsets[i]);
+      result[i - start] = parseCodeItem(file);
+    }
+    synchronized (codes) {
+      for (int i = start; i < end; i++) {
+        codes.put(offsets[i], result[i - start]);  // Update the file local offset to code mapping.
+      }
+    }
+  }
+
+  private void skipCodeItem() {
+    file.position(file.position() + 6);  // Skip registers_size, ins_size and outs_size.
+    int triesSize = file.getUshort();
+    file.getUint();  // Skip debug_info_off.
+    int insnsSize = file.getUint();
+    if (triesSize == 0) {
+      file.position(file.position() + insnsSize * 2);
+      return;
+    }
+    // The tries are 4 byte aligned, and a try item is 8 bytes.
+    file.position(file.position() + insnsSize * 2);
+    file.align(4);
+    file.position(file.position() + triesSize * 8);
+    int size = file.getUleb128();
+    for (int i = 0; i < size; i++) {
+      int hsize = file.getSleb128();
+      for (int j = 0; j < Math.abs(hsize); j++) {
+        file.getUleb128();  // Skip type_idx.
+        file.getUleb128();  // Skip addr.
+      }
+      if (hsize <= 0) {
+        file.getUleb128();  // Skip catch_all_addr.
+      }
     }
   }
 
@@ -435,11 +521,18 @@ public class DexFileReader {
         parameters);
   }
 
-  private DexDebugInfo debugInfoAt(int offset) {
-    return (DexDebugInfo) cacheAt(offset, this::parseDebugInfo);
+  private DexDebugInfo debugInfoAt(DexFile file, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    // Code items are read concurrently, so debug info items have their own cache.
+    return debugInfos.computeIfAbsent(offset, key -> {
+      file.position(key);
+      return parseDebugInfo(file);
+    });
   }
 
-  private DexDebugInfo parseDebugInfo() {
+  private DexDebugInfo parseDebugInfo(DexFile file) {
     int start = file.getUleb128();
     int parametersSize = file.getUleb128();
     DexString[] parameters = new DexString[parametersSize];
@@ -726,7 +819,7 @@ public class DexFileReader {
     return result;
   }
 
-  private DexCode parseCodeItem() {
+  private DexCode parseCodeItem(DexFile file) {
     int registerSize = file.getUshort();
     int insSize = file.getUshort();
     int outsSize = file.getUshort();
@@ -788,12 +881,12 @@ public class DexFileReader {
     }
     // Store and restore offset information around reading debug info.
     int saved = file.position();
-    DexDebugInfo debugInfo = debugInfoAt(debugInfoOff);
+    DexDebugInfo debugInfo = debugInfoAt(file, debugInfoOff);
     file.position(saved);
     InstructionFactory factory = new InstructionFactory();
     Instruction[] instructions =
         factory.readSequenceFrom(ShortBuffer.wrap(code), 0, code.length, indexedItems);
-    return new DexCode(
+    DexCode dexCode = new DexCode(
         registerSize,
         insSize,
         outsSize,
@@ -802,6 +895,7 @@ public class DexFileReader {
         handlers,
         debugInfo,
         factory.getHighestSortingString());
+    return packCode ? dexCode.pack() : dexCode;
   }
 
   static void populateIndexTables(DexFileReader fileReader) {
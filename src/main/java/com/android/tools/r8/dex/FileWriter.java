@@ -49,6 +49,7 @@ import com.android.tools.r8.naming.MemberNaming.Signature;
 import com.android.tools.r8.naming.NamingLens;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LebUtils;
+import com.android.tools.r8.utils.StartupProfile;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import java.security.MessageDigest;
@@ -135,6 +136,8 @@ public class FileWriter {
 
     // String data is not tracked by the MixedSectionCollection.new AppInfo(application, null)
     assert mixedSectionOffsets.stringData.size() == 0;
+    // The data of the strings used during startup is written first, so it is close together.
+    new StartupStringCollector().run();
     for (DexString string : mapping.getStrings()) {
       mixedSectionOffsets.add(string);
     }
@@ -327,17 +330,37 @@ public class FileWriter {
 
   private List<DexCode> sortDexCodesByClassName(List<DexCode> codes, DexApplication application) {
     Map<DexCode, String> codeToSignatureMap = new IdentityHashMap<>();
+    Map<DexCode, Integer> codeToStartupIndexMap = new IdentityHashMap<>();
     for (DexProgramClass clazz : mapping.getClasses()) {
       addSignaturesFromMethods(clazz.directMethods(), codeToSignatureMap,
           application.getProguardMap());
       addSignaturesFromMethods(clazz.virtualMethods(), codeToSignatureMap,
           application.getProguardMap());
+      addStartupIndexesFromMethods(clazz.directMethods(), codeToStartupIndexMap,
+          application.startupProfile);
+      addStartupIndexesFromMethods(clazz.virtualMethods(), codeToStartupIndexMap,
+          application.startupProfile);
     }
+    // The code of the startup methods comes first, in the order the methods are first used.
     DexCode[] codesArray = codes.toArray(new DexCode[codes.size()]);
-    Arrays.sort(codesArray, Comparator.comparing(codeToSignatureMap::get));
+    Arrays.sort(codesArray,
+        Comparator.comparing((DexCode code) ->
+            codeToStartupIndexMap.getOrDefault(code, Integer.MAX_VALUE))
+            .thenComparing(codeToSignatureMap::get));
     return Arrays.asList(codesArray);
   }
 
+  private static void addStartupIndexesFromMethods(DexEncodedMethod[] methods,
+      Map<DexCode, Integer> codeToStartupIndexMap,
+      StartupProfile startupProfile) {
+    for (DexEncodedMethod method : methods) {
+      int index = startupProfile.getMethodIndex(method.method);
+      if (index >= 0 && method.getCode() != null) {
+        codeToStartupIndexMap.merge(method.getCode().asDexCode(), index, Math::min);
+      }
+    }
+  }
+
   private static void addSignaturesFromMethods(DexEncodedMethod[] methods,
       Map<DexCode, String> codeToSignatureMap,
       ClassNameMapper proguardMap) {
@@ -394,8 +417,12 @@ public class FileWriter {
   private int sizeOfCodeItem(DexCode code) {
     int result = 16;
     int insnSize = 0;
-    for (Instruction insn : code.instructions) {
-      insnSize += insn.getSize();
+    if (code.isPacked()) {
+      insnSize = code.getPackedInstructions().getCodeUnitCount();
+    } else {
+      for (Instruction insn : code.instructions) {
+        insnSize += insn.getSize();
+      }
     }
     result += insnSize * 2;
     result += code.tries.length * 8;
@@ -489,7 +516,11 @@ public class FileWriter {
     int insnSizeOffset = dest.position();
     dest.forward(4);
     // Write instruction stream.
-    dest.putInstructions(code.instructions, mapping);
+    if (code.isPacked()) {
+      dest.putInstructions(code.getPackedInstructions(), mapping);
+    } else {
+      dest.putInstructions(code.instructions, mapping);
+    }
     // Compute size and do the backward/forward dance to write the size at the beginning.
     int insnSize = dest.position() - insnSizeOffset - 4;
     dest.rewind(insnSize + 4);
@@ -1327,6 +1358,111 @@ public class FileWriter {
     }
   }
 
+  /**
+   * Adds the strings used when loading the startup classes and running the startup methods to the
+   * string data, in the order the classes and methods are first used.
+   */
+  private class StartupStringCollector implements IndexedItemCollection {
+
+    private final Set<DexItem> seen = Sets.newIdentityHashSet();
+
+    void run() {
+      StartupProfile startupProfile = application.startupProfile;
+      if (startupProfile.isEmpty()) {
+        return;
+      }
+      List<DexEncodedMethod> methods = new ArrayList<>();
+      // The classes of the mapping start with the startup classes, in order.
+      for (DexProgramClass clazz : mapping.getClasses()) {
+        if (startupProfile.getClassIndex(clazz.type) < 0) {
+          continue;
+        }
+        clazz.type.collectIndexedItems(this);
+        if (clazz.superType != null) {
+          clazz.superType.collectIndexedItems(this);
+        }
+        for (DexType iface : clazz.interfaces.values) {
+          iface.collectIndexedItems(this);
+        }
+        for (DexEncodedMethod method : clazz.directMethods()) {
+          addIfStartupMethod(method, startupProfile, methods);
+        }
+        for (DexEncodedMethod method : clazz.virtualMethods()) {
+          addIfStartupMethod(method, startupProfile, methods);
+        }
+      }
+      methods.sort(Comparator.comparingInt(
+          (DexEncodedMethod method) -> startupProfile.getMethodIndex(method.method)));
+      for (DexEncodedMethod method : methods) {
+        method.method.collectIndexedItems(this);
+        method.getCode().asDexCode().collectIndexedItems(this);
+      }
+    }
+
+    private void addIfStartupMethod(DexEncodedMethod method, StartupProfile startupProfile,
+        List<DexEncodedMethod> methods) {
+      if (method.getCode() != null && startupProfile.getMethodIndex(method.method) >= 0) {
+        methods.add(method);
+      }
+    }
+
+    @Override
+    public boolean addClass(DexProgramClass dexProgramClass) {
+      return seen.add(dexProgramClass);
+    }
+
+    @Override
+    public boolean addField(DexField field) {
+      return seen.add(field);
+    }
+
+    @Override
+    public boolean addMethod(DexMethod method) {
+      return seen.add(method);
+    }
+
+    @Override
+    public boolean addString(DexString string) {
+      mixedSectionOffsets.add(string);
+      return seen.add(string);
+    }
+
+    @Override
+    public boolean addProto(DexProto proto) {
+      return seen.add(proto);
+    }
+
+    @Override
+    public boolean addType(DexType type) {
+      return seen.add(type);
+    }
+
+    @Override
+    public boolean addCallSite(DexCallSite callSite) {
+      return seen.add(callSite);
+    }
+
+    @Override
+    public boolean addMethodHandle(DexMethodHandle methodHandle) {
+      return seen.add(methodHandle);
+    }
+
+    @Override
+    public DexString getRenamedName(DexMethod method) {
+      return namingLens.lookupName(method);
+    }
+
+    @Override
+    public DexString getRenamedName(DexField field) {
+      return namingLens.lookupName(field);
+    }
+
+    @Override
+    public DexString getRenamedDescriptor(DexType type) {
+      return namingLens.lookupDescriptor(type);
+    }
+  }
+
   private void checkThatInvokeCustomIsAllowed() {
     if (!options.canUseInvokeCustom()) {
       throw new CompilationError("Invoke-custom is unsupported before Android O (--min-api "
@@ -34,10 +34,13 @@ import java.io.Writer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -45,7 +48,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -166,6 +168,10 @@ public class VirtualFile {
     transaction.addClassAndDependencies(clazz);
   }
 
+  private void addClass(ClassItems items) {
+    transaction.addClassItems(items);
+  }
+
   private static boolean isFull(int numberOfMethods, int numberOfFields, int maximum) {
     return (numberOfMethods > maximum) || (numberOfFields > maximum);
   }
@@ -262,45 +268,88 @@ public class VirtualFile {
       }
     }
 
-    TreeSet<DexProgramClass> sortClassesByPackage(Set<DexProgramClass> classes,
+    /**
+     * Adds the startup classes to the main dex file in the order they are first used, until the
+     * file is full. The remaining startup classes are distributed as all other classes.
+     */
+    protected void fillForStartupProfile(Set<DexProgramClass> classes) {
+      VirtualFile mainDexFile = nameToFileMap.get(0);
+      for (DexType type : application.startupProfile.getClasses()) {
+        DexClass clazz = application.definitionFor(type);
+        if (clazz == null || !clazz.isProgramClass() || !classes.contains(clazz)) {
+          continue;
+        }
+        DexProgramClass programClass = clazz.asProgramClass();
+        mainDexFile.addClass(programClass);
+        if (mainDexFile.isFull()) {
+          mainDexFile.abortTransaction();
+          return;
+        }
+        mainDexFile.commitTransaction();
+        classes.remove(programClass);
+      }
+    }
+
+    Set<DexProgramClass> sortClassesByPackage(Set<DexProgramClass> classes,
         Map<DexProgramClass, String> originalNames) {
-      TreeSet<DexProgramClass> sortedClasses = new TreeSet<>(
-          (DexProgramClass a, DexProgramClass b) -> {
-            String originalA = originalNames.get(a);
-            String originalB = originalNames.get(b);
-            int indexA = originalA.lastIndexOf('.');
-            int indexB = originalB.lastIndexOf('.');
-            if (indexA == -1 && indexB == -1) {
-              // Empty package, compare the class names.
-              return originalA.compareTo(originalB);
-            }
-            if (indexA == -1) {
-              // Empty package name comes first.
-              return -1;
-            }
-            if (indexB == -1) {
-              // Empty package name comes first.
-              return 1;
-            }
-            String prefixA = originalA.substring(0, indexA);
-            String prefixB = originalB.substring(0, indexB);
-            int result = prefixA.compareTo(prefixB);
-            if (result != 0) {
-              return result;
-            }
-            return originalA.compareTo(originalB);
-          });
-      sortedClasses.addAll(classes);
+      // Split the original names up front, instead of on every comparison.
+      PackageSortKey[] keys = new PackageSortKey[classes.size()];
+      int index = 0;
+      for (DexProgramClass clazz : classes) {
+        keys[index++] = new PackageSortKey(clazz, originalNames.get(clazz));
+      }
+      Arrays.sort(keys);
+      Set<DexProgramClass> sortedClasses = new LinkedHashSet<>(keys.length);
+      for (PackageSortKey key : keys) {
+        sortedClasses.add(key.clazz);
+      }
       return sortedClasses;
     }
   }
 
+  /**
+   * Orders classes by the package of their original name, classes in the empty package first,
+   * and then by the original name.
+   */
+  private static class PackageSortKey implements Comparable<PackageSortKey> {
+    final DexProgramClass clazz;
+    final String originalName;
+    final String packageName;
+
+    PackageSortKey(DexProgramClass clazz, String originalName) {
+      this.clazz = clazz;
+      this.originalName = originalName;
+      int index = originalName.lastIndexOf('.');
+      this.packageName = index == -1 ? null : originalName.substring(0, index);
+    }
+
+    @Override
+    public int compareTo(PackageSortKey other) {
+      if (packageName != other.packageName) {
+        if (packageName == null) {
+          return -1;
+        }
+        if (other.packageName == null) {
+          return 1;
+        }
+        int result = packageName.compareTo(other.packageName);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return originalName.compareTo(other.originalName);
+    }
+  }
+
   public static class FillFilesDistributor extends DistributorBase {
     private final FillStrategy fillStrategy;
+    private final ExecutorService executorService;
 
-    public FillFilesDistributor(ApplicationWriter writer, boolean minimalMainDex) {
+    public FillFilesDistributor(ApplicationWriter writer, boolean minimalMainDex,
+        ExecutorService executorService) {
       super(writer);
       this.fillStrategy = minimalMainDex ? FillStrategy.MINIMAL_MAIN_DEX : FillStrategy.FILL_MAX;
+      this.executorService = executorService;
     }
 
     public Map<Integer, VirtualFile> run() throws ExecutionException, IOException {
@@ -312,6 +361,10 @@ public class VirtualFile {
 
       // First fill required classes into the main dex file.
       fillForMainDexList(classes);
+      if (fillStrategy != FillStrategy.MINIMAL_MAIN_DEX) {
+        // Then the classes used during startup, so they are loaded from as few files as possible.
+        fillForStartupProfile(classes);
+      }
 
       // Sort the remaining classes based on the original names.
       // This with make classes from the same package be adjacent.
@@ -319,7 +372,7 @@ public class VirtualFile {
 
       new PackageSplitPopulator(
           nameToFileMap, classes, originalNames, null, application.dexItemFactory,
-          fillStrategy, writer.namingLens)
+          fillStrategy, writer.namingLens, executorService)
           .call();
       return nameToFileMap;
     }
@@ -387,7 +440,7 @@ public class VirtualFile {
         newAssignments =
             new PackageSplitPopulator(
                 nameToFileMap, classes, originalNames, usedPrefixes, application.dexItemFactory,
-                FillStrategy.LEAVE_SPACE_FOR_GROWTH, writer.namingLens)
+                FillStrategy.LEAVE_SPACE_FOR_GROWTH, writer.namingLens, executorService)
                 .call();
         if (!newAssignments.isEmpty() && nameToFileMap.size() > 1) {
           System.err.println(" * The used package map is missing entries. The following default "
@@ -522,13 +575,13 @@ public class VirtualFile {
     private final NamingLens namingLens;
 
     private final Set<DexProgramClass> classes = new LinkedHashSet<>();
-    private final Set<DexField> fields = new LinkedHashSet<>();
-    private final Set<DexMethod> methods = new LinkedHashSet<>();
-    private final Set<DexType> types = new LinkedHashSet<>();
-    private final Set<DexProto> protos = new LinkedHashSet<>();
-    private final Set<DexString> strings = new LinkedHashSet<>();
-    private final Set<DexCallSite> callSites = new LinkedHashSet<>();
-    private final Set<DexMethodHandle> methodHandles = new LinkedHashSet<>();
+    private final IndexedItemSet<DexField> fields = new IndexedItemSet<>();
+    private final IndexedItemSet<DexMethod> methods = new IndexedItemSet<>();
+    private final IndexedItemSet<DexType> types = new IndexedItemSet<>();
+    private final IndexedItemSet<DexProto> protos = new IndexedItemSet<>();
+    private final IndexedItemSet<DexString> strings = new IndexedItemSet<>();
+    private final IndexedItemSet<DexCallSite> callSites = new IndexedItemSet<>();
+    private final IndexedItemSet<DexMethodHandle> methodHandles = new IndexedItemSet<>();
 
     private IndexedItemTransaction(VirtualFileIndexedItemCollection base,
         NamingLens namingLens) {
@@ -536,18 +589,50 @@ public class VirtualFile {
       this.namingLens = namingLens;
     }
 
-    private <T extends IndexedDexItem> boolean maybeInsert(T item, Set<T> set) {
-      if (item.hasVirtualFileData(base.id) || set.contains(item)) {
+    private <T extends IndexedDexItem> boolean maybeInsert(T item, IndexedItemSet<T> set) {
+      if (item.hasVirtualFileData(base.id)) {
         return false;
       }
-      set.add(item);
-      return true;
+      return set.add(item);
     }
 
     void addClassAndDependencies(DexProgramClass clazz) {
       clazz.collectIndexedItems(this);
     }
 
+    /**
+     * Adds the same items as {@link #addClassAndDependencies} given the items collected from the
+     * class up front.
+     */
+    void addClassItems(ClassItems items) {
+      if (!addClass(items.clazz)) {
+        return;
+      }
+      // The items of a kind are added in the order they are collected in. An item that is already
+      // present is skipped, just as the items it references, which are present as well.
+      for (DexField field : items.fields) {
+        maybeInsert(field, fields);
+      }
+      for (DexMethod method : items.methods) {
+        maybeInsert(method, methods);
+      }
+      for (DexProto proto : items.protos) {
+        maybeInsert(proto, protos);
+      }
+      for (DexType type : items.types) {
+        maybeInsert(type, types);
+      }
+      for (DexString string : items.strings) {
+        maybeInsert(string, strings);
+      }
+      for (DexCallSite callSite : items.callSites) {
+        maybeInsert(callSite, callSites);
+      }
+      for (DexMethodHandle methodHandle : items.methodHandles) {
+        maybeInsert(methodHandle, methodHandles);
+      }
+    }
+
     @Override
     public boolean addClass(DexProgramClass dexProgramClass) {
       if (base.seenClasses.contains(dexProgramClass) || classes.contains(dexProgramClass)) {
@@ -624,6 +709,15 @@ public class VirtualFile {
       set.clear();
     }
 
+    private <T extends IndexedDexItem> void commitItemsIn(
+        IndexedItemSet<T> set, Function<T, Boolean> hook) {
+      set.forEach((item) -> {
+        boolean newlyAdded = hook.apply(item);
+        assert newlyAdded;
+      });
+      set.clear();
+    }
+
     void commit() {
       commitItemsIn(classes, base::addClass);
       commitItemsIn(fields, base::addField);
@@ -658,6 +752,183 @@ public class VirtualFile {
     }
   }
 
+  /**
+   * Set of indexed items that iterates in insertion order.
+   *
+   * <p>Before the application is written, all items in the item factory are assigned a sorted
+   * index, which is dense for each kind of item. Membership of these items is kept in a bit set,
+   * which is cheaper than hashing. Other items are kept in a hash set.
+   */
+  private static class IndexedItemSet<T extends IndexedDexItem> implements Iterable<T> {
+
+    private final List<T> items = new ArrayList<>();
+    private final BitSet sortedIndexes = new BitSet();
+    private final Set<T> unsortedItems = Sets.newIdentityHashSet();
+
+    boolean add(T item) {
+      int index = item.getSortedIndex();
+      if (index < 0) {
+        if (!unsortedItems.add(item)) {
+          return false;
+        }
+      } else {
+        if (sortedIndexes.get(index)) {
+          return false;
+        }
+        sortedIndexes.set(index);
+      }
+      items.add(item);
+      return true;
+    }
+
+    int size() {
+      return items.size();
+    }
+
+    boolean isEmpty() {
+      return items.isEmpty();
+    }
+
+    void clear() {
+      for (T item : items) {
+        int index = item.getSortedIndex();
+        if (index >= 0) {
+          sortedIndexes.clear(index);
+        }
+      }
+      items.clear();
+      unsortedItems.clear();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return items.iterator();
+    }
+  }
+
+  /**
+   * All items referenced by a program class, collected once so that the class can be added to a
+   * file again after a transaction is aborted without walking its code again.
+   */
+  private static class ClassItems {
+
+    final DexProgramClass clazz;
+    final DexField[] fields;
+    final DexMethod[] methods;
+    final DexProto[] protos;
+    final DexType[] types;
+    final DexString[] strings;
+    final DexCallSite[] callSites;
+    final DexMethodHandle[] methodHandles;
+
+    private ClassItems(DexProgramClass clazz, Collector collector) {
+      this.clazz = clazz;
+      this.fields = toArray(collector.fields, new DexField[collector.fields.size()]);
+      this.methods = toArray(collector.methods, new DexMethod[collector.methods.size()]);
+      this.protos = toArray(collector.protos, new DexProto[collector.protos.size()]);
+      this.types = toArray(collector.types, new DexType[collector.types.size()]);
+      this.strings = toArray(collector.strings, new DexString[collector.strings.size()]);
+      this.callSites = toArray(collector.callSites, new DexCallSite[collector.callSites.size()]);
+      this.methodHandles = toArray(
+          collector.methodHandles, new DexMethodHandle[collector.methodHandles.size()]);
+    }
+
+    private static <T extends IndexedDexItem> T[] toArray(IndexedItemSet<T> set, T[] array) {
+      int index = 0;
+      for (T item : set) {
+        array[index++] = item;
+      }
+      set.clear();
+      return array;
+    }
+
+    /**
+     * Collects the items in the order a transaction would, as if the file was empty.
+     *
+     * <p>A collector can be used for many classes, but not concurrently.
+     */
+    static class Collector implements IndexedItemCollection {
+
+      private final NamingLens namingLens;
+
+      private DexProgramClass clazz;
+      private final IndexedItemSet<DexField> fields = new IndexedItemSet<>();
+      private final IndexedItemSet<DexMethod> methods = new IndexedItemSet<>();
+      private final IndexedItemSet<DexProto> protos = new IndexedItemSet<>();
+      private final IndexedItemSet<DexType> types = new IndexedItemSet<>();
+      private final IndexedItemSet<DexString> strings = new IndexedItemSet<>();
+      private final IndexedItemSet<DexCallSite> callSites = new IndexedItemSet<>();
+      private final IndexedItemSet<DexMethodHandle> methodHandles = new IndexedItemSet<>();
+
+      Collector(NamingLens namingLens) {
+        this.namingLens = namingLens;
+      }
+
+      ClassItems collect(DexProgramClass clazz) {
+        this.clazz = clazz;
+        clazz.collectIndexedItems(this);
+        return new ClassItems(clazz, this);
+      }
+
+      @Override
+      public boolean addClass(DexProgramClass dexProgramClass) {
+        assert dexProgramClass == clazz;
+        return true;
+      }
+
+      @Override
+      public boolean addField(DexField field) {
+        return fields.add(field);
+      }
+
+      @Override
+      public boolean addMethod(DexMethod method) {
+        return methods.add(method);
+      }
+
+      @Override
+      public boolean addString(DexString string) {
+        return strings.add(string);
+      }
+
+      @Override
+      public boolean addProto(DexProto proto) {
+        return protos.add(proto);
+      }
+
+      @Override
+      public boolean addType(DexType type) {
+        return types.add(type);
+      }
+
+      @Override
+      public boolean addCallSite(DexCallSite callSite) {
+        return callSites.add(callSite);
+      }
+
+      @Override
+      public boolean addMethodHandle(DexMethodHandle methodHandle) {
+        return methodHandles.add(methodHandle);
+      }
+
+      @Override
+      public DexString getRenamedDescriptor(DexType type) {
+        return namingLens.lookupDescriptor(type);
+      }
+
+      @Override
+      public DexString getRenamedName(DexMethod method) {
+        assert namingLens.checkTargetCanBeTranslated(method);
+        return namingLens.lookupName(method);
+      }
+
+      @Override
+      public DexString getRenamedName(DexField field) {
+        return namingLens.lookupName(field);
+      }
+    }
+  }
+
   /**
    * Adds all classes from the given set that are covered by a corresponding package map
    * specification to the given file.
@@ -839,8 +1110,11 @@ public class VirtualFile {
      * next file.
      */
     private static final int MIN_FILL_FACTOR = 5;
+    // Number of classes to collect the items of in a single task.
+    private static final int CLASSES_PER_TASK = 1000;
 
     private final List<DexProgramClass> classes;
+    private final Map<DexProgramClass, ClassItems> classItems;
     private final Map<DexProgramClass, String> originalNames;
     private final Set<String> previousPrefixes;
     private final DexItemFactory dexItemFactory;
@@ -854,8 +1128,10 @@ public class VirtualFile {
         Set<String> previousPrefixes,
         DexItemFactory dexItemFactory,
         FillStrategy fillStrategy,
-        NamingLens namingLens) {
+        NamingLens namingLens,
+        ExecutorService executorService) throws ExecutionException {
       this.classes = new ArrayList<>(classes);
+      this.classItems = collectClassItems(this.classes, namingLens, executorService);
       this.originalNames = originalNames;
       this.previousPrefixes = previousPrefixes;
       this.dexItemFactory = dexItemFactory;
@@ -863,6 +1139,35 @@ public class VirtualFile {
       this.cycler = new VirtualFileCycler(files, namingLens, fillStrategy);
     }
 
+    /**
+     * Collects the items referenced by each class in parallel. Classes are added again each time
+     * a transaction is rolled back, which then does not need to walk the class again.
+     */
+    private static Map<DexProgramClass, ClassItems> collectClassItems(
+        List<DexProgramClass> classes, NamingLens namingLens, ExecutorService executorService)
+        throws ExecutionException {
+      List<Future<List<ClassItems>>> futures = new ArrayList<>();
+      for (int i = 0; i < classes.size(); i += CLASSES_PER_TASK) {
+        List<DexProgramClass> chunk =
+            classes.subList(i, Math.min(i + CLASSES_PER_TASK, classes.size()));
+        futures.add(executorService.submit(() -> {
+          ClassItems.Collector collector = new ClassItems.Collector(namingLens);
+          List<ClassItems> items = new ArrayList<>(chunk.size());
+          for (DexProgramClass clazz : chunk) {
+            items.add(collector.collect(clazz));
+          }
+          return items;
+        }));
+      }
+      Map<DexProgramClass, ClassItems> result = new IdentityHashMap<>(classes.size());
+      for (List<ClassItems> items : ThreadUtils.awaitFutures(futures)) {
+        for (ClassItems item : items) {
+          result.put(item.clazz, item);
+        }
+      }
+      return result;
+    }
+
     private String getOriginalName(DexProgramClass clazz) {
       return originalNames != null ? originalNames.get(clazz) : clazz.toString();
     }
@@ -913,7 +1218,7 @@ public class VirtualFile {
         }
         if (currentPrefix != null) {
           assert clazz.superType != null || clazz.type == dexItemFactory.objectType;
-          current.addClass(clazz);
+          current.addClass(classItems.get(clazz));
         } else {
           assert clazz.superType != null;
           // We don't have a package, add this to a list of classes that we will add last.
@@ -974,13 +1279,14 @@ public class VirtualFile {
         if (current.isFilledEnough(fillStrategy)) {
           current = getVirtualFile(cycler);
         }
-        current.addClass(clazz);
+        ClassItems items = classItems.get(clazz);
+        current.addClass(items);
         while (current.isFull()) {
           // This only happens if we have a huge class, that takes up more than 20% of a dex file.
           current.abortTransaction();
           current = getVirtualFile(cycler);
           boolean wasEmpty = current.isEmpty();
-          current.addClass(clazz);
+          current.addClass(items);
           if (wasEmpty && current.isFull()) {
             throw new InternalCompilerError(
                 "Class " + clazz.toString() + " does not fit into a single dex file.");
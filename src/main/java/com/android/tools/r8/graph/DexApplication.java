@@ -11,6 +11,7 @@ import com.android.tools.r8.utils.ClasspathClassCollection;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LibraryClassCollection;
 import com.android.tools.r8.utils.ProgramClassCollection;
+import com.android.tools.r8.utils.StartupProfile;
 import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.collect.ImmutableSet;
@@ -39,6 +40,8 @@ public class DexApplication {
 
   public final ImmutableSet<DexType> mainDexList;
 
+  public final StartupProfile startupProfile;
+
   private final ClassNameMapper proguardMap;
 
   public final Timing timing;
@@ -55,6 +58,7 @@ public class DexApplication {
       ClasspathClassCollection classpathClasses,
       LibraryClassCollection libraryClasses,
       ImmutableSet<DexType> mainDexList,
+      StartupProfile startupProfile,
       DexItemFactory dexItemFactory,
       DexString highestSortingString,
       Timing timing) {
@@ -64,6 +68,7 @@ public class DexApplication {
     this.classpathClasses = classpathClasses;
     this.libraryClasses = libraryClasses;
     this.mainDexList = mainDexList;
+    this.startupProfile = startupProfile;
     this.dexItemFactory = dexItemFactory;
     this.highestSortingString = highestSortingString;
     this.timing = timing;
@@ -312,6 +317,7 @@ public class DexApplication {
 
     public DexString highestSortingString;
     private final Set<DexType> mainDexList = Sets.newIdentityHashSet();
+    private StartupProfile startupProfile = StartupProfile.empty();
 
     public Builder(DexItemFactory dexItemFactory, Timing timing) {
       this.programClasses = new ArrayList<>();
@@ -330,6 +336,7 @@ public class DexApplication {
       highestSortingString = application.highestSortingString;
       dexItemFactory = application.dexItemFactory;
       mainDexList.addAll(application.mainDexList);
+      startupProfile = application.startupProfile;
     }
 
     public synchronized Builder setProguardMap(ClassNameMapper proguardMap) {
@@ -384,6 +391,12 @@ public class DexApplication {
       return this;
     }
 
+    public synchronized Builder setStartupProfile(StartupProfile startupProfile) {
+      assert startupProfile != null;
+      this.startupProfile = startupProfile;
+      return this;
+    }
+
     public DexApplication build() {
       return new DexApplication(
           proguardMap,
@@ -391,6 +404,7 @@ public class DexApplication {
           classpathClasses,
           libraryClasses,
           ImmutableSet.copyOf(mainDexList),
+          startupProfile,
           dexItemFactory,
           highestSortingString,
           timing);
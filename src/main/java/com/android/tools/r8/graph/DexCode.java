@@ -4,6 +4,7 @@
 package com.android.tools.r8.graph;
 
 import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.PackedInstructions;
 import com.android.tools.r8.code.ReturnVoid;
 import com.android.tools.r8.code.SwitchPayload;
 import com.android.tools.r8.dex.IndexedItemCollection;
@@ -33,7 +34,10 @@ public class DexCode extends Code {
   public final int outgoingRegisterSize;
   public final Try[] tries;
   public final TryHandler[] handlers;
+  // The instructions are either kept as objects, or packed. When packed this is null and the
+  // instructions are decoded on each call to getInstructions().
   public final Instruction[] instructions;
+  private final PackedInstructions packedInstructions;
 
   public final DexString highestSortingString;
   private DexDebugInfo debugInfo;
@@ -47,10 +51,26 @@ public class DexCode extends Code {
       TryHandler[] handlers,
       DexDebugInfo debugInfo,
       DexString highestSortingString) {
+    this(registerSize, insSize, outsSize, instructions, null, tries, handlers, debugInfo,
+        highestSortingString);
+  }
+
+  private DexCode(
+      int registerSize,
+      int insSize,
+      int outsSize,
+      Instruction[] instructions,
+      PackedInstructions packedInstructions,
+      Try[] tries,
+      TryHandler[] handlers,
+      DexDebugInfo debugInfo,
+      DexString highestSortingString) {
+    assert (instructions == null) != (packedInstructions == null);
     this.incomingRegisterSize = insSize;
     this.registerSize = registerSize;
     this.outgoingRegisterSize = outsSize;
     this.instructions = instructions;
+    this.packedInstructions = packedInstructions;
     this.tries = tries;
     this.handlers = handlers;
     this.debugInfo = debugInfo;
@@ -68,6 +88,35 @@ public class DexCode extends Code {
     return this;
   }
 
+  /**
+   * Returns a copy of this code with the instructions packed into code units, see
+   * {@link PackedInstructions}.
+   */
+  public DexCode pack() {
+    if (isPacked()) {
+      return this;
+    }
+    return new DexCode(registerSize, incomingRegisterSize, outgoingRegisterSize, null,
+        PackedInstructions.pack(instructions), tries, handlers, debugInfo, highestSortingString);
+  }
+
+  public boolean isPacked() {
+    return packedInstructions != null;
+  }
+
+  public PackedInstructions getPackedInstructions() {
+    assert isPacked();
+    return packedInstructions;
+  }
+
+  public Instruction[] getInstructions() {
+    return isPacked() ? packedInstructions.unpack() : instructions;
+  }
+
+  public int getInstructionCount() {
+    return isPacked() ? packedInstructions.getInstructionCount() : instructions.length;
+  }
+
   public DexDebugInfo getDebugInfo() {
     return debugInfo;
   }
@@ -88,6 +137,9 @@ public class DexCode extends Code {
   }
 
   public int codeSizeInBytes() {
+    if (isPacked()) {
+      return packedInstructions.getCodeUnitCount();
+    }
     Instruction last = instructions[instructions.length - 1];
     return last.getOffset() + last.getSize();
   }
@@ -97,7 +149,7 @@ public class DexCode extends Code {
     return incomingRegisterSize * 2
         + registerSize * 3
         + outgoingRegisterSize * 5
-        + Arrays.hashCode(instructions) * 7
+        + (isPacked() ? packedInstructions.hashCode() : Arrays.hashCode(instructions)) * 7
         + ((debugInfo == null) ? 0 : debugInfo.hashCode()) * 11
         + Arrays.hashCode(tries) * 13
         + Arrays.hashCode(handlers) * 17;
@@ -131,14 +183,18 @@ public class DexCode extends Code {
       if (!Arrays.equals(handlers, o.handlers)) {
         return false;
       }
-      // Save the most expensive operation to last.
+      // Save the most expensive operation to last. Packed and unpacked code are not compared, they
+      // are never equal.
+      if (isPacked() || o.isPacked()) {
+        return isPacked() && o.isPacked() && packedInstructions.equals(o.packedInstructions);
+      }
       return Arrays.equals(instructions, o.instructions);
     }
     return false;
   }
 
   boolean isEmptyVoidMethod() {
-    return instructions.length == 1 && instructions[0] instanceof ReturnVoid;
+    return getInstructionCount() == 1 && getInstructions()[0] instanceof ReturnVoid;
   }
 
   @Override
@@ -159,7 +215,7 @@ public class DexCode extends Code {
 
   @Override
   public void registerReachableDefinitions(UseRegistry registry) {
-    for (Instruction insn : instructions) {
+    for (Instruction insn : getInstructions()) {
       insn.registerUse(registry);
     }
   }
@@ -183,7 +239,7 @@ public class DexCode extends Code {
       debugInfo = debugInfoIterator.hasNext() ? debugInfoIterator.next() : null;
     }
     int instructionNumber = 0;
-    for (Instruction insn : instructions) {
+    for (Instruction insn : getInstructions()) {
       while (debugInfo != null && debugInfo.address == insn.getOffset()) {
         builder.append("      ").append(debugInfo).append("\n");
         debugInfo = debugInfoIterator.hasNext() ? debugInfoIterator.next() : null;
@@ -216,11 +272,12 @@ public class DexCode extends Code {
 
   public String toSmaliString(ClassNameMapper naming) {
     StringBuilder builder = new StringBuilder();
+    Instruction[] insns = getInstructions();
     // Find labeled targets.
     Map<Integer, Instruction> payloadUsers = new HashMap<>();
     Set<Integer> labledTargets = new HashSet<>();
     // Collect payload users and labeled targets for non-payload instructions.
-    for (Instruction dex : instructions) {
+    for (Instruction dex : insns) {
       int[] targets = dex.getTargets();
       if (targets != Instruction.NO_TARGETS && targets != Instruction.EXIT_TARGET) {
         assert targets.length <= 2;
@@ -232,7 +289,7 @@ public class DexCode extends Code {
       }
     }
     // Collect labeled targets for payload instructions.
-    for (Instruction dex : instructions) {
+    for (Instruction dex : insns) {
       if (dex.isSwitchPayload()) {
         Instruction payloadUser = payloadUsers.get(dex.getOffset());
         if (dex instanceof SwitchPayload) {
@@ -244,7 +301,7 @@ public class DexCode extends Code {
       }
     }
     // Generate smali for all instructions.
-    for (Instruction dex : instructions) {
+    for (Instruction dex : insns) {
       if (labledTargets.contains(dex.getOffset())) {
         builder.append("  :label_");
         builder.append(dex.getOffset());
@@ -276,8 +333,12 @@ public class DexCode extends Code {
   }
 
   public void collectIndexedItems(IndexedItemCollection indexedItems) {
-    for (Instruction insn : instructions) {
-      insn.collectIndexedItems(indexedItems);
+    if (isPacked()) {
+      packedInstructions.collectIndexedItems(indexedItems);
+    } else {
+      for (Instruction insn : instructions) {
+        insn.collectIndexedItems(indexedItems);
+      }
     }
     if (debugInfo != null) {
       debugInfo.collectIndexedItems(indexedItems);
@@ -16,6 +16,10 @@ public class DexEncodedField extends KeyedDexItem<DexField> {
   public final DexAccessFlags accessFlags;
   public DexAnnotationSet annotations;
   public final DexValue staticValue;
+  // Constant value of a static field that is only written once, by the class initializer of its
+  // holder before anything else can observe the field.
+  private boolean hasConstantValue = false;
+  private long constantValue = 0;
 
   public DexEncodedField(DexField field, DexAccessFlags accessFlags, DexAnnotationSet annotations,
       DexValue staticValue) {
@@ -76,6 +80,22 @@ public class DexEncodedField extends KeyedDexItem<DexField> {
     return null;
   }
 
+  public void markConstantValue(long value) {
+    assert accessFlags.isStatic();
+    assert !hasConstantValue || constantValue == value;
+    hasConstantValue = true;
+    constantValue = value;
+  }
+
+  public boolean hasConstantValue() {
+    return hasConstantValue;
+  }
+
+  public long getConstantValue() {
+    assert hasConstantValue;
+    return constantValue;
+  }
+
   public DexEncodedField toRenamedField(DexString name, DexItemFactory dexItemFactory) {
     return new DexEncodedField(dexItemFactory.createField(field.clazz, field.type, name),
         accessFlags, annotations, staticValue);
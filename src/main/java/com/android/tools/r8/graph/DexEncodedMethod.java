@@ -158,6 +158,11 @@ public class DexEncodedMethod extends KeyedDexItem<DexMethod> {
     code = builder.build(method.proto.parameters.values.length);
   }
 
+  // Keeps the instructions of the dex code packed until the code is written, see DexCode.pack().
+  public void packCode() {
+    code = code.asDexCode().pack();
+  }
+
   public String toString() {
     return "Encoded method " + method;
   }
@@ -280,6 +280,15 @@ public class DexItemFactory {
     return previous == null ? item : previous;
   }
 
+  synchronized private static <T extends IndexedDexItem> T canonicalizeWithId(
+      Map<T, T> map, T item) {
+    T result = canonicalize(map, item);
+    if (result == item) {
+      item.setId(map.size() - 1);
+    }
+    return result;
+  }
+
   synchronized private DexString canonicalizeString(String key) {
     assert key != null;
     return strings.computeIfAbsent(key, k -> new DexString(k));
@@ -298,7 +307,7 @@ public class DexItemFactory {
   public DexType createType(DexString descriptor) {
     assert !sorted;
     DexType type = new DexType(descriptor);
-    return canonicalize(types, type);
+    return canonicalizeWithId(types, type);
   }
 
   public DexType createType(String descriptor) {
@@ -308,7 +317,7 @@ public class DexItemFactory {
   public DexField createField(DexType clazz, DexType type, DexString name) {
     assert !sorted;
     DexField field = new DexField(clazz, type, name);
-    return canonicalize(fields, field);
+    return canonicalizeWithId(fields, field);
   }
 
   public DexField createField(DexType clazz, DexType type, String name) {
@@ -343,7 +352,7 @@ public class DexItemFactory {
   public DexMethod createMethod(DexType holder, DexProto proto, DexString name) {
     assert !sorted;
     DexMethod method = new DexMethod(holder, proto, name);
-    return canonicalize(methods, method);
+    return canonicalizeWithId(methods, method);
   }
 
   public DexMethod createMethod(DexType holder, DexProto proto, String name) {
@@ -16,11 +16,15 @@ import java.util.Map;
  * <li>Renaming private methods/fields.</li>
  * <li>Moving methods/fields to a super/subclass.</li>
  * <li>Replacing method/field references by the same method/field on a super/subtype</li>
+ * <li>Mapping a constructor to a constructor taking an additional int argument, which is the type
+ * tag returned by {@link #lookupTypeTag}.</li>
  * </ul>
- * Note that the latter two have to take visibility into account.
+ * Note that the latter three have to take visibility into account.
  */
 public abstract class GraphLense {
 
+  public static final int NO_TYPE_TAG = -1;
+
   public static class Builder {
 
     private Builder() {
@@ -63,6 +67,12 @@ public abstract class GraphLense {
 
   public abstract DexField lookupField(DexField field, DexEncodedMethod context);
 
+  /**
+   * Returns the constant to pass as additional last argument when invoking the method, or
+   * {@link #NO_TYPE_TAG} if the invoke keeps its arguments.
+   */
+  public abstract int lookupTypeTag(DexMethod method, DexEncodedMethod context);
+
   public abstract boolean isContextFree();
 
   public static GraphLense getIdentityLense() {
@@ -90,6 +100,11 @@ public abstract class GraphLense {
       return field;
     }
 
+    @Override
+    public int lookupTypeTag(DexMethod method, DexEncodedMethod context) {
+      return NO_TYPE_TAG;
+    }
+
     @Override
     public boolean isContextFree() {
       return true;
@@ -147,6 +162,11 @@ public abstract class GraphLense {
       return fieldMap.getOrDefault(previous, previous);
     }
 
+    @Override
+    public int lookupTypeTag(DexMethod method, DexEncodedMethod context) {
+      return previousLense.lookupTypeTag(method, context);
+    }
+
     @Override
     public boolean isContextFree() {
       return previousLense.isContextFree();
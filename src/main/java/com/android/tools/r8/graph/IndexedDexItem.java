@@ -14,6 +14,9 @@ public abstract class IndexedDexItem extends CanonicalizedDexItem implements Pre
 
   private static final int SORTED_INDEX_UNKNOWN = -1;
   private int sortedIndex = SORTED_INDEX_UNKNOWN; // assigned globally after reading.
+  public static final int ID_UNKNOWN = -1;
+  // Sequential number among the items of the same kind, assigned when the item is canonicalized.
+  private int id = ID_UNKNOWN;
   /**
    * Contains the indexes assigned to this item for the various virtual output files.
    *
@@ -130,6 +133,20 @@ public abstract class IndexedDexItem extends CanonicalizedDexItem implements Pre
         : UNASSOCIATED_VALUE;
   }
 
+  void setId(int id) {
+    assert this.id == ID_UNKNOWN;
+    this.id = id;
+  }
+
+  /**
+   * Returns the sequential number of this item among the canonicalized types, fields or methods,
+   * or {@link #ID_UNKNOWN} if no number has been assigned. The numbers are dense and are not
+   * reset, so they can be used as indexes into arrays.
+   */
+  public final int getId() {
+    return id;
+  }
+
   // Partial implementation of PresortedComparable.
 
   final public void setSortedIndex(int sortedIndex) {
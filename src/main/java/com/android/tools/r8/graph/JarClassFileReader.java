@@ -3,6 +3,7 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.graph;
 
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
 import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
 import static org.objectweb.asm.Opcodes.ACC_DEPRECATED;
 import static org.objectweb.asm.Opcodes.ASM5;
@@ -62,8 +63,10 @@ public class JarClassFileReader {
 
   public void read(String file, ClassKind classKind, InputStream input) throws IOException {
     ClassReader reader = new ClassReader(input);
+    // Code is only ever built for program classes, don't let ASM visit it for other classes.
+    int flags = classKind == ClassKind.PROGRAM ? SKIP_FRAMES : SKIP_FRAMES | SKIP_CODE;
     reader.accept(new CreateDexClassVisitor(
-        file, classKind, reader.b, application, classConsumer), SKIP_FRAMES);
+        file, classKind, reader, application, classConsumer), flags);
   }
 
   private static DexAccessFlags createAccessFlags(int access) {
@@ -118,14 +121,14 @@ public class JarClassFileReader {
     public CreateDexClassVisitor(
         String file,
         ClassKind classKind,
-        byte[] classCache,
+        ClassReader classReader,
         JarApplicationReader application,
         Consumer<DexClass> classConsumer) {
       super(ASM5);
       this.file = file;
       this.classKind = classKind;
       this.classConsumer = classConsumer;
-      this.context.classCache = classCache;
+      this.context.classReader = classReader;
       this.application = application;
     }
 
@@ -261,9 +264,6 @@ public class JarClassFileReader {
           instanceFields.toArray(new DexEncodedField[instanceFields.size()]),
           directMethods.toArray(new DexEncodedMethod[directMethods.size()]),
           virtualMethods.toArray(new DexEncodedMethod[virtualMethods.size()]));
-      if (classKind == ClassKind.PROGRAM) {
-        context.owner = clazz.asProgramClass();
-      }
       classConsumer.accept(clazz);
     }
 
@@ -12,7 +12,6 @@ import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.utils.InternalOptions;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.IdentityHashMap;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -24,27 +23,26 @@ import org.objectweb.asm.util.TraceMethodVisitor;
 
 public class JarCode extends Code {
 
+  /**
+   * Shared by all the methods of a class. Once all the JarCode of the class are swapped for the
+   * actual code, no other references are left and the content of the class can be GC'd.
+   */
   public static class ReparseContext {
 
-    // This will hold the content of the whole class. Once all the methods of the class are swapped
-    // from this to the actual JarCode, no other references would be left and the content can be
-    // GC'd.
-    public byte[] classCache;
-    public DexProgramClass owner;
-    private IdentityHashMap<DexMethod, JarCode> lookupMap = new IdentityHashMap<>();
+    // The class reader keeps the content of the whole class. Parsing the constant pool is done
+    // once when creating it, and methods are then read from it one at a time.
+    public ClassReader classReader;
   }
 
-  private final DexType clazz;
-  private MethodNode node;
-  private ReparseContext context;
+  private final DexMethod method;
+  private final ReparseContext context;
 
   private final JarApplicationReader application;
 
   public JarCode(DexMethod method, ReparseContext context, JarApplicationReader application) {
-    this.clazz = method.getHolder();
+    this.method = method;
     this.context = context;
     this.application = application;
-    context.lookupMap.put(method, this);
   }
 
   @Override
@@ -59,53 +57,39 @@ public class JarCode extends Code {
 
   @Override
   protected int computeHashCode() {
-    triggerDelayedParsingIfNeccessary();
-    return node.hashCode();
+    return System.identityHashCode(this);
   }
 
   @Override
   protected boolean computeEquals(Object other) {
-    triggerDelayedParsingIfNeccessary();
-    if (this == other) {
-      return true;
-    }
-    if (other instanceof JarCode) {
-      JarCode o = (JarCode) other;
-      o.triggerDelayedParsingIfNeccessary();
-      // TODO(zerny): This amounts to object equality.
-      return node.equals(o.node);
-    }
-    return false;
+    // Each JarCode is backed by its own method in the class file.
+    return this == other;
   }
 
   @Override
   public IRCode buildIR(DexEncodedMethod encodedMethod, InternalOptions options) {
-    triggerDelayedParsingIfNeccessary();
-    JarSourceCode source = new JarSourceCode(clazz, node, application);
+    JarSourceCode source = new JarSourceCode(method.getHolder(), parseMethod(), application);
     IRBuilder builder = new IRBuilder(encodedMethod, source, options);
     return builder.build();
   }
 
   public IRCode buildIR(DexEncodedMethod encodedMethod, ValueNumberGenerator generator,
       InternalOptions options) {
-    triggerDelayedParsingIfNeccessary();
-    JarSourceCode source = new JarSourceCode(clazz, node, application);
+    JarSourceCode source = new JarSourceCode(method.getHolder(), parseMethod(), application);
     IRBuilder builder = new IRBuilder(encodedMethod, source, generator, options);
     return builder.build();
   }
 
-
   @Override
   public void registerReachableDefinitions(UseRegistry registry) {
-    triggerDelayedParsingIfNeccessary();
-    node.instructions.accept(new JarRegisterEffectsVisitor(clazz, registry, application));
+    parseMethod().instructions.accept(
+        new JarRegisterEffectsVisitor(method.getHolder(), registry, application));
   }
 
   @Override
   public String toString() {
-    triggerDelayedParsingIfNeccessary();
     TraceMethodVisitor visitor = new TraceMethodVisitor(new Textifier());
-    node.accept(visitor);
+    parseMethod().accept(visitor);
     StringWriter writer = new StringWriter();
     visitor.p.print(new PrintWriter(writer));
     return writer.toString();
@@ -116,62 +100,41 @@ public class JarCode extends Code {
     return toString();
   }
 
-  private void triggerDelayedParsingIfNeccessary() {
-    if (context != null) {
-      // The SecondVistor is in charge of setting the context to null.
-      DexProgramClass owner = context.owner;
-      new ClassReader(context.classCache).accept(new SecondVisitor(context, application),
-          ClassReader.SKIP_FRAMES);
-      assert verifyNoReparseContext(owner);
-    }
-  }
-
   /**
-   * Fills the MethodNodes of all the methods in the class and removes the ReparseContext.
+   * Reads the MethodNode of this method from the class content.
+   *
+   * <p>The node is not kept, so only the methods currently being traced or converted hold their
+   * ASM structures. Only the code of this method is read, ASM skips the code of the other methods
+   * in the class.
    */
-  private static class SecondVisitor extends ClassVisitor {
+  private MethodNode parseMethod() {
+    MethodFinder finder = new MethodFinder(method.name.toString(),
+        method.proto.toDescriptorString());
+    context.classReader.accept(finder, ClassReader.SKIP_FRAMES);
+    assert finder.node != null;
+    return finder.node;
+  }
 
-    private final ReparseContext context;
-    private final JarApplicationReader application;
+  private static class MethodFinder extends ClassVisitor {
 
-    public SecondVisitor(ReparseContext context, JarApplicationReader application) {
+    private final String name;
+    private final String desc;
+    private MethodNode node;
+
+    public MethodFinder(String name, String desc) {
       super(Opcodes.ASM5);
-      this.context = context;
-      this.application = application;
+      this.name = name;
+      this.desc = desc;
     }
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature,
         String[] exceptions) {
-      MethodNode node = new JSRInlinerAdapter(null, access, name, desc, signature, exceptions);
-      JarCode code = context.lookupMap.get(application.getMethod(context.owner.type, name, desc));
-      if (code != null) {
-        code.context = null;
-        code.node = node;
-        return node;
-      }
-      return null;
-    }
-  }
-
-  private static boolean verifyNoReparseContext(DexProgramClass owner) {
-    for (DexEncodedMethod method : owner.virtualMethods()) {
-      Code code = method.getCode();
-      if (code != null && code.isJarCode()) {
-        if (code.asJarCode().context != null) {
-          return false;
-        }
+      if (node != null || !this.name.equals(name) || !this.desc.equals(desc)) {
+        return null;
       }
+      node = new JSRInlinerAdapter(null, access, name, desc, signature, exceptions);
+      return node;
     }
-
-    for (DexEncodedMethod method : owner.directMethods()) {
-      Code code = method.getCode();
-      if (code != null && code.isJarCode()) {
-        if (code.asJarCode().context != null) {
-          return false;
-        }
-      }
-    }
-    return true;
   }
 }
@@ -4,6 +4,7 @@
 package com.android.tools.r8.graph;
 
 import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.utils.StartupProfile;
 import com.google.common.collect.Sets;
 import java.util.Arrays;
 import java.util.Collections;
@@ -77,9 +78,40 @@ public class ObjectToOffsetMapping {
     setIndexes(methodHandles);
   }
 
+  /**
+   * For mappings that are not backed by a virtual file and compute the offsets themselves.
+   */
+  protected ObjectToOffsetMapping() {
+    this.virtualFileId = -1;
+    this.classes = null;
+    this.protos = null;
+    this.types = null;
+    this.methods = null;
+    this.fields = null;
+    this.strings = null;
+    this.callSites = null;
+    this.methodHandles = null;
+  }
+
   private static DexProgramClass[] sortClasses(
       DexApplication application, DexProgramClass[] classes) {
-    Arrays.sort(classes, (o1, o2) -> o1.type.descriptor.slowCompareTo(o2.type.descriptor));
+    // Startup classes come first, in the order they are first used, so their class defs and
+    // class data are close together. The visitor below then moves super types up front.
+    StartupProfile startupProfile = application.startupProfile;
+    Arrays.sort(classes, (o1, o2) -> {
+      int index1 = startupProfile.getClassIndex(o1.type);
+      int index2 = startupProfile.getClassIndex(o2.type);
+      if (index1 != index2) {
+        if (index1 < 0) {
+          return 1;
+        }
+        if (index2 < 0) {
+          return -1;
+        }
+        return Integer.compare(index1, index2);
+      }
+      return o1.type.descriptor.slowCompareTo(o2.type.descriptor);
+    });
     SortingProgramClassVisitor classVisitor = new SortingProgramClassVisitor(application, classes);
     classVisitor.run(classes);
     return classVisitor.getSortedClasses();
@@ -26,4 +26,14 @@ public abstract class UseRegistry {
   public abstract boolean registerStaticFieldWrite(DexField field);
 
   public abstract boolean registerTypeReference(DexType type);
+
+  /**
+   * Registers a type in the proto of a call site or the holder of one of its method handles.
+   *
+   * <p>The members these refer to are registered through the other methods as well, so this is
+   * ignored by default.
+   */
+  public boolean registerCallSiteReference(DexType type) {
+    return false;
+  }
 }
@@ -7,6 +7,7 @@ package com.android.tools.r8.ir.code;
 import com.android.tools.r8.code.Instruction;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public abstract class ArithmeticBinop extends Binop {
 
@@ -55,32 +56,34 @@ public abstract class ArithmeticBinop extends Binop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return evaluateConstantInValues(code);
+  }
+
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber leftConst = getConstant.apply(leftValue());
+    ConstNumber rightConst = getConstant.apply(rightValue());
+    if (leftConst == null || rightConst == null) {
+      return null;
+    }
     if (type == NumericType.INT) {
-      int left = leftValue().getConstInstruction().asConstNumber().getIntValue();
-      int right = rightValue().getConstInstruction().asConstNumber().getIntValue();
-      int result = foldIntegers(left, right);
+      int result = foldIntegers(leftConst.getIntValue(), rightConst.getIntValue());
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else if (type == NumericType.LONG) {
-      long left = leftValue().getConstInstruction().asConstNumber().getLongValue();
-      long right = rightValue().getConstInstruction().asConstNumber().getLongValue();
-      long result = foldLongs(left, right);
+      long result = foldLongs(leftConst.getLongValue(), rightConst.getLongValue());
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.LONG, value, result);
     } else if (type == NumericType.FLOAT) {
-      float left = leftValue().getConstInstruction().asConstNumber().getFloatValue();
-      float right = rightValue().getConstInstruction().asConstNumber().getFloatValue();
-      float result = foldFloat(left, right);
+      float result = foldFloat(leftConst.getFloatValue(), rightConst.getFloatValue());
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.FLOAT, value, Float.floatToIntBits(result));
-    } else {
-      assert type == NumericType.DOUBLE;
-      double left = leftValue().getConstInstruction().asConstNumber().getDoubleValue();
-      double right = rightValue().getConstInstruction().asConstNumber().getDoubleValue();
-      double result = foldDouble(left, right);
+    } else if (type == NumericType.DOUBLE) {
+      double result = foldDouble(leftConst.getDoubleValue(), rightConst.getDoubleValue());
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.DOUBLE, value, Double.doubleToLongBits(result));
     }
+    return null;
   }
 
   @Override
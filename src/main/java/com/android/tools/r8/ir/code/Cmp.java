@@ -15,6 +15,7 @@ import com.android.tools.r8.ir.conversion.DexBuilder;
 import com.android.tools.r8.utils.LongInterval;
 import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.StringUtils.BraceType;
+import java.util.function.Function;
 
 public class Cmp extends Binop {
 
@@ -149,21 +150,30 @@ public class Cmp extends Binop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    if (leftValue().isConstant() && rightValue().isConstant()) {
+      return evaluateConstantInValues(code);
+    }
+    assert nonOverlapingRanges();
+    LongInterval leftRange = leftValue().getValueRange();
+    LongInterval rightRange = rightValue().getValueRange();
+    int result = Integer.signum(Long.compare(leftRange.getMin(), rightRange.getMin()));
+    Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
+    return new ConstNumber(ConstType.INT, value, result);
+  }
+
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber leftConst = getConstant.apply(leftValue());
+    ConstNumber rightConst = getConstant.apply(rightValue());
+    if (leftConst == null || rightConst == null) {
+      return null;
+    }
     int result;
     if (type == NumericType.LONG) {
-      if (leftValue().isConstant() && rightValue().isConstant()) {
-        long left = leftValue().getConstInstruction().asConstNumber().getLongValue();
-        long right = rightValue().getConstInstruction().asConstNumber().getLongValue();
-        result = Integer.signum(Long.compare(left, right));
-      } else {
-        assert nonOverlapingRanges();
-        LongInterval leftRange = leftValue().getValueRange();
-        LongInterval rightRange = rightValue().getValueRange();
-        result = Integer.signum(Long.compare(leftRange.getMin(), rightRange.getMin()));
-      }
+      result = Integer.signum(Long.compare(leftConst.getLongValue(), rightConst.getLongValue()));
     } else if (type == NumericType.FLOAT) {
-      float left = leftValue().getConstInstruction().asConstNumber().getFloatValue();
-      float right = rightValue().getConstInstruction().asConstNumber().getFloatValue();
+      float left = leftConst.getFloatValue();
+      float right = rightConst.getFloatValue();
       if (Float.isNaN(left) || Float.isNaN(right)) {
         result = bias == Bias.GT ? 1 : -1;
       } else {
@@ -171,8 +181,8 @@ public class Cmp extends Binop {
       }
     } else {
       assert type == NumericType.DOUBLE;
-      double left = leftValue().getConstInstruction().asConstNumber().getDoubleValue();
-      double right = rightValue().getConstInstruction().asConstNumber().getDoubleValue();
+      double left = leftConst.getDoubleValue();
+      double right = rightConst.getDoubleValue();
       if (Double.isNaN(left) || Double.isNaN(right)) {
         result = bias == Bias.GT ? 1 : -1;
       } else {
@@ -14,6 +14,7 @@ import com.android.tools.r8.code.DivIntLit16;
 import com.android.tools.r8.code.DivIntLit8;
 import com.android.tools.r8.code.DivLong;
 import com.android.tools.r8.code.DivLong2Addr;
+import java.util.function.Function;
 
 public class Div extends ArithmeticBinop {
 
@@ -91,6 +92,15 @@ public class Div extends ArithmeticBinop {
     return super.canBeFolded() && !rightValue().getConstInstruction().asConstNumber().isZero();
   }
 
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber rightConst = getConstant.apply(rightValue());
+    if (rightConst == null || rightConst.isZero()) {
+      return null;
+    }
+    return super.evaluate(code, getConstant);
+  }
+
   @Override
   int foldIntegers(int left, int right) {
     return left / right;
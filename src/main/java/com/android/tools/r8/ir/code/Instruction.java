@@ -18,6 +18,7 @@ import com.android.tools.r8.utils.StringUtils.BraceType;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 public abstract class Instruction {
 
@@ -838,6 +839,21 @@ public abstract class Instruction {
     throw new Unreachable("Unsupported folding for " + this);
   }
 
+  /**
+   * Compute the value of this instruction for the in-values given by {@code getConstant}, which
+   * returns null for an in-value that is not known to be constant.
+   *
+   * <p>Returns null if the value is not known. The returned constant is not added to the code.
+   */
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    return null;
+  }
+
+  // Evaluate this instruction for in-values that are all defined by constant instructions.
+  ConstNumber evaluateConstantInValues(IRCode code) {
+    return evaluate(code, value -> value.getConstInstruction().asConstNumber());
+  }
+
   // Returns the inlining constraint for this instruction.
   public Constraint inliningConstraint(AppInfo info, DexType holder) {
     return Constraint.NEVER;
@@ -6,6 +6,7 @@ package com.android.tools.r8.ir.code;
 import com.android.tools.r8.code.Instruction;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public abstract class LogicalBinop extends Binop {
 
@@ -33,21 +34,29 @@ public abstract class LogicalBinop extends Binop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return evaluateConstantInValues(code);
+  }
+
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber leftConst = getConstant.apply(leftValue());
+    ConstNumber rightConst = getConstant.apply(rightValue());
+    if (leftConst == null || rightConst == null) {
+      return null;
+    }
     if (type == NumericType.INT) {
-      int left = leftValue().getConstInstruction().asConstNumber().getIntValue();
-      int right = rightValue().getConstInstruction().asConstNumber().getIntValue();
-      int result = foldIntegers(left, right);
+      int result = foldIntegers(leftConst.getIntValue(), rightConst.getIntValue());
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else {
       assert type == NumericType.LONG;
-      long left = leftValue().getConstInstruction().asConstNumber().getLongValue();
+      long left = leftConst.getLongValue();
       long right;
       if (isShl() || isShr() || isUshr()) {
         // Right argument for shl, shr and ushr is always of type single.
-        right = rightValue().getConstInstruction().asConstNumber().getIntValue();
+        right = rightConst.getIntValue();
       } else {
-        right = rightValue().getConstInstruction().asConstNumber().getLongValue();
+        right = rightConst.getLongValue();
       }
       long result = foldLongs(left, right);
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
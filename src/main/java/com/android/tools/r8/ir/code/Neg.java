@@ -9,6 +9,7 @@ import com.android.tools.r8.code.NegInt;
 import com.android.tools.r8.code.NegLong;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public class Neg extends Unop {
 
@@ -29,24 +30,33 @@ public class Neg extends Unop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return evaluateConstantInValues(code);
+  }
+
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber sourceConst = getConstant.apply(source());
+    if (sourceConst == null) {
+      return null;
+    }
     if (type == NumericType.INT) {
-      int result = -source().getConstInstruction().asConstNumber().getIntValue();
+      int result = -sourceConst.getIntValue();
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else if (type == NumericType.LONG) {
-      long result = -source().getConstInstruction().asConstNumber().getLongValue();
+      long result = -sourceConst.getLongValue();
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.LONG, value, result);
     } else if (type == NumericType.FLOAT) {
-      float result = -source().getConstInstruction().asConstNumber().getFloatValue();
+      float result = -sourceConst.getFloatValue();
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.FLOAT, value, Float.floatToIntBits(result));
-    } else {
-      assert type == NumericType.DOUBLE;
-      double result = -source().getConstInstruction().asConstNumber().getDoubleValue();
+    } else if (type == NumericType.DOUBLE) {
+      double result = -sourceConst.getDoubleValue();
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.DOUBLE, value, Double.doubleToLongBits(result));
     }
+    return null;
   }
 
   @Override
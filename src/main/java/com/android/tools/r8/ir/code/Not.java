@@ -7,6 +7,7 @@ import com.android.tools.r8.code.NotInt;
 import com.android.tools.r8.code.NotLong;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.ir.conversion.DexBuilder;
+import java.util.function.Function;
 
 public class Not extends Unop {
 
@@ -25,13 +26,22 @@ public class Not extends Unop {
   @Override
   public ConstInstruction fold(IRCode code) {
     assert canBeFolded();
+    return evaluateConstantInValues(code);
+  }
+
+  @Override
+  public ConstNumber evaluate(IRCode code, Function<Value, ConstNumber> getConstant) {
+    ConstNumber sourceConst = getConstant.apply(source());
+    if (sourceConst == null) {
+      return null;
+    }
     if (type == NumericType.INT) {
-      int result = ~(source().getConstInstruction().asConstNumber().getIntValue());
+      int result = ~sourceConst.getIntValue();
       Value value = code.createValue(MoveType.SINGLE, getDebugInfo());
       return new ConstNumber(ConstType.INT, value, result);
     } else {
       assert type == NumericType.LONG;
-      long result = ~source().getConstInstruction().asConstNumber().getLongValue();
+      long result = ~sourceConst.getLongValue();
       Value value = code.createValue(MoveType.WIDE, getDebugInfo());
       return new ConstNumber(ConstType.LONG, value, result);
     }
@@ -7,6 +7,7 @@ package com.android.tools.r8.ir.conversion;
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.DexApplication;
 import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexField;
 import com.android.tools.r8.graph.DexMethod;
@@ -18,8 +19,10 @@ import com.android.tools.r8.ir.code.Invoke;
 import com.android.tools.r8.ir.code.Invoke.Type;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -42,6 +45,11 @@ import java.util.Set;
  * many calls of <code>a</code> there are in <code>a</code>.
  * <p>
  * Recursive calls are not present.
+ * <p>
+ * A method reading a static field of its own class or a supertype also has an edge to the class
+ * initializer of the field holder, so the class initializer is processed first. These edges are
+ * not counted as call sites, and they are only added once the cycles of real calls have been
+ * broken, and only if they do not form a new cycle.
  */
 public class CallGraph {
 
@@ -57,6 +65,10 @@ public class CallGraph {
     // Incoming calls to this method.
     private final Set<Node> callers = new LinkedHashSet<>();
 
+    // Class initializers to process before this method, added to the callees after breaking
+    // cycles.
+    private final Set<Node> classInitializerDependencies = new LinkedHashSet<>();
+
     private Node(DexEncodedMethod method) {
       this.method = method;
     }
@@ -157,6 +169,7 @@ public class CallGraph {
     }
     assert allMethodsExists(application, graph);
     graph.breakCycles();
+    graph.addClassInitializerDependencies();
     assert graph.breakCycles() == 0;  // This time the cycles should be gone.
     graph.fillCallSiteSets(appInfo);
     graph.fillInitialLeaves();
@@ -295,6 +308,86 @@ public class CallGraph {
     return numberOfCycles;
   }
 
+  // Add the edges to the class initializers to the call graph, which has no cycles at this point.
+  // All edges are added tentatively, and the ones which end up on a cycle, that is the ones
+  // within a strongly connected component, are removed again. Every cycle goes through at least
+  // one of the new edges, so cycle breaking never has to remove a real call edge in favor of one
+  // of these edges.
+  private void addClassInitializerDependencies() {
+    List<Node> sources = new ArrayList<>();
+    List<Node> targets = new ArrayList<>();
+    for (Node node : nodes.values()) {
+      for (Node classInitializer : node.classInitializerDependencies) {
+        // Edges which are already present as calls are left alone.
+        if (node.callees.add(classInitializer)) {
+          sources.add(node);
+          targets.add(classInitializer);
+        }
+      }
+      node.classInitializerDependencies.clear();
+    }
+    if (sources.isEmpty()) {
+      return;
+    }
+    Map<Node, Integer> components = new StronglyConnectedComponents().compute(nodes.values());
+    for (int i = 0; i < sources.size(); i++) {
+      Node node = sources.get(i);
+      Node classInitializer = targets.get(i);
+      if (components.get(node).equals(components.get(classInitializer))) {
+        node.callees.remove(classInitializer);
+      } else {
+        classInitializer.addCaller(node);
+      }
+    }
+  }
+
+  // Tarjan's algorithm, numbering the strongly connected components of the callee edges.
+  private static class StronglyConnectedComponents {
+
+    private final Map<Node, Integer> index = new HashMap<>();
+    private final Map<Node, Integer> lowLink = new HashMap<>();
+    private final Deque<Node> stack = new ArrayDeque<>();
+    private final Set<Node> onStack = new HashSet<>();
+    private final Map<Node, Integer> components = new HashMap<>();
+    private int componentCount = 0;
+
+    Map<Node, Integer> compute(Iterable<Node> nodes) {
+      for (Node node : nodes) {
+        if (!index.containsKey(node)) {
+          visit(node);
+        }
+      }
+      return components;
+    }
+
+    private void visit(Node node) {
+      int nodeIndex = index.size();
+      index.put(node, nodeIndex);
+      int nodeLowLink = nodeIndex;
+      stack.push(node);
+      onStack.add(node);
+      for (Node callee : node.callees) {
+        Integer calleeIndex = index.get(callee);
+        if (calleeIndex == null) {
+          visit(callee);
+          nodeLowLink = Math.min(nodeLowLink, lowLink.get(callee));
+        } else if (onStack.contains(callee)) {
+          nodeLowLink = Math.min(nodeLowLink, calleeIndex);
+        }
+      }
+      lowLink.put(node, nodeLowLink);
+      if (nodeLowLink == nodeIndex) {
+        int component = componentCount++;
+        Node member;
+        do {
+          member = stack.pop();
+          onStack.remove(member);
+          components.put(member, component);
+        } while (member != node);
+      }
+    }
+  }
+
   synchronized private Node ensureMethodNode(DexEncodedMethod method) {
     return nodes.computeIfAbsent(method, k -> new Node(method));
   }
@@ -311,6 +404,14 @@ public class CallGraph {
     callee.invokeCount++;
   }
 
+  synchronized private void addClassInitializerDependency(Node method, Node classInitializer) {
+    assert method != null;
+    assert classInitializer != null;
+    if (method != classInitializer) {
+      method.classInitializerDependencies.add(classInitializer);
+    }
+  }
+
   private void remove(Node node, List<Node> leaves) {
     assert node != null;
     for (Node caller : node.callers) {
@@ -426,6 +527,21 @@ public class CallGraph {
 
     @Override
     public boolean registerStaticFieldRead(DexField field) {
+      field = graphLense.lookupField(field, caller.method);
+      DexEncodedField definition = appInfo.lookupStaticTarget(field.getHolder(), field);
+      if (definition != null) {
+        DexType holder = definition.field.getHolder();
+        DexClass clazz = appInfo.definitionFor(holder);
+        if (clazz != null
+            && clazz.isProgramClass()
+            && caller.method.method.getHolder().isSubtypeOf(holder, appInfo)) {
+          DexEncodedMethod classInitializer = clazz.getClassInitializer();
+          if (classInitializer != null) {
+            graph.addClassInitializerDependency(
+                caller, graph.ensureMethodNode(classInitializer));
+          }
+        }
+      }
       return false;
     }
 
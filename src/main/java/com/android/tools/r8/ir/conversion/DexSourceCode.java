@@ -50,6 +50,7 @@ import java.util.Set;
 public class DexSourceCode implements SourceCode {
 
   private final DexCode code;
+  private final Instruction[] instructions;
   private final DexAccessFlags accessFlags;
   private final DexProto proto;
 
@@ -70,6 +71,7 @@ public class DexSourceCode implements SourceCode {
 
   public DexSourceCode(DexCode code, DexEncodedMethod method) {
     this.code = code;
+    this.instructions = code.getInstructions();
     this.proto = method.method.proto;
     this.accessFlags = method.accessFlags;
     argumentTypes = computeArgumentTypes();
@@ -91,7 +93,7 @@ public class DexSourceCode implements SourceCode {
 
   @Override
   public int instructionCount() {
-    return code.instructions.length;
+    return instructions.length;
   }
 
   @Override
@@ -103,8 +105,8 @@ public class DexSourceCode implements SourceCode {
   @Override
   public void setUp() {
     // Collect all payloads in the instruction stream.
-    for (int index = 0; index < code.instructions.length; index++) {
-      Instruction insn = code.instructions[index];
+    for (int index = 0; index < instructions.length; index++) {
+      Instruction insn = instructions[index];
       offsetToInstructionIndex.put(insn.getOffset(), index);
       if (insn.isPayload()) {
         if (insn.isSwitchPayload()) {
@@ -151,7 +153,7 @@ public class DexSourceCode implements SourceCode {
   public void buildInstruction(IRBuilder builder, int instructionIndex) {
     updateCurrentCatchHandlers(instructionIndex);
     emitDebugPosition(instructionIndex, builder);
-    currentDexInstruction = code.instructions[instructionIndex];
+    currentDexInstruction = instructions[instructionIndex];
     currentDexInstruction.buildIR(builder);
   }
 
@@ -214,7 +216,7 @@ public class DexSourceCode implements SourceCode {
 
   @Override
   public int instructionOffset(int instructionIndex) {
-    return code.instructions[instructionIndex].getOffset();
+    return instructions[instructionIndex].getOffset();
   }
 
   @Override
@@ -268,7 +270,7 @@ public class DexSourceCode implements SourceCode {
 
   @Override
   public int traceInstruction(int index, IRBuilder builder) {
-    Instruction dex = code.instructions[index];
+    Instruction dex = instructions[index];
     int offset = dex.getOffset();
     assert !dex.isPayload();
     int[] targets = dex.getTargets();
@@ -286,7 +288,7 @@ public class DexSourceCode implements SourceCode {
       if (tryRange != null) {
         // Ensure the block starts at the start of the try-range (don't enqueue, not a target).
         int tryRangeStartAddress = tryRange.startAddress;
-        if (isMoveResult(code.instructions[offsetToInstructionIndex.get(tryRangeStartAddress)])) {
+        if (isMoveResult(instructions[offsetToInstructionIndex.get(tryRangeStartAddress)])) {
           // If a handler range starts at a move result instruction it is safe to start it at
           // the following instruction since the move-result cannot throw an exception. Doing so
           // makes sure that we do not split an invoke and its move result instruction across
@@ -299,10 +301,10 @@ public class DexSourceCode implements SourceCode {
           builder.ensureExceptionalSuccessorBlock(offset, handlerOffset);
         }
         // If the following instruction is a move-result include it in this (the invokes) block.
-        if (index + 1 < code.instructions.length && isMoveResult(code.instructions[index + 1])) {
+        if (index + 1 < instructions.length && isMoveResult(instructions[index + 1])) {
           assert isInvoke(dex);
           ++index;
-          dex = code.instructions[index];
+          dex = instructions[index];
         }
         // Edge to normal successor if any (fallthrough).
         if (!(dex instanceof Throw)) {
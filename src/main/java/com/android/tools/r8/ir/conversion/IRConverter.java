@@ -6,6 +6,7 @@ package com.android.tools.r8.ir.conversion;
 import static com.android.tools.r8.ir.desugar.InterfaceMethodRewriter.Flavor.ExcludeDexResources;
 import static com.android.tools.r8.ir.desugar.InterfaceMethodRewriter.Flavor.IncludeAllResources;
 
+import com.android.tools.r8.LambdaClassCache;
 import com.android.tools.r8.errors.Unreachable;
 import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.AppInfoWithSubtyping;
@@ -24,21 +25,26 @@ import com.android.tools.r8.ir.desugar.InterfaceMethodRewriter;
 import com.android.tools.r8.ir.desugar.LambdaRewriter;
 import com.android.tools.r8.ir.optimize.CodeRewriter;
 import com.android.tools.r8.ir.optimize.DeadCodeRemover;
+import com.android.tools.r8.ir.optimize.GlobalValueNumbering;
 import com.android.tools.r8.ir.optimize.Inliner;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 import com.android.tools.r8.ir.optimize.MemberValuePropagation;
 import com.android.tools.r8.ir.optimize.Outliner;
 import com.android.tools.r8.ir.optimize.PeepholeOptimizer;
+import com.android.tools.r8.ir.optimize.SparseConditionalConstantPropagation;
 import com.android.tools.r8.ir.regalloc.LinearScanRegisterAllocator;
 import com.android.tools.r8.ir.regalloc.RegisterAllocator;
 import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.utils.AndroidApp;
 import com.android.tools.r8.utils.CfgPrinter;
 import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.OutputMode;
 import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
 
 import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -90,10 +96,11 @@ public class IRConverter {
     this.printer = printer;
     Set<DexType> libraryClassesWithOptimizationInfo = markLibraryMethodsReturningReceiver();
     this.codeRewriter = new CodeRewriter(appInfo, libraryClassesWithOptimizationInfo);
-    this.lambdaRewriter = enableDesugaring ? new LambdaRewriter(this) : null;
     this.interfaceMethodRewriter =
         (enableDesugaring && enableInterfaceMethodDesugaring())
             ? new InterfaceMethodRewriter(this) : null;
+    this.lambdaRewriter = enableDesugaring
+        ? new LambdaRewriter(this, getLambdaClassCache(), options) : null;
     if (enableWholeProgramOptimizations) {
       assert appInfo.withSubtyping() != null;
       this.inliner = new Inliner(appInfo.withSubtyping(), graphLense, options);
@@ -166,6 +173,13 @@ public class IRConverter {
     throw new Unreachable();
   }
 
+  // Compiled lambda classes can only be reused if each class is written to a dex file of its own,
+  // and if they are not changed later on, which they are when default methods are desugared.
+  private LambdaClassCache getLambdaClassCache() {
+    return options.outputMode == OutputMode.FilePerClass && interfaceMethodRewriter == null
+        ? options.lambdaClassCache : null;
+  }
+
   private boolean enableTryWithResourcesDesugaring() {
     switch (options.tryWithResourcesDesugaring) {
       case Off:
@@ -203,6 +217,14 @@ public class IRConverter {
     }
   }
 
+  /**
+   * Updates the lambda class cache with the lambda classes written to {@code output}, and adds the
+   * lambda classes taken from the cache to it.
+   */
+  public AndroidApp updateLambdaClassCache(AndroidApp output) throws IOException {
+    return lambdaRewriter != null ? lambdaRewriter.updateLambdaClassCache(output) : output;
+  }
+
   private void desugarInterfaceMethods(
       Builder builder, InterfaceMethodRewriter.Flavor includeAllResources) {
     if (interfaceMethodRewriter != null) {
@@ -276,7 +298,9 @@ public class IRConverter {
 
     // Process the application identifying outlining candidates.
     timing.begin("IR conversion phase 1");
-    OptimizationFeedback directFeedback = new OptimizationFeedbackDirect();
+    OptimizationFeedbackDirect directFeedback = new OptimizationFeedbackDirect();
+    // The sets of methods processed together, in processing order.
+    List<List<DexEncodedMethod>> waves = new ArrayList<>();
     while (!callGraph.isEmpty()) {
       List<DexEncodedMethod> methods = callGraph.extractLeaves();
       assert methods.size() > 0;
@@ -284,6 +308,7 @@ public class IRConverter {
       if (options.testing.irOrdering != null) {
         methods = options.testing.irOrdering.apply(methods);
       }
+      waves.add(methods);
       List<Future<?>> futures = new ArrayList<>();
       for (DexEncodedMethod method : methods) {
         futures.add(executorService.submit(() -> {
@@ -292,6 +317,10 @@ public class IRConverter {
         }));
       }
       ThreadUtils.awaitFutures(futures);
+      directFeedback.publishFieldValues();
+      if (inliner != null) {
+        inliner.updateTotalGrowth();
+      }
     }
     timing.end();
 
@@ -301,7 +330,8 @@ public class IRConverter {
 
     // Second inlining pass for dealing with double inline callers.
     if (inliner != null) {
-      inliner.processDoubleInlineCallers(this, ignoreOptimizationFeedback);
+      inliner.processDoubleInlineCallers(
+          this, waves, executorService, ignoreOptimizationFeedback);
     }
 
     synthesizeLambdaClasses(builder);
@@ -311,20 +341,33 @@ public class IRConverter {
       timing.begin("IR conversion phase 2");
       // Compile all classes flagged for outlining and
       // add the outline support class IF needed.
-      DexProgramClass outlineClass = prepareOutlining();
+      DexProgramClass outlineClass = prepareOutlining(executorService);
       if (outlineClass != null) {
-        // Process the selected methods for outlining.
-        for (DexEncodedMethod method : outliner.getMethodsSelectedForOutlining()) {
-          // This is the second time we compile this method first mark it not processed.
-          assert !method.getCode().isOutlineCode();
-          processMethod(method, ignoreOptimizationFeedback, outliner::applyOutliningCandidate);
-          assert method.isProcessed();
+        // Process the selected methods for outlining in parallel. This is the second time we
+        // compile these methods, so first mark them not processed. That way none of them is
+        // picked as an inlining target while its code is being replaced, which keeps the result
+        // independent of the processing order.
+        Set<DexEncodedMethod> methods = outliner.getMethodsSelectedForOutlining();
+        methods.forEach(DexEncodedMethod::markNotProcessed);
+        List<Future<?>> futures = new ArrayList<>();
+        for (DexEncodedMethod method : methods) {
+          futures.add(executorService.submit(() -> {
+            assert !method.getCode().isOutlineCode();
+            processMethod(method, ignoreOptimizationFeedback, outliner::applyOutliningCandidate);
+            // The feedback is ignored, so mark the method processed here. It is not an inlining
+            // candidate, as no other method processed in this phase may inline it.
+            method.markProcessed(Constraint.NEVER);
+          }));
         }
+        ThreadUtils.awaitFutures(futures);
         builder.addSynthesizedClass(outlineClass, true);
         clearDexMethodCompilationState(outlineClass);
       }
       timing.end();
     }
+    if (inliner != null && options.inlining.printReport) {
+      inliner.printReport();
+    }
     clearDexMethodCompilationState();
     return builder.build();
   }
@@ -376,8 +419,9 @@ public class IRConverter {
     return result;
   }
 
-  private DexProgramClass prepareOutlining() {
-    if (!outliner.selectMethodsForOutlining()) {
+  private DexProgramClass prepareOutlining(ExecutorService executorService)
+      throws ExecutionException {
+    if (!outliner.selectMethodsForOutlining(executorService)) {
       return null;
     }
     DexProgramClass outlineClass = outliner.buildOutlinerClass(computeOutlineClassType());
@@ -440,7 +484,7 @@ public class IRConverter {
       assert graphLense.isIdentityLense();
     }
     if (memberValuePropagation != null) {
-      memberValuePropagation.rewriteWithConstantValues(code);
+      memberValuePropagation.rewriteWithConstantValues(code, method.method.getHolder());
     }
     if (options.removeSwitchMaps) {
       // TODO(zerny): Should we support removeSwitchMaps in debug mode? b/62936642
@@ -456,11 +500,12 @@ public class IRConverter {
       inliner.performInlining(method, code, callGraph);
     }
     codeRewriter.rewriteLongCompareAndRequireNonNull(code, options);
-    codeRewriter.commonSubexpressionElimination(code);
+    GlobalValueNumbering.run(code);
     codeRewriter.simplifyArrayConstruction(code);
     codeRewriter.rewriteMoveResult(code);
     codeRewriter.splitConstants(code);
     codeRewriter.foldConstants(code);
+    new SparseConditionalConstantPropagation(code).run();
     codeRewriter.rewriteSwitch(code);
     codeRewriter.simplifyIf(code);
     if (Log.ENABLED) {
@@ -494,6 +539,9 @@ public class IRConverter {
 
     codeRewriter.shortenLiveRanges(code);
     codeRewriter.identifyReturnsArgument(method, code, feedback);
+    if (method.accessFlags.isConstructor() && method.accessFlags.isStatic()) {
+      codeRewriter.identifyConstantStaticFields(method, code, feedback);
+    }
 
     // Insert code to log arguments if requested.
     if (options.methodMatchesLogArgumentsFilter(method)) {
@@ -504,6 +552,9 @@ public class IRConverter {
     // Perform register allocation.
     RegisterAllocator registerAllocator = performRegisterAllocation(code, method);
     method.setCode(code, registerAllocator, appInfo.dexItemFactory);
+    if (options.packDexCode) {
+      method.packCode();
+    }
     updateHighestSortingStrings(method);
     if (Log.ENABLED) {
       Log.debug(getClass(), "Resulting dex code for %s:\n%s",
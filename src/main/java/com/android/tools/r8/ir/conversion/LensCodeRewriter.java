@@ -18,6 +18,8 @@ import com.android.tools.r8.graph.GraphLense;
 import com.android.tools.r8.ir.code.BasicBlock;
 import com.android.tools.r8.ir.code.CheckCast;
 import com.android.tools.r8.ir.code.ConstClass;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.ConstType;
 import com.android.tools.r8.ir.code.IRCode;
 import com.android.tools.r8.ir.code.InstanceGet;
 import com.android.tools.r8.ir.code.InstanceOf;
@@ -29,10 +31,13 @@ import com.android.tools.r8.ir.code.Invoke.Type;
 import com.android.tools.r8.ir.code.InvokeCustom;
 import com.android.tools.r8.ir.code.InvokeMethod;
 import com.android.tools.r8.ir.code.InvokeNewArray;
+import com.android.tools.r8.ir.code.MoveType;
 import com.android.tools.r8.ir.code.NewArrayEmpty;
+import com.android.tools.r8.ir.code.NewInstance;
 import com.android.tools.r8.ir.code.StaticGet;
 import com.android.tools.r8.ir.code.StaticPut;
 import com.android.tools.r8.ir.code.Value;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.stream.Collectors;
@@ -98,10 +103,25 @@ public class LensCodeRewriter {
           DexMethod actualTarget = graphLense.lookupMethod(invokedMethod, method);
           Invoke.Type invokeType = getInvokeType(invoke, actualTarget, invokedMethod);
           if (actualTarget != invokedMethod || invoke.getType() != invokeType) {
+            List<Value> arguments = invoke.inValues();
+            ConstNumber typeTag = null;
+            int typeTagValue = graphLense.lookupTypeTag(invokedMethod, method);
+            if (typeTagValue != GraphLense.NO_TYPE_TAG) {
+              typeTag = new ConstNumber(
+                  ConstType.INT, code.createValue(MoveType.SINGLE), typeTagValue);
+              arguments = new ArrayList<>(arguments);
+              arguments.add(typeTag.outValue());
+            }
             Invoke newInvoke = Invoke
                 .create(invokeType, actualTarget, null,
-                    invoke.outValue(), invoke.inValues());
+                    invoke.outValue(), arguments);
             iterator.replaceCurrentInstruction(newInvoke);
+            if (typeTag != null) {
+              // Materialize the type tag right before the invoke.
+              iterator.previous();
+              iterator.add(typeTag);
+              iterator.next();
+            }
             // Fix up the return type if needed.
             if (actualTarget.proto.returnType != invokedMethod.proto.returnType
                 && newInvoke.outValue() != null) {
@@ -187,6 +207,13 @@ public class LensCodeRewriter {
                 newArray.inValues());
             iterator.replaceCurrentInstruction(newNewArray);
           }
+        } else if (current.isNewInstance()) {
+          NewInstance newInstance = current.asNewInstance();
+          DexType newType = graphLense.lookupType(newInstance.clazz, method);
+          if (newType != newInstance.clazz) {
+            NewInstance newNewInstance = new NewInstance(newType, makeOutValue(newInstance, code));
+            iterator.replaceCurrentInstruction(newNewInstance);
+          }
         } else if (current.isNewArrayEmpty()) {
           NewArrayEmpty newArrayEmpty = current.asNewArrayEmpty();
           DexType newType = graphLense.lookupType(newArrayEmpty.type, method);
@@ -4,6 +4,7 @@
 
 package com.android.tools.r8.ir.conversion;
 
+import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 
@@ -11,5 +12,6 @@ public interface OptimizationFeedback {
   void methodReturnsArgument(DexEncodedMethod method, int argument);
   void methodReturnsConstant(DexEncodedMethod method, long value);
   void methodNeverReturnsNull(DexEncodedMethod method);
+  void fieldHasConstantValue(DexEncodedField field, long value);
   void markProcessed(DexEncodedMethod method, Constraint state);
 }
@@ -4,11 +4,19 @@
 
 package com.android.tools.r8.ir.conversion;
 
+import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OptimizationFeedbackDirect implements OptimizationFeedback {
 
+  // Field values found while processing a set of methods. They are only made visible when the
+  // whole set has been processed, so what other methods of the set see does not depend on the
+  // processing order.
+  private final Map<DexEncodedField, Long> pendingFieldValues = new ConcurrentHashMap<>();
+
   @Override
   public void methodReturnsArgument(DexEncodedMethod method, int argument) {
     method.markReturnsArgument(argument);
@@ -24,8 +32,18 @@ public class OptimizationFeedbackDirect implements OptimizationFeedback {
     method.markNeverReturnsNull();
   }
 
+  @Override
+  public void fieldHasConstantValue(DexEncodedField field, long value) {
+    pendingFieldValues.put(field, value);
+  }
+
   @Override
   public void markProcessed(DexEncodedMethod method, Constraint state) {
     method.markProcessed(state);
   }
+
+  public void publishFieldValues() {
+    pendingFieldValues.forEach(DexEncodedField::markConstantValue);
+    pendingFieldValues.clear();
+  }
 }
@@ -4,6 +4,7 @@
 
 package com.android.tools.r8.ir.conversion;
 
+import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.ir.optimize.Inliner.Constraint;
 
@@ -18,6 +19,9 @@ public class OptimizationFeedbackIgnore implements OptimizationFeedback {
   @Override
   public void methodNeverReturnsNull(DexEncodedMethod method) {}
 
+  @Override
+  public void fieldHasConstantValue(DexEncodedField field, long value) {}
+
   @Override
   public void markProcessed(DexEncodedMethod method, Constraint state) {}
 }
@@ -125,6 +125,14 @@ final class LambdaClass {
     );
   }
 
+  // Key of the compiled lambda class in a LambdaClassCache. The call site hash identifies the
+  // lambda descriptor, and the call target covers the accessibility of the implementation method
+  // as seen from the context the lambda class is generated for.
+  final String cacheKey(String optionsKey) {
+    return descriptor.uniqueId + ' ' + type.toDescriptorString() + ' ' + target.invokeType + ' '
+        + target.callTarget.toSmaliString() + ' ' + optionsKey;
+  }
+
   final DexField getCaptureField(int index) {
     return rewriter.factory.createField(this.type,
         descriptor.captures.values[index], rewriter.factory.createString("f$" + index));
@@ -4,6 +4,8 @@
 
 package com.android.tools.r8.ir.desugar;
 
+import com.android.tools.r8.LambdaClassCache;
+import com.android.tools.r8.Resource;
 import com.android.tools.r8.dex.Constants;
 import com.android.tools.r8.graph.DexApplication.Builder;
 import com.android.tools.r8.graph.DexCallSite;
@@ -26,11 +28,19 @@ import com.android.tools.r8.ir.code.NewInstance;
 import com.android.tools.r8.ir.code.StaticGet;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.ir.conversion.IRConverter;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Lambda desugaring rewriter.
@@ -75,24 +85,40 @@ public class LambdaRewriter {
   // Maps call sites seen so far to inferred lambda descriptor. It is intended
   // to help avoid re-matching call sites we already seen. Note that same call
   // site may match one or several lambda classes.
-  //
-  // NOTE: synchronize concurrent access on `knownCallSites`.
-  private final Map<DexCallSite, LambdaDescriptor> knownCallSites = new IdentityHashMap<>();
+  private final Map<DexCallSite, LambdaDescriptor> knownCallSites = new ConcurrentHashMap<>();
 
   // Maps lambda class type into lambda class representation. Since lambda class
   // type uniquely defines lambda class, effectively canonicalizes lambda classes.
-  // NOTE: synchronize concurrent access on `knownLambdaClasses`.
-  private final Map<DexType, LambdaClass> knownLambdaClasses = new IdentityHashMap<>();
+  private final Map<DexType, LambdaClass> knownLambdaClasses = new ConcurrentHashMap<>();
+
+  // Cache of compiled lambda classes, or null if it can not be used for this compilation.
+  private final LambdaClassCache cache;
+  private final String cacheOptionsKey;
+
+  // Dex files of the lambda classes taken from the cache, and cache keys of the lambda
+  // classes compiled instead, by class descriptor.
+  private final Map<String, byte[]> cachedLambdaClasses = new HashMap<>();
+  private final Map<String, String> uncachedLambdaClasses = new HashMap<>();
 
   // Checks if the type starts with lambda-class prefix.
   public static boolean hasLambdaClassPrefix(DexType clazz) {
     return clazz.getName().startsWith(LAMBDA_CLASS_NAME_PREFIX);
   }
 
-  public LambdaRewriter(IRConverter converter) {
+  /**
+   * Create a lambda rewriter, taking compiled lambda classes from {@code cache} if it is not null.
+   *
+   * <p>The cache must only be given if every class is written to a dex file of its own.
+   */
+  public LambdaRewriter(IRConverter converter, LambdaClassCache cache, InternalOptions options) {
     assert converter != null;
+    assert cache == null || options != null;
     this.converter = converter;
     this.factory = converter.application.dexItemFactory;
+    this.cache = cache;
+    // Options the code generated for lambda classes depends on.
+    this.cacheOptionsKey = cache == null ? null
+        : "api=" + options.minApiLevel + " debug=" + options.debug;
 
     DexType metafactoryType = factory.createType(METAFACTORY_TYPE_DESCR);
     DexType callSiteType = factory.createType(CALLSITE_TYPE_DESCR);
@@ -198,13 +224,60 @@ public class LambdaRewriter {
     }
   }
 
-  /** Generates lambda classes and adds them to the builder. */
+  /**
+   * Generates lambda classes and adds them to the builder.
+   *
+   * <p>Lambda classes found in the cache are not generated, their dex files are added to the
+   * output by {@link #updateLambdaClassCache}.
+   */
   public void synthesizeLambdaClasses(Builder builder) {
     for (LambdaClass lambdaClass : knownLambdaClasses.values()) {
+      boolean addToMainDexList = lambdaClass.addToMainDexList.get();
+      // Classes in the main dex list are always generated, the list is written from the
+      // application.
+      if (cache != null && !addToMainDexList) {
+        String descriptor = lambdaClass.type.toDescriptorString();
+        String key = lambdaClass.cacheKey(cacheOptionsKey);
+        byte[] dex = cache.lookup(key);
+        if (dex != null) {
+          cachedLambdaClasses.put(descriptor, dex);
+          continue;
+        }
+        uncachedLambdaClasses.put(descriptor, key);
+      }
       DexProgramClass synthesizedClass = lambdaClass.synthesizeLambdaClass();
       converter.optimizeSynthesizedClass(synthesizedClass);
-      builder.addSynthesizedClass(synthesizedClass, lambdaClass.addToMainDexList.get());
+      builder.addSynthesizedClass(synthesizedClass, addToMainDexList);
+    }
+  }
+
+  /**
+   * Puts the lambda classes compiled to {@code output} in the cache, and returns the output
+   * with the lambda classes taken from the cache added.
+   */
+  public AndroidApp updateLambdaClassCache(AndroidApp output) throws IOException {
+    if (cache == null) {
+      return output;
+    }
+    if (!uncachedLambdaClasses.isEmpty()) {
+      try (Closer closer = Closer.create()) {
+        for (Resource resource : output.getDexProgramResources()) {
+          Set<String> descriptors = resource.getClassDescriptors();
+          assert descriptors != null && descriptors.size() == 1;
+          String key = uncachedLambdaClasses.get(descriptors.iterator().next());
+          if (key != null) {
+            cache.put(key, ByteStreams.toByteArray(resource.getStream(closer)));
+          }
+        }
+      }
     }
+    if (cachedLambdaClasses.isEmpty()) {
+      return output;
+    }
+    AndroidApp.Builder builder = AndroidApp.builder(output);
+    cachedLambdaClasses.forEach(
+        (descriptor, dex) -> builder.addDexProgramData(dex, Collections.singleton(descriptor)));
+    return builder.build();
   }
 
   // Matches invoke-custom instruction operands to infer lambda descriptor
@@ -212,11 +285,10 @@ public class LambdaRewriter {
   //
   // Returns the lambda descriptor or `MATCH_FAILED`.
   private LambdaDescriptor inferLambdaDescriptor(DexCallSite callSite) {
-    // We check the map before and after inferring lambda descriptor to minimize time
-    // spent in synchronized block. As a result we may throw away calculated descriptor
-    // in rare case when another thread has same call site processed concurrently,
-    // but this is a low price to pay comparing to making whole method synchronous.
-    LambdaDescriptor descriptor = getKnown(knownCallSites, callSite);
+    // The descriptor is inferred outside of the map, so we may throw away calculated
+    // descriptor in rare case when another thread has same call site processed
+    // concurrently, but no other thread waits while it is inferred.
+    LambdaDescriptor descriptor = knownCallSites.get(callSite);
     return descriptor != null ? descriptor
         : putIfAbsent(knownCallSites, callSite, LambdaDescriptor.infer(this, callSite));
   }
@@ -229,8 +301,7 @@ public class LambdaRewriter {
   // creates the class if it does not yet exist.
   private LambdaClass getOrCreateLambdaClass(LambdaDescriptor descriptor, DexType accessedFrom) {
     DexType lambdaClassType = LambdaClass.createLambdaClassType(this, accessedFrom, descriptor);
-    // We check the map twice to to minimize time spent in synchronized block.
-    LambdaClass lambdaClass = getKnown(knownLambdaClasses, lambdaClassType);
+    LambdaClass lambdaClass = knownLambdaClasses.get(lambdaClassType);
     if (lambdaClass == null) {
       lambdaClass = putIfAbsent(knownLambdaClasses, lambdaClassType,
           new LambdaClass(this, accessedFrom, lambdaClassType, descriptor));
@@ -241,21 +312,9 @@ public class LambdaRewriter {
     return lambdaClass;
   }
 
-  private <K, V> V getKnown(Map<K, V> map, K key) {
-    synchronized (map) {
-      return map.get(key);
-    }
-  }
-
   private <K, V> V putIfAbsent(Map<K, V> map, K key, V value) {
-    synchronized (map) {
-      V known = map.get(key);
-      if (known != null) {
-        return known;
-      }
-      map.put(key, value);
-      return value;
-    }
+    V known = map.putIfAbsent(key, value);
+    return known != null ? known : value;
   }
 
   // Patches invoke-custom instruction to create or get an instance
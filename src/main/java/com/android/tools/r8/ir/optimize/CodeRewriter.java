@@ -8,6 +8,7 @@ import com.android.tools.r8.dex.Constants;
 import com.android.tools.r8.errors.CompilationError;
 import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexField;
 import com.android.tools.r8.graph.DexItemFactory;
@@ -17,8 +18,6 @@ import com.android.tools.r8.graph.DexType;
 import com.android.tools.r8.ir.code.ArrayGet;
 import com.android.tools.r8.ir.code.ArrayPut;
 import com.android.tools.r8.ir.code.BasicBlock;
-import com.android.tools.r8.ir.code.Binop;
-import com.android.tools.r8.ir.code.CatchHandlers;
 import com.android.tools.r8.ir.code.Cmp;
 import com.android.tools.r8.ir.code.Cmp.Bias;
 import com.android.tools.r8.ir.code.ConstNumber;
@@ -47,13 +46,11 @@ import com.android.tools.r8.ir.code.StaticPut;
 import com.android.tools.r8.ir.code.Switch;
 import com.android.tools.r8.ir.code.Value;
 import com.android.tools.r8.ir.conversion.OptimizationFeedback;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.LongInterval;
-import com.google.common.base.Equivalence;
-import com.google.common.base.Equivalence.Wrapper;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import it.unimi.dsi.fastutil.ints.Int2ReferenceArrayMap;
@@ -63,11 +60,11 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Reference2IntArrayMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -669,6 +666,85 @@ public class CodeRewriter {
     }
   }
 
+  /**
+   * Identify static fields of the class being initialized that are set to a constant before any
+   * other code runs, and that are written nowhere else. Code that can only run after the class is
+   * initialized, that is code in the class itself and its subtypes, sees only that value.
+   */
+  public void identifyConstantStaticFields(
+      DexEncodedMethod method, IRCode code, OptimizationFeedback feedback) {
+    AppInfoWithLiveness liveSet = appInfo.withLiveness();
+    if (liveSet == null) {
+      return;
+    }
+    DexClass clazz = appInfo.definitionFor(method.method.getHolder());
+    // Interfaces are not initialized together with their implementations, and a supertype
+    // class initializer can run code of this class before its fields are assigned.
+    if (clazz == null || clazz.isInterface() || supertypeHasClassInitializer(clazz)) {
+      return;
+    }
+    Map<DexEncodedField, Long> values = new IdentityHashMap<>();
+    for (Instruction instruction : code.blocks.getFirst().getInstructions()) {
+      if (instruction.isStaticPut()) {
+        StaticPut put = instruction.asStaticPut();
+        DexEncodedField field = appInfo.lookupStaticTarget(put.getField().getHolder(),
+            put.getField());
+        if (field == null || field.field.getHolder() != clazz.type) {
+          // Writing a field of another class can run its class initializer.
+          break;
+        }
+        Value value = put.inValue();
+        if (field.field.type.isPrimitiveType()
+            && value.isConstant()
+            && value.definition.isConstNumber()) {
+          values.put(field, value.definition.asConstNumber().getRawValue());
+        }
+      } else if (!instruction.isConstNumber()
+          && !instruction.isConstString()
+          && !instruction.isDebugInstruction()) {
+        break;
+      }
+    }
+    if (values.isEmpty()) {
+      return;
+    }
+    Set<DexEncodedField> written = Sets.newIdentityHashSet();
+    InstructionIterator iterator = code.instructionIterator();
+    while (iterator.hasNext()) {
+      Instruction instruction = iterator.next();
+      if (instruction.isStaticPut()) {
+        DexField field = instruction.asStaticPut().getField();
+        DexEncodedField target = appInfo.lookupStaticTarget(field.getHolder(), field);
+        if (target != null && !written.add(target)) {
+          values.remove(target);
+        }
+      }
+    }
+    values.forEach((field, value) -> {
+      if (!liveSet.staticFieldsWrittenOutsideClassInitializer.contains(field.field)
+          && !liveSet.pinnedItems.contains(field)) {
+        feedback.fieldHasConstantValue(field, value);
+      }
+    });
+  }
+
+  private boolean supertypeHasClassInitializer(DexClass clazz) {
+    List<DexType> supertypes = new ArrayList<>();
+    if (clazz.superType != null) {
+      supertypes.add(clazz.superType);
+    }
+    Collections.addAll(supertypes, clazz.interfaces.values);
+    for (DexType supertype : supertypes) {
+      DexClass definition = appInfo.definitionFor(supertype);
+      if (definition != null
+          && !definition.isLibraryClass()
+          && (definition.hasClassInitializer() || supertypeHasClassInitializer(definition))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private boolean checkArgumentType(InvokeMethod invoke, DexMethod target, int argumentIndex) {
     DexType returnType = invoke.getInvokedMethod().proto.returnType;
     // TODO(sgjesse): Insert cast if required.
@@ -1126,105 +1202,6 @@ public class CodeRewriter {
     }
   }
 
-  private class ExpressionEquivalence extends Equivalence<Instruction> {
-
-    @Override
-    protected boolean doEquivalent(Instruction a, Instruction b) {
-      if (a.getClass() != b.getClass() || !a.identicalNonValueParts(b)) {
-        return false;
-      }
-      // For commutative binary operations any order of in-values are equal.
-      if (a.isBinop() && a.asBinop().isCommutative()) {
-        Value a0 = a.inValues().get(0);
-        Value a1 = a.inValues().get(1);
-        Value b0 = b.inValues().get(0);
-        Value b1 = b.inValues().get(1);
-        return (a0.equals(b0) && a1.equals(b1)) || (a0.equals(b1) && a1.equals(b0));
-      } else {
-        // Compare all in-values.
-        assert a.inValues().size() == b.inValues().size();
-        for (int i = 0; i < a.inValues().size(); i++) {
-          if (!a.inValues().get(i).equals(b.inValues().get(i))) {
-            return false;
-          }
-        }
-        return true;
-      }
-    }
-
-    @Override
-    protected int doHash(Instruction instruction) {
-      final int prime = 29;
-      int hash = instruction.getClass().hashCode();
-      if (instruction.isBinop()) {
-        Binop binop = instruction.asBinop();
-        Value in0 = instruction.inValues().get(0);
-        Value in1 = instruction.inValues().get(1);
-        if (binop.isCommutative()) {
-          hash += hash * prime + in0.hashCode() * in1.hashCode();
-        } else {
-          hash += hash * prime + in0.hashCode();
-          hash += hash * prime + in1.hashCode();
-        }
-        return hash;
-      } else {
-        for (Value value : instruction.inValues()) {
-          hash += hash * prime + value.hashCode();
-        }
-      }
-      return hash;
-    }
-  }
-
-  private boolean shareCatchHandlers(Instruction i0, Instruction i1) {
-    if (!i0.instructionTypeCanThrow()) {
-      assert !i1.instructionTypeCanThrow();
-      return true;
-    }
-    assert i1.instructionTypeCanThrow();
-    // TODO(sgjesse): This could be even better by checking for the exceptions thrown, e.g. div
-    // and rem only ever throw ArithmeticException.
-    CatchHandlers<BasicBlock> ch0 = i0.getBlock().getCatchHandlers();
-    CatchHandlers<BasicBlock> ch1 = i1.getBlock().getCatchHandlers();
-    return ch0.equals(ch1);
-  }
-
-  public void commonSubexpressionElimination(IRCode code) {
-    final ListMultimap<Wrapper<Instruction>, Value> instructionToValue = ArrayListMultimap.create();
-    final DominatorTree dominatorTree = new DominatorTree(code);
-    final ExpressionEquivalence equivalence = new ExpressionEquivalence();
-
-    for (int i = 0; i < dominatorTree.getSortedBlocks().length; i++) {
-      BasicBlock block = dominatorTree.getSortedBlocks()[i];
-      Iterator<Instruction> iterator = block.iterator();
-      while (iterator.hasNext()) {
-        Instruction instruction = iterator.next();
-        if (instruction.isBinop()
-            || instruction.isUnop()
-            || instruction.isInstanceOf()
-            || instruction.isCheckCast()) {
-          List<Value> candidates = instructionToValue.get(equivalence.wrap(instruction));
-          boolean eliminated = false;
-          if (candidates.size() > 0) {
-            for (Value candidate : candidates) {
-              if (dominatorTree.dominatedBy(block, candidate.definition.getBlock()) &&
-                  shareCatchHandlers(instruction, candidate.definition)) {
-                instruction.outValue().replaceUsers(candidate);
-                eliminated = true;
-                iterator.remove();
-                break;  // Don't try any more candidates.
-              }
-            }
-          }
-          if (!eliminated) {
-            instructionToValue.put(equivalence.wrap(instruction), instruction.outValue());
-          }
-        }
-      }
-    }
-    assert code.isConsistentSSA();
-  }
-
   public void simplifyIf(IRCode code) {
     DominatorTree dominator = new DominatorTree(code);
     code.clearMarks();
@@ -1248,8 +1225,13 @@ public class CodeRewriter {
           } else {
             int left = inValues.get(0).getConstInstruction().asConstNumber().getIntValue();
             int right = inValues.get(1).getConstInstruction().asConstNumber().getIntValue();
-            cond = left - right;
+            cond = Integer.compare(left, right);
           }
+        } else if (theIf.isZeroTest()
+            && inValues.get(0).outType() == MoveType.OBJECT
+            && inValues.get(0).isNeverNull()) {
+          // Null check of a value known not to be null.
+          cond = 1;
         } else if (inValues.get(0).hasValueRange()
             && (theIf.isZeroTest() || inValues.get(1).hasValueRange())) {
           // Zero test with a value range, or comparison between between two values,
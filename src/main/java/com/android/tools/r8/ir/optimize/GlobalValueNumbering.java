@@ -0,0 +1,230 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.CatchHandlers;
+import com.android.tools.r8.ir.code.DominatorTree;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Value;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Dominator based global value numbering.
+ *
+ * <p>Blocks are visited in topological order. An instruction or phi computing the same value as
+ * a dominating instruction or phi is removed and its uses are replaced by the dominating value.
+ * As uses are replaced right away, the number of a value's leader is just the number of the
+ * leader itself, so the values are kept in a table keyed by a hash of the opcode and the operand
+ * numbers. Entries with the same hash are told apart by their non-value parts and operands.
+ */
+public class GlobalValueNumbering {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final DominatorTree dominatorTree;
+
+  // Open addressing table of leader values, keyed by their hash.
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private Value[] values = new Value[INITIAL_CAPACITY];
+  private int size = 0;
+
+  private GlobalValueNumbering(IRCode code) {
+    this.dominatorTree = new DominatorTree(code);
+  }
+
+  public static void run(IRCode code) {
+    new GlobalValueNumbering(code).run();
+    assert code.isConsistentSSA();
+  }
+
+  private void run() {
+    for (BasicBlock block : dominatorTree.getSortedBlocks()) {
+      Iterator<Phi> phiIterator = block.getPhis().iterator();
+      while (phiIterator.hasNext()) {
+        Phi phi = phiIterator.next();
+        if (phi.getLocalInfo() == null && numberPhi(phi)) {
+          phiIterator.remove();
+        }
+      }
+      Iterator<Instruction> iterator = block.iterator();
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        if (isCandidate(instruction) && numberInstruction(instruction)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private static boolean isCandidate(Instruction instruction) {
+    return (instruction.isBinop()
+        || instruction.isUnop()
+        || instruction.isInstanceOf()
+        || instruction.isCheckCast()
+        || instruction.isArrayLength())
+        && instruction.outValue() != null;
+  }
+
+  /**
+   * Look up the leader for the value of {@code instruction}, and replace the value with the leader
+   * if found. Otherwise the value becomes a leader. Returns true if the instruction is redundant.
+   */
+  private boolean numberInstruction(Instruction instruction) {
+    int hash = hash(instruction);
+    int mask = values.length - 1;
+    int index = mix(hash) & mask;
+    for (Value leader = values[index]; leader != null; leader = values[index]) {
+      if (hashes[index] == hash && !leader.isPhi()) {
+        Instruction definition = leader.definition;
+        if (equivalent(instruction, definition)
+            && dominatorTree.dominatedBy(instruction.getBlock(), definition.getBlock())
+            && shareCatchHandlers(instruction, definition)) {
+          instruction.outValue().replaceUsers(leader);
+          return true;
+        }
+      }
+      index = (index + 1) & mask;
+    }
+    insert(index, hash, instruction.outValue());
+    return false;
+  }
+
+  /**
+   * Look up an identical phi earlier in the same block, and replace {@code phi} with it if found.
+   * Otherwise the phi becomes a leader. Returns true if the phi is redundant.
+   */
+  private boolean numberPhi(Phi phi) {
+    int hash = hash(phi);
+    int mask = values.length - 1;
+    int index = mix(hash) & mask;
+    for (Value leader = values[index]; leader != null; leader = values[index]) {
+      if (hashes[index] == hash && leader.isPhi() && equivalent(phi, leader.asPhi())) {
+        for (Value operand : phi.getOperands()) {
+          operand.removePhiUser(phi);
+        }
+        phi.replaceUsers(leader);
+        return true;
+      }
+      index = (index + 1) & mask;
+    }
+    insert(index, hash, phi);
+    return false;
+  }
+
+  private void insert(int index, int hash, Value value) {
+    hashes[index] = hash;
+    values[index] = value;
+    if (++size * 2 > values.length) {
+      grow();
+    }
+  }
+
+  private void grow() {
+    int[] oldHashes = hashes;
+    Value[] oldValues = values;
+    hashes = new int[oldValues.length * 2];
+    values = new Value[oldValues.length * 2];
+    int mask = values.length - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int index = mix(oldHashes[i]) & mask;
+        while (values[index] != null) {
+          index = (index + 1) & mask;
+        }
+        hashes[index] = oldHashes[i];
+        values[index] = oldValues[i];
+      }
+    }
+  }
+
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int hash(Instruction instruction) {
+    // The class name hash is stable across runs, so the table layout is deterministic.
+    int hash = instruction.getClass().getName().hashCode();
+    List<Value> inValues = instruction.inValues();
+    if (instruction.isBinop() && instruction.asBinop().isCommutative()) {
+      int in0 = inValues.get(0).getNumber();
+      int in1 = inValues.get(1).getNumber();
+      hash = hash * 31 + Math.min(in0, in1);
+      hash = hash * 31 + Math.max(in0, in1);
+    } else {
+      for (int i = 0; i < inValues.size(); i++) {
+        hash = hash * 31 + inValues.get(i).getNumber();
+      }
+    }
+    return hash;
+  }
+
+  private static int hash(Phi phi) {
+    int hash = phi.getBlock().getNumber();
+    List<Value> operands = phi.getOperands();
+    for (int i = 0; i < operands.size(); i++) {
+      Value operand = operands.get(i);
+      // A phi referring to itself is hashed the same as another phi referring to itself.
+      hash = hash * 31 + (operand == phi ? -1 : operand.getNumber());
+    }
+    return hash;
+  }
+
+  private static boolean equivalent(Instruction a, Instruction b) {
+    if (a.getClass() != b.getClass() || !a.identicalNonValueParts(b)) {
+      return false;
+    }
+    List<Value> aValues = a.inValues();
+    List<Value> bValues = b.inValues();
+    assert aValues.size() == bValues.size();
+    // For commutative binary operations any order of in-values are equal.
+    if (a.isBinop() && a.asBinop().isCommutative()) {
+      Value a0 = aValues.get(0);
+      Value a1 = aValues.get(1);
+      Value b0 = bValues.get(0);
+      Value b1 = bValues.get(1);
+      return (a0 == b0 && a1 == b1) || (a0 == b1 && a1 == b0);
+    }
+    for (int i = 0; i < aValues.size(); i++) {
+      if (aValues.get(i) != bValues.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equivalent(Phi a, Phi b) {
+    if (a.getBlock() != b.getBlock()) {
+      return false;
+    }
+    List<Value> aOperands = a.getOperands();
+    List<Value> bOperands = b.getOperands();
+    assert aOperands.size() == bOperands.size();
+    for (int i = 0; i < aOperands.size(); i++) {
+      Value aOperand = aOperands.get(i);
+      Value bOperand = bOperands.get(i);
+      if (aOperand != bOperand && (aOperand != a || bOperand != b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean shareCatchHandlers(Instruction i0, Instruction i1) {
+    if (!i0.instructionTypeCanThrow()) {
+      assert !i1.instructionTypeCanThrow();
+      return true;
+    }
+    assert i1.instructionTypeCanThrow();
+    // TODO(sgjesse): This could be even better by checking for the exceptions thrown, e.g. div
+    // and rem only ever throw ArithmeticException.
+    CatchHandlers<BasicBlock> ch0 = i0.getBlock().getCatchHandlers();
+    CatchHandlers<BasicBlock> ch1 = i1.getBlock().getCatchHandlers();
+    return ch0.equals(ch1);
+  }
+}
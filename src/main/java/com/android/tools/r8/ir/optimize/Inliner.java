@@ -24,32 +24,50 @@ import com.android.tools.r8.ir.conversion.LensCodeRewriter;
 import com.android.tools.r8.ir.conversion.OptimizationFeedback;
 import com.android.tools.r8.logging.Log;
 import com.android.tools.r8.utils.InternalOptions;
-import com.google.common.collect.Sets;
+import com.android.tools.r8.utils.ThreadUtils;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Inliner {
 
-  private static final int INLINING_INSTRUCTION_LIMIT = 5;
-
   protected final AppInfoWithSubtyping appInfo;
   private final GraphLense graphLense;
-  private final InternalOptions options;
+  final InternalOptions options;
+  final InliningCostModel costModel;
+
+  // Growth in instructions by inlining methods with simple code. The growth in the methods
+  // processed so far is only added to the total when all of them are done, so what methods
+  // processed together see does not depend on the processing order.
+  private volatile long totalGrowth = 0;
+  private final AtomicLong pendingGrowth = new AtomicLong();
 
-  // State for inlining methods which are known to be called twice.
-  private boolean applyDoubleInlining = false;
-  private final Set<DexEncodedMethod> doubleInlineCallers = Sets.newIdentityHashSet();
-  private final Set<DexEncodedMethod> doubleInlineSelectedTargets = Sets.newIdentityHashSet();
-  private final Map<DexEncodedMethod, DexEncodedMethod> doubleInlineeCandidates = new HashMap<>();
+  // Inlining decisions for each method when printing a report.
+  private final Map<DexEncodedMethod, InliningInfo> reports = new ConcurrentHashMap<>();
+
+  // State for inlining methods which are known to be called twice. The state is updated
+  // concurrently while methods are processed.
+  private volatile boolean applyDoubleInlining = false;
+  private final Set<DexEncodedMethod> doubleInlineCallers = ConcurrentHashMap.newKeySet();
+  private final Set<DexEncodedMethod> doubleInlineSelectedTargets = ConcurrentHashMap.newKeySet();
+  private final ConcurrentMap<DexEncodedMethod, DexEncodedMethod> doubleInlineeCandidates =
+      new ConcurrentHashMap<>();
 
   public Inliner(AppInfoWithSubtyping appInfo, GraphLense graphLense, InternalOptions options) {
     this.appInfo = appInfo;
     this.graphLense = graphLense;
     this.options = options;
+    this.costModel = options.inlining.costModel != null
+        ? options.inlining.costModel
+        : new SizeInliningCostModel(options.inlining);
   }
 
   private Constraint instructionAllowedForInlining(
@@ -65,7 +83,7 @@ public class Inliner {
     DexCode dex = method.getCode().asDexCode();
     // We have generated code for a method and we want to figure out whether the method is a
     // candidate for inlining. The code is the final IR after optimizations.
-    if (dex.instructions.length > INLINING_INSTRUCTION_LIMIT) {
+    if (dex.getInstructionCount() > options.inlining.maxSimpleInlineeSize) {
       return Constraint.NEVER;
     }
     Constraint result = Constraint.ALWAYS;
@@ -107,18 +125,16 @@ public class Inliner {
     return methodHolder.isSamePackage(targetHolder);
   }
 
-  synchronized DexEncodedMethod doubleInlining(DexEncodedMethod method,
-      DexEncodedMethod target) {
+  DexEncodedMethod doubleInlining(DexEncodedMethod method, DexEncodedMethod target) {
     if (!applyDoubleInlining) {
-      if (doubleInlineeCandidates.containsKey(target)) {
+      DexEncodedMethod firstCaller = doubleInlineeCandidates.putIfAbsent(target, method);
+      if (firstCaller != null) {
         // Both calls can be inlined.
-        doubleInlineCallers.add(doubleInlineeCandidates.get(target));
+        doubleInlineCallers.add(firstCaller);
         doubleInlineCallers.add(method);
         doubleInlineSelectedTargets.add(target);
-      } else {
-        // First call can be inlined.
-        doubleInlineeCandidates.put(target, method);
       }
+      // Otherwise the first call can be inlined.
       // Just preparing for double inlining.
       return null;
     } else {
@@ -130,13 +146,31 @@ public class Inliner {
     return target;
   }
 
-  public synchronized void processDoubleInlineCallers(IRConverter converter,
-      OptimizationFeedback feedback) {
+  /**
+   * Process the double inline callers again, now inlining the selected targets.
+   *
+   * <p>The callers are processed in the order given by {@code waves}, the sets of methods
+   * processed together during the first pass. All callers in a wave are processed in parallel,
+   * and a wave is only started when the previous one is done, so callees are still processed
+   * before their callers.
+   */
+  public void processDoubleInlineCallers(IRConverter converter,
+      List<List<DexEncodedMethod>> waves, ExecutorService executorService,
+      OptimizationFeedback feedback) throws ExecutionException {
     if (doubleInlineCallers.size() > 0) {
       applyDoubleInlining = true;
-      for (DexEncodedMethod method : doubleInlineCallers) {
-        converter.processMethod(method, feedback, Outliner::noProcessing);
-        assert method.isProcessed();
+      for (List<DexEncodedMethod> wave : waves) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (DexEncodedMethod method : wave) {
+          if (doubleInlineCallers.contains(method)) {
+            futures.add(executorService.submit(() -> {
+              converter.processMethod(method, feedback, Outliner::noProcessing);
+              assert method.isProcessed();
+            }));
+          }
+        }
+        ThreadUtils.awaitFutures(futures);
+        updateTotalGrowth();
       }
     }
   }
@@ -243,8 +277,34 @@ public class Inliner {
     return code.collectArguments().get(0);
   }
 
+  boolean hasTotalBudget(int size) {
+    long budget = options.inlining.totalInstructionBudget;
+    return budget < 0 || totalGrowth + size <= budget;
+  }
+
+  /**
+   * Add the growth by inlining in the methods processed since the last call to the total.
+   */
+  public void updateTotalGrowth() {
+    totalGrowth += pendingGrowth.getAndSet(0);
+  }
+
+  void addReport(InliningInfo info) {
+    reports.put(info.method, info);
+  }
+
+  public void printReport() {
+    List<InliningInfo> infos = new ArrayList<>(reports.values());
+    infos.sort((a, b) -> a.method.method.slowCompareTo(b.method.method));
+    for (InliningInfo info : infos) {
+      System.out.print(info);
+    }
+    System.out.println("Total growth by inlining methods with simple code: "
+        + (totalGrowth + pendingGrowth.get()));
+  }
+
   public void performInlining(DexEncodedMethod method, IRCode code, CallGraph callGraph) {
-    int instruction_allowance = 1500;
+    int instruction_allowance = options.inlining.callerInstructionBudget;
     instruction_allowance -= numberOfInstructions(code);
     if (instruction_allowance < 0) {
       return;
@@ -318,9 +378,14 @@ public class Inliner {
               // Inline the inlinee code in place of the invoke instruction
               // Back up before the invoke instruction.
               iterator.previous();
-              instruction_allowance -= numberOfInstructions(inlinee);
+              int inlineeSize = numberOfInstructions(inlinee);
+              instruction_allowance -= inlineeSize;
               if (instruction_allowance >= 0 || result.forceInline()) {
                 iterator.inlineInvoke(code, inlinee, blockIterator, blocksToRemove, downcast);
+                oracle.recordGrowth(inlineeSize);
+                if (!result.forceInline()) {
+                  pendingGrowth.addAndGet(inlineeSize);
+                }
               }
               // If we inlined the invoke from a bridge method, it is no longer a bridge method.
               if (method.accessFlags.isBridge()) {
@@ -0,0 +1,27 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.InvokeMethod;
+
+/**
+ * Decides whether a call to a method with simple code is worth inlining.
+ *
+ * <p>Only calls inlined for {@link Inliner.Reason#SIMPLE} are subject to the cost model. The other
+ * reasons do not duplicate code, so those calls are always inlined.
+ */
+public interface InliningCostModel {
+
+  /**
+   * Returns whether to inline {@code target} at {@code invoke}.
+   *
+   * @param invoke the call
+   * @param target the method called, which has already been processed
+   * @param targetSize the number of instructions in the code of {@code target}
+   * @param callerGrowth the number of instructions inlined into the caller so far
+   */
+  boolean shouldInline(
+      InvokeMethod invoke, DexEncodedMethod target, int targetSize, int callerGrowth);
+}
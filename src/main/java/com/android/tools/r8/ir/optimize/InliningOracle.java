@@ -31,6 +31,8 @@ public class InliningOracle {
   final Value receiver;
   final CallGraph callGraph;
   final private InliningInfo info;
+  // Number of instructions inlined into the method so far.
+  private int callerGrowth = 0;
 
   public InliningOracle(
       Inliner inliner,
@@ -41,13 +43,20 @@ public class InliningOracle {
     this.method = method;
     this.receiver = receiver;
     this.callGraph = callGraph;
-    info = Log.ENABLED ? new InliningInfo(method) : null;
+    info = Log.ENABLED || inliner.options.inlining.printReport ? new InliningInfo(method) : null;
   }
 
   public void finish() {
     if (Log.ENABLED) {
       System.out.println(info.toString());
     }
+    if (inliner.options.inlining.printReport) {
+      inliner.addReport(info);
+    }
+  }
+
+  void recordGrowth(int size) {
+    callerGrowth += size;
   }
 
   DexEncodedMethod validateCandidate(InvokeMethod invoke) {
@@ -89,6 +98,24 @@ public class InliningOracle {
     return candidate;
   }
 
+  private boolean isWorthInlining(InvokeMethod invoke, DexEncodedMethod target) {
+    assert target.isProcessed() && target.getCode().isDexCode();
+    int size = target.getCode().asDexCode().getInstructionCount();
+    if (!inliner.costModel.shouldInline(invoke, target, size, callerGrowth)) {
+      if (info != null) {
+        info.exclude(invoke, "target is too large for the call site");
+      }
+      return false;
+    }
+    if (!inliner.hasTotalBudget(size)) {
+      if (info != null) {
+        info.exclude(invoke, "total inlining budget is used up");
+      }
+      return false;
+    }
+    return true;
+  }
+
   private Reason computeInliningReason(DexEncodedMethod target) {
     if (target.getOptimizationInfo().forceInline()) {
       return Reason.FORCE;
@@ -161,6 +188,10 @@ public class InliningOracle {
       return null;
     }
 
+    if (reason == Reason.SIMPLE && !isWorthInlining(invoke, target)) {
+      return null;
+    }
+
     if (callGraph.isBreaker(method, target)) {
       // Cycle breaker so abort to preserve compilation order.
       return null;
@@ -183,7 +214,7 @@ public class InliningOracle {
     }
 
     if (info != null) {
-      info.include(invoke.getType(), target);
+      info.include(invoke.getType(), target, reason);
     }
     return new InlineAction(target, invoke, reason);
   }
@@ -212,11 +243,11 @@ public class InliningOracle {
     return (clazz != null) && (!clazz.hasNonTrivialClassInitializer());
   }
 
-  private synchronized boolean isDoubleInliningTarget(DexEncodedMethod candidate) {
+  private boolean isDoubleInliningTarget(DexEncodedMethod candidate) {
     // 10 is found from measuring.
     return callGraph.hasDoubleCallSite(candidate)
         && candidate.getCode().isDexCode()
-        && (candidate.getCode().asDexCode().instructions.length <= 10);
+        && (candidate.getCode().asDexCode().getInstructionCount() <= 10);
   }
 
   public InlineAction computeForInvokeStatic(InvokeStatic invoke) {
@@ -234,6 +265,10 @@ public class InliningOracle {
       return null;
     }
 
+    if (reason == Reason.SIMPLE && !isWorthInlining(invoke, candidate)) {
+      return null;
+    }
+
     // Abort inlining attempt if we can not guarantee class for static target has been initialized.
     if (!canInlineStaticInvoke(method, candidate)) {
       if (info != null) {
@@ -251,7 +286,7 @@ public class InliningOracle {
     }
 
     if (info != null) {
-      info.include(invoke.getType(), candidate);
+      info.include(invoke.getType(), candidate, reason);
     }
     return new InlineAction(candidate, invoke, reason);
   }
@@ -265,7 +300,7 @@ public class InliningOracle {
       return null;
     }
     if (info != null) {
-      info.include(invoke.getType(), candidate);
+      info.include(invoke.getType(), candidate, Reason.SIMPLE);
     }
     return new InlineAction(candidate, invoke, Reason.SIMPLE);
   }
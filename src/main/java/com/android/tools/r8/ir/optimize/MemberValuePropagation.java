@@ -118,8 +118,11 @@ public class MemberValuePropagation {
    * Replace invoke targets and field accesses with constant values where possible.
    * <p>
    * Also assigns value ranges to values where possible.
+   *
+   * @param code the code to rewrite
+   * @param context the holder of the method being rewritten
    */
-  public void rewriteWithConstantValues(IRCode code) {
+  public void rewriteWithConstantValues(IRCode code, DexType context) {
     InstructionIterator iterator = code.instructionIterator();
     while (iterator.hasNext()) {
       Instruction current = iterator.next();
@@ -203,6 +206,13 @@ public class MemberValuePropagation {
               replacement = constantReplacementFromProguardRule(lookup.rule, code, staticGet);
             }
           }
+          if (replacement == null && lookup == null && target.hasConstantValue()
+              && context.isSubtypeOf(target.field.getHolder(), appInfo)) {
+            // The holder is initialized before code in the holder or its subtypes runs, so the
+            // read cannot trigger its class initializer nor see the field before it is assigned.
+            replacement = new ConstNumber(ConstType.fromMoveType(staticGet.dest().outType()),
+                staticGet.dest(), target.getConstantValue());
+          }
           if (replacement == null) {
             // If no const replacement was found, at least store the range information.
             if (lookup != null) {
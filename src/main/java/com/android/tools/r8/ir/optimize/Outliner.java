@@ -46,21 +46,38 @@ import com.android.tools.r8.naming.ClassNameMapper;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.StringUtils;
 import com.android.tools.r8.utils.StringUtils.BraceType;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Outliner {
 
   private final InternalOptions options;
-  private final Map<Outline, List<DexEncodedMethod>> candidates = new HashMap<>();
-  private final Map<Outline, DexMethod> generatedOutlines = new HashMap<>();
+  // Outline candidates are counted by fingerprint in a table per thread, as the candidates are
+  // identified concurrently. The tables are merged when selecting the outlines.
+  private final Queue<CandidateTable> candidateTables = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<CandidateTable> candidateTable =
+      ThreadLocal.withInitial(this::createCandidateTable);
+  // The selected outlines, the ones which reached the threshold.
+  private final List<Outline> candidates = new ArrayList<>();
+  // Set once the outline class has been built, and only read after that, possibly concurrently.
+  private Map<Outline, DexMethod> generatedOutlines = ImmutableMap.of();
   private final Set<DexEncodedMethod> methodsSelectedForOutlining = Sets.newIdentityHashSet();
 
   static final int MAX_IN_SIZE = 5;  // Avoid using ranged calls for outlined code.
@@ -163,21 +180,47 @@ public class Outliner {
           && returnType == ((Outline) other).returnType;
     }
 
+    // Hash of the parts of the outline compared by equals. Equal outlines have the same
+    // fingerprint and different outlines are very unlikely to.
+    long fingerprint() {
+      long hash = returnType.hashCode();
+      for (Instruction instruction : templateInstructions) {
+        hash = mix(hash, instruction.getInstructionName().hashCode());
+        hash = mix(hash, instruction.outValue() != null ? 1 : 0);
+        if (instruction.isInvokeMethod()) {
+          hash = mix(hash, instruction.asInvokeMethod().getInvokedMethod().hashCode());
+        } else if (instruction.isNewInstance()) {
+          hash = mix(hash, instruction.asNewInstance().clazz.hashCode());
+        } else if (instruction.isArithmeticBinop()) {
+          hash = mix(hash, instruction.asBinop().getNumericType().ordinal());
+        }
+      }
+      for (int argument : argumentMap) {
+        hash = mix(hash, argument);
+      }
+      return hash;
+    }
+
+    private long mix(long hash, int value) {
+      return Long.rotateLeft((hash ^ value) * 0x9E3779B97F4A7C15L, 31);
+    }
+
+    // Covers the same parts as equals, as the generated outlines are looked up by outline.
     @Override
     public int hashCode() {
-      final int MAX_HASH_INSTRUCTIONS = 5;
-
-      int hash = templateInstructions.size();
-      int hashPart = 0;
-      for (int i = 0; i < templateInstructions.size() && i < MAX_HASH_INSTRUCTIONS; i++) {
-        Instruction instruction = templateInstructions.get(i);
+      int hash = returnType.hashCode();
+      for (Instruction instruction : templateInstructions) {
+        hash = hash * 31 + instruction.getInstructionName().hashCode();
+        hash = hash * 31 + (instruction.outValue() != null ? 1 : 0);
         if (instruction.isInvokeMethod()) {
-          hashPart = hashPart << 4;
-          hashPart += instruction.asInvokeMethod().getInvokedMethod().hashCode();
+          hash = hash * 31 + instruction.asInvokeMethod().getInvokedMethod().hashCode();
+        } else if (instruction.isNewInstance()) {
+          hash = hash * 31 + instruction.asNewInstance().clazz.hashCode();
+        } else if (instruction.isArithmeticBinop()) {
+          hash = hash * 31 + instruction.asBinop().getNumericType().ordinal();
         }
-        hash = hash * 3 + hashPart;
       }
-      return hash;
+      return hash * 31 + argumentMap.hashCode();
     }
 
     @Override
@@ -642,17 +685,73 @@ public class Outliner {
     }
   }
 
+  // Outline candidates identified by a single thread. Only a fingerprint of each candidate is
+  // counted, and for each method the fingerprints of the candidates found in it are recorded.
+  private static class CandidateTable {
+    final Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+    final ArrayList<DexEncodedMethod> methods = new ArrayList<>();
+    final ArrayList<long[]> methodFingerprints = new ArrayList<>();
+
+    // Clear the table and free its storage, as the table can stay reachable from a pooled thread.
+    void release() {
+      counts.clear();
+      counts.trim();
+      methods.clear();
+      methods.trimToSize();
+      methodFingerprints.clear();
+      methodFingerprints.trimToSize();
+    }
+  }
+
+  private CandidateTable createCandidateTable() {
+    CandidateTable table = new CandidateTable();
+    candidateTables.add(table);
+    return table;
+  }
+
   // Collect outlining candidates with the methods that can use them.
   // TODO(sgjesse): This does not take several usages in the same method into account.
   private class OutlineIdentifier extends OutlineSpotter {
 
-    OutlineIdentifier(DexEncodedMethod method, BasicBlock block) {
+    private final CandidateTable table;
+    private final LongArrayList fingerprints;
+
+    OutlineIdentifier(DexEncodedMethod method, BasicBlock block, CandidateTable table,
+        LongArrayList fingerprints) {
       super(method, block);
+      this.table = table;
+      this.fingerprints = fingerprints;
     }
 
     protected void handle(int start, int end, Outline outline) {
-      synchronized (candidates) {
-        candidates.computeIfAbsent(outline, k -> new ArrayList<>()).add(method);
+      long fingerprint = outline.fingerprint();
+      table.counts.addTo(fingerprint, 1);
+      fingerprints.add(fingerprint);
+    }
+  }
+
+  // Collect the outlines of the fingerprints which reached the threshold. If different outlines
+  // share a fingerprint the smallest one is kept, so the result does not depend on the order in
+  // which the methods are processed.
+  private class OutlineCollector extends OutlineSpotter {
+
+    private final LongOpenHashSet selected;
+    private final Map<Long, Outline> outlines;
+    boolean found = false;
+
+    OutlineCollector(DexEncodedMethod method, BasicBlock block, LongOpenHashSet selected,
+        Map<Long, Outline> outlines) {
+      super(method, block);
+      this.selected = selected;
+      this.outlines = outlines;
+    }
+
+    protected void handle(int start, int end, Outline outline) {
+      long fingerprint = outline.fingerprint();
+      if (selected.contains(fingerprint)) {
+        Outline kept = outlines.merge(fingerprint, outline,
+            (existing, other) -> existing.compareTo(other) <= 0 ? existing : other);
+        found |= kept.equals(outline);
       }
     }
   }
@@ -676,9 +775,8 @@ public class Outliner {
     }
 
     protected void handle(int start, int end, Outline outline) {
-      if (candidates.containsKey(outline)) {
-        DexMethod m = generatedOutlines.get(outline);
-        assert m != null;
+      DexMethod m = generatedOutlines.get(outline);
+      if (m != null) {
         List<Instruction> instructions = block.getInstructions();
         List<Value> in = new ArrayList<>();
         returnValue = null;
@@ -736,24 +834,71 @@ public class Outliner {
 
   public void identifyCandidates(IRCode code, DexEncodedMethod method) {
     assert !(method.getCode() instanceof OutlineCode);
+    CandidateTable table = candidateTable.get();
+    LongArrayList fingerprints = new LongArrayList();
     for (BasicBlock block : code.blocks) {
-      new OutlineIdentifier(method, block).process();
+      new OutlineIdentifier(method, block, table, fingerprints).process();
+    }
+    if (!fingerprints.isEmpty()) {
+      table.methods.add(method);
+      table.methodFingerprints.add(fingerprints.toLongArray());
     }
   }
 
-  public boolean selectMethodsForOutlining() {
+  public boolean selectMethodsForOutlining(ExecutorService executorService)
+      throws ExecutionException {
     assert methodsSelectedForOutlining.size() == 0;
-    List<Outline> toRemove = new ArrayList<>();
-    for (Entry<Outline, List<DexEncodedMethod>> entry : candidates.entrySet()) {
-      if (entry.getValue().size() < options.outline.threshold) {
-        toRemove.add(entry.getKey());
-      } else {
-        methodsSelectedForOutlining.addAll(entry.getValue());
+    assert candidates.size() == 0;
+    // Merge the counts of all threads and select the fingerprints reaching the threshold.
+    Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+    for (CandidateTable table : candidateTables) {
+      for (Long2IntMap.Entry entry : table.counts.long2IntEntrySet()) {
+        counts.addTo(entry.getLongKey(), entry.getIntValue());
       }
     }
-    for (Outline outline : toRemove) {
-      candidates.remove(outline);
+    LongOpenHashSet selected = new LongOpenHashSet();
+    for (Long2IntMap.Entry entry : counts.long2IntEntrySet()) {
+      if (entry.getIntValue() >= options.outline.threshold) {
+        selected.add(entry.getLongKey());
+      }
+    }
+    List<DexEncodedMethod> methods = new ArrayList<>();
+    for (CandidateTable table : candidateTables) {
+      for (int i = 0; i < table.methods.size(); i++) {
+        for (long fingerprint : table.methodFingerprints.get(i)) {
+          if (selected.contains(fingerprint)) {
+            methods.add(table.methods.get(i));
+            break;
+          }
+        }
+      }
+      table.release();
+    }
+    candidateTables.clear();
+    candidateTable.remove();
+    // The outlines are only built for the selected fingerprints, from the code the methods got
+    // in the first phase. Methods where none of them is found again are not selected.
+    Map<Long, Outline> outlines = new ConcurrentHashMap<>();
+    List<Future<Boolean>> futures = new ArrayList<>();
+    for (DexEncodedMethod method : methods) {
+      futures.add(executorService.submit(() -> {
+        IRCode code = method.buildIR(options);
+        boolean found = false;
+        for (BasicBlock block : code.blocks) {
+          OutlineCollector collector = new OutlineCollector(method, block, selected, outlines);
+          collector.process();
+          found |= collector.found;
+        }
+        return found;
+      }));
+    }
+    List<Boolean> found = ThreadUtils.awaitFutures(futures);
+    for (int i = 0; i < methods.size(); i++) {
+      if (found.get(i)) {
+        methodsSelectedForOutlining.add(methods.get(i));
+      }
     }
+    candidates.addAll(outlines.values());
     return methodsSelectedForOutlining.size() > 0;
   }
 
@@ -1007,8 +1152,9 @@ public class Outliner {
 
     // By now the candidates are the actual selected outlines. Name the generated methods in a
     // consistent order, to provide deterministic output.
-    List<Outline> outlines = new ArrayList<>(candidates.keySet());
+    List<Outline> outlines = new ArrayList<>(candidates);
     outlines.sort(Comparator.naturalOrder());
+    ImmutableMap.Builder<Outline, DexMethod> generatedOutlines = ImmutableMap.builder();
     for (Outline outline : outlines) {
       DexAccessFlags methodAccess = new DexAccessFlags(Constants.ACC_PUBLIC, Constants.ACC_STATIC);
       DexString methodName = dexItemFactory.createString(options.outline.methodPrefix + count);
@@ -1018,6 +1164,7 @@ public class Outliner {
       generatedOutlines.put(outline, method);
       count++;
     }
+    this.generatedOutlines = generatedOutlines.build();
     // No need to sort the direct methods as they are generated in sorted order.
 
     // Build the outliner class.
@@ -0,0 +1,38 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.ir.code.InvokeMethod;
+import com.android.tools.r8.ir.code.Value;
+import com.android.tools.r8.utils.InternalOptions.InliningOptions;
+
+/**
+ * Inline methods up to a fixed size, and somewhat larger methods when called with constant
+ * arguments, as the inlined code is likely to simplify further.
+ *
+ * <p>Once the caller has used half of its budget only the fixed size applies.
+ */
+public class SizeInliningCostModel implements InliningCostModel {
+
+  private final InliningOptions options;
+
+  public SizeInliningCostModel(InliningOptions options) {
+    this.options = options;
+  }
+
+  @Override
+  public boolean shouldInline(
+      InvokeMethod invoke, DexEncodedMethod target, int targetSize, int callerGrowth) {
+    int allowedSize = options.simpleInlineeSize;
+    if (callerGrowth < options.callerInstructionBudget / 2) {
+      for (Value argument : invoke.arguments()) {
+        if (argument.isConstant()) {
+          allowedSize += options.constantArgumentBonus;
+        }
+      }
+    }
+    return targetSize <= Math.min(allowedSize, options.maxSimpleInlineeSize);
+  }
+}
@@ -0,0 +1,268 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.ir.optimize;
+
+import com.android.tools.r8.ir.code.BasicBlock;
+import com.android.tools.r8.ir.code.ConstNumber;
+import com.android.tools.r8.ir.code.IRCode;
+import com.android.tools.r8.ir.code.If;
+import com.android.tools.r8.ir.code.Instruction;
+import com.android.tools.r8.ir.code.InstructionListIterator;
+import com.android.tools.r8.ir.code.Phi;
+import com.android.tools.r8.ir.code.Value;
+import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation, see Wegman and Zadeck, "Constant Propagation with
+ * Conditional Branches".
+ *
+ * <p>Values are assumed undefined and blocks unreachable until shown otherwise. Only the
+ * control flow edges that can be taken given the constants known so far are followed, so
+ * constants flowing through phis and branches on such constants are found, also in loops.
+ *
+ * <p>When the analysis is done, values found to be constant are replaced by constants in the
+ * reachable blocks. Branches on those constants are left to {@link CodeRewriter#simplifyIf},
+ * and the instructions computing them to {@link DeadCodeRemover}.
+ */
+public class SparseConditionalConstantPropagation {
+
+  private final IRCode code;
+  private final Map<Value, LatticeElement> latticeElements = new HashMap<>();
+  // Blocks that are known to be reachable, and for each of them the predecessors known to reach
+  // it.
+  private final Map<BasicBlock, Set<BasicBlock>> executableEdges = new IdentityHashMap<>();
+  private final Deque<BasicBlock> blockWorklist = new ArrayDeque<>();
+  private final Deque<Value> valueWorklist = new ArrayDeque<>();
+
+  private static class LatticeElement {
+    // Undefined so far.
+    static final LatticeElement TOP = new LatticeElement(null);
+    // Not constant.
+    static final LatticeElement BOTTOM = new LatticeElement(null);
+
+    final ConstNumber constant;
+
+    LatticeElement(ConstNumber constant) {
+      this.constant = constant;
+    }
+
+    boolean isConstant() {
+      return constant != null;
+    }
+
+    LatticeElement meet(LatticeElement other) {
+      if (this == TOP || other == BOTTOM) {
+        return other;
+      }
+      if (other == TOP || this == BOTTOM) {
+        return this;
+      }
+      return sameConstant(constant, other.constant) ? this : BOTTOM;
+    }
+
+    static boolean sameConstant(ConstNumber a, ConstNumber b) {
+      return a.type == b.type
+          && a.getRawValue() == b.getRawValue()
+          && a.outType() == b.outType();
+    }
+  }
+
+  public SparseConditionalConstantPropagation(IRCode code) {
+    this.code = code;
+  }
+
+  public void run() {
+    BasicBlock entry = code.blocks.getFirst();
+    executableEdges.put(entry, Sets.newIdentityHashSet());
+    blockWorklist.add(entry);
+    while (!blockWorklist.isEmpty() || !valueWorklist.isEmpty()) {
+      while (!blockWorklist.isEmpty()) {
+        visitBlock(blockWorklist.poll());
+      }
+      while (!valueWorklist.isEmpty()) {
+        Value value = valueWorklist.poll();
+        for (Phi user : value.uniquePhiUsers()) {
+          if (isExecutable(user.getBlock())) {
+            visitPhi(user);
+          }
+        }
+        for (Instruction user : value.uniqueUsers()) {
+          if (isExecutable(user.getBlock())) {
+            visitInstruction(user);
+          }
+        }
+      }
+    }
+    rewriteCode();
+    assert code.isConsistentSSA();
+  }
+
+  private boolean isExecutable(BasicBlock block) {
+    return executableEdges.containsKey(block);
+  }
+
+  private LatticeElement getLatticeElement(Value value) {
+    return latticeElements.getOrDefault(value, LatticeElement.TOP);
+  }
+
+  private ConstNumber getConstant(Value value) {
+    return getLatticeElement(value).constant;
+  }
+
+  private void setLatticeElement(Value value, LatticeElement element) {
+    LatticeElement previous = getLatticeElement(value);
+    if (previous == element
+        || (previous.isConstant() && element.isConstant()
+            && LatticeElement.sameConstant(previous.constant, element.constant))) {
+      return;
+    }
+    // Elements only ever move down the lattice.
+    assert previous == LatticeElement.TOP || element == LatticeElement.BOTTOM;
+    latticeElements.put(value, element);
+    valueWorklist.add(value);
+  }
+
+  private void markEdgeExecutable(BasicBlock from, BasicBlock to) {
+    Set<BasicBlock> predecessors = executableEdges.get(to);
+    if (predecessors == null) {
+      predecessors = Sets.newIdentityHashSet();
+      predecessors.add(from);
+      executableEdges.put(to, predecessors);
+      blockWorklist.add(to);
+    } else if (predecessors.add(from)) {
+      // Phis now see another operand. The instructions have already been visited.
+      for (Phi phi : to.getPhis()) {
+        visitPhi(phi);
+      }
+    }
+  }
+
+  private void visitBlock(BasicBlock block) {
+    for (Phi phi : block.getPhis()) {
+      visitPhi(phi);
+    }
+    for (Instruction instruction : block.getInstructions()) {
+      visitInstruction(instruction);
+    }
+  }
+
+  private void visitPhi(Phi phi) {
+    Set<BasicBlock> executablePredecessors = executableEdges.get(phi.getBlock());
+    List<BasicBlock> predecessors = phi.getBlock().getPredecessors();
+    LatticeElement element = LatticeElement.TOP;
+    for (int i = 0; i < predecessors.size() && element != LatticeElement.BOTTOM; i++) {
+      if (executablePredecessors.contains(predecessors.get(i))) {
+        element = element.meet(getLatticeElement(phi.getOperand(i)));
+      }
+    }
+    setLatticeElement(phi, element);
+  }
+
+  private void visitInstruction(Instruction instruction) {
+    Value outValue = instruction.outValue();
+    if (outValue != null) {
+      setLatticeElement(outValue, evaluate(instruction));
+    }
+    if (instruction == instruction.getBlock().exit()) {
+      visitExit(instruction.getBlock());
+    }
+  }
+
+  private LatticeElement evaluate(Instruction instruction) {
+    if (instruction.isConstNumber()) {
+      return new LatticeElement(instruction.asConstNumber());
+    }
+    if (!instruction.isBinop() && !instruction.isUnop()) {
+      return LatticeElement.BOTTOM;
+    }
+    for (Value inValue : instruction.inValues()) {
+      if (getLatticeElement(inValue) == LatticeElement.TOP) {
+        return LatticeElement.TOP;
+      }
+    }
+    ConstNumber constant = instruction.evaluate(code, this::getConstant);
+    return constant == null ? LatticeElement.BOTTOM : new LatticeElement(constant);
+  }
+
+  private void visitExit(BasicBlock block) {
+    if (block.exit().isIf()) {
+      If theIf = block.exit().asIf();
+      List<Value> inValues = theIf.inValues();
+      LatticeElement left = getLatticeElement(inValues.get(0));
+      LatticeElement right =
+          theIf.isZeroTest() ? left : getLatticeElement(inValues.get(1));
+      if (left == LatticeElement.TOP || right == LatticeElement.TOP) {
+        // Wait until the condition is known.
+        return;
+      }
+      if (left.isConstant() && right.isConstant()) {
+        int cond;
+        if (theIf.isZeroTest()) {
+          cond = left.constant.getIntValue();
+        } else {
+          cond = Integer.compare(left.constant.getIntValue(), right.constant.getIntValue());
+        }
+        markEdgeExecutable(block, theIf.targetFromCondition(cond));
+        markCatchHandlersExecutable(block);
+        return;
+      }
+    }
+    for (BasicBlock successor : block.getSuccessors()) {
+      markEdgeExecutable(block, successor);
+    }
+  }
+
+  private void markCatchHandlersExecutable(BasicBlock block) {
+    if (block.hasCatchHandlers()) {
+      for (BasicBlock handler : block.getCatchHandlers().getUniqueTargets()) {
+        markEdgeExecutable(block, handler);
+      }
+    }
+  }
+
+  private void rewriteCode() {
+    for (BasicBlock block : code.blocks) {
+      if (!isExecutable(block)) {
+        continue;
+      }
+      InstructionListIterator iterator = block.listIterator();
+      // Constants for phis go first in the block, after a move-exception if there is one.
+      if (iterator.hasNext() && iterator.peekNext().isMoveException()) {
+        iterator.next();
+      }
+      for (Phi phi : new ArrayList<>(block.getPhis())) {
+        LatticeElement element = getLatticeElement(phi);
+        if (element.isConstant() && phi.getLocalInfo() == null) {
+          ConstNumber constant = ConstNumber.copyOf(code, element.constant);
+          iterator.add(constant);
+          for (Value operand : phi.getOperands()) {
+            operand.removePhiUser(phi);
+          }
+          phi.replaceUsers(constant.outValue());
+          block.removePhi(phi);
+        }
+      }
+      while (iterator.hasNext()) {
+        Instruction instruction = iterator.next();
+        Value outValue = instruction.outValue();
+        if (outValue == null || instruction.isConstNumber() || outValue.getLocalInfo() != null) {
+          continue;
+        }
+        LatticeElement element = getLatticeElement(outValue);
+        if (element.isConstant()) {
+          // The constant was created when evaluating the instruction and is in no block yet.
+          iterator.replaceCurrentInstruction(element.constant);
+        }
+      }
+    }
+  }
+}
@@ -101,6 +101,10 @@ public class JarRegisterEffectsVisitor extends MethodVisitor {
 
   @Override
   public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+    registry.registerCallSiteReference(application.getType(Type.getReturnType(desc)));
+    for (Type parameter : Type.getArgumentTypes(desc)) {
+      registry.registerCallSiteReference(application.getType(parameter));
+    }
     registerMethodHandleType(bsm);
 
     // Register bootstrap method arguments, only Type and MethodHandle need to be register.
@@ -114,6 +118,7 @@ public class JarRegisterEffectsVisitor extends MethodVisitor {
   }
 
   private void registerMethodHandleType(Handle handle) {
+    registry.registerCallSiteReference(application.getTypeFromName(handle.getOwner()));
     switch (handle.getTag()) {
       case Opcodes.H_GETFIELD:
         visitFieldInsn(Opcodes.GETFIELD, handle.getOwner(), handle.getName(), handle.getDesc());
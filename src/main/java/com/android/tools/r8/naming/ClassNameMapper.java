@@ -17,8 +17,8 @@ import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class ClassNameMapper {
@@ -26,19 +26,15 @@ public class ClassNameMapper {
   private final ImmutableMap<String, ClassNaming> classNameMappings;
   private ImmutableBiMap<String, String> nameMapping;
 
-  private Hashtable<Signature, Signature> signatureMap = new Hashtable<>();
+  private final ConcurrentHashMap<Signature, Signature> signatureMap = new ConcurrentHashMap<>();
 
   ClassNameMapper(Map<String, ClassNaming> classNameMappings) {
     this.classNameMappings = ImmutableMap.copyOf(classNameMappings);
   }
 
   private Signature canonicalizeSignature(Signature signature) {
-    Signature result = signatureMap.get(signature);
-    if (result != null) {
-      return result;
-    }
-    signatureMap.put(signature, signature);
-    return signature;
+    Signature result = signatureMap.putIfAbsent(signature, signature);
+    return result != null ? result : signature;
   }
 
   public MethodSignature getRenamedMethodSignature(DexMethod method) {
@@ -16,6 +16,7 @@ import com.android.tools.r8.utils.DescriptorUtils;
 import com.android.tools.r8.utils.StringUtils;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -45,15 +46,18 @@ public class ClassNameMinifier {
   }
 
   public Map<DexType, DexString> computeRenaming() {
-    Iterable<DexProgramClass> classes = appInfo.classes();
+    List<DexProgramClass> classes = new ArrayList<>();
+    appInfo.classes().forEach(classes::add);
     // Collect names we have to keep.
-    for (DexClass clazz : appInfo.classes()) {
+    for (DexClass clazz : classes) {
       if (rootSet.noObfuscation.contains(clazz)) {
         assert !renaming.containsKey(clazz.type);
         registerClassAsUsed(clazz.type);
       }
     }
-    for (DexClass clazz : appInfo.classes()) {
+    // Give the shortest names to the most referenced classes.
+    classes.sort((a, b) -> appInfo.getReferenceCount(b.type) - appInfo.getReferenceCount(a.type));
+    for (DexClass clazz : classes) {
       if (!renaming.containsKey(clazz.type)) {
         DexString renamed = computeName(clazz);
         renaming.put(clazz.type, renamed);
@@ -3,26 +3,27 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.naming;
 
-import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.DexClass;
 import com.android.tools.r8.graph.DexEncodedField;
 import com.android.tools.r8.graph.DexField;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class FieldNameMinifier {
 
-  private final AppInfoWithSubtyping appInfo;
+  private final AppInfoWithLiveness appInfo;
   private final RootSet rootSet;
   private final Map<DexField, DexString> renaming = new IdentityHashMap<>();
   private final List<String> dictionary;
   private final Map<DexType, NamingState<DexType>> states = new IdentityHashMap<>();
 
-  public FieldNameMinifier(AppInfoWithSubtyping appInfo, RootSet rootSet, List<String> dictionary) {
+  public FieldNameMinifier(AppInfoWithLiveness appInfo, RootSet rootSet, List<String> dictionary) {
     this.appInfo = appInfo;
     this.rootSet = rootSet;
     this.dictionary = dictionary;
@@ -78,7 +79,11 @@ public class FieldNameMinifier {
   }
 
   private void renameFields(DexEncodedField[] fields, NamingState<DexType> state) {
-    for (DexEncodedField encodedField : fields) {
+    // Give the shortest names to the most referenced fields.
+    DexEncodedField[] sortedFields = fields.clone();
+    Arrays.sort(sortedFields, (a, b) ->
+        appInfo.getReferenceCount(b.field) - appInfo.getReferenceCount(a.field));
+    for (DexEncodedField encodedField : sortedFields) {
       DexField field = encodedField.field;
       if (!state.isReserved(field.name, field.type)) {
         renaming.put(field, state.assignNewNameFor(field.name, field.type, false));
@@ -0,0 +1,100 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.naming;
+
+import com.android.tools.r8.graph.Code;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexDebugEntry;
+import com.android.tools.r8.graph.DexDebugInfo;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.naming.MemberNaming.Range;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the line numbers of each method down so that the first line of the method is line 1.
+ *
+ * <p>Only the start line of a debug info item is absolute, all other positions are encoded as
+ * deltas. Methods with the same sequence of deltas thus end up with identical debug info, which
+ * is written only once to the dex file. The original lines of the rebased methods are recorded
+ * as line ranges in the Proguard map by the {@link MinifiedNameMapPrinter}.
+ */
+public class LineNumberRebaser {
+
+  /**
+   * The lines of a method after rebasing and the original lines they map to.
+   */
+  static class LineMapping {
+
+    final Range rebased;
+    final Range original;
+
+    LineMapping(Range rebased, Range original) {
+      this.rebased = rebased;
+      this.original = original;
+    }
+  }
+
+  private final Map<DexEncodedMethod, LineMapping> methodMappings = new IdentityHashMap<>();
+  // Code objects may be shared between methods, they must only be rebased once.
+  private final Map<DexCode, LineMapping> codeMappings = new IdentityHashMap<>();
+
+  public void run(Iterable<DexProgramClass> classes) {
+    for (DexProgramClass clazz : classes) {
+      processMethods(clazz.directMethods());
+      processMethods(clazz.virtualMethods());
+    }
+  }
+
+  private void processMethods(DexEncodedMethod[] methods) {
+    for (DexEncodedMethod method : methods) {
+      Code code = method.getCode();
+      if (code == null || !code.isDexCode()) {
+        continue;
+      }
+      DexCode dexCode = code.asDexCode();
+      LineMapping mapping;
+      if (codeMappings.containsKey(dexCode)) {
+        mapping = codeMappings.get(dexCode);
+      } else {
+        mapping = rebase(dexCode);
+        codeMappings.put(dexCode, mapping);
+      }
+      if (mapping != null) {
+        methodMappings.put(method, mapping);
+      }
+    }
+  }
+
+  private LineMapping rebase(DexCode code) {
+    DexDebugInfo info = code.getDebugInfo();
+    if (info == null) {
+      return null;
+    }
+    List<DexDebugEntry> entries = info.computeEntries();
+    if (entries.isEmpty()) {
+      return null;
+    }
+    int firstLine = Integer.MAX_VALUE;
+    int lastLine = Integer.MIN_VALUE;
+    for (DexDebugEntry entry : entries) {
+      firstLine = Math.min(firstLine, entry.line);
+      lastLine = Math.max(lastLine, entry.line);
+    }
+    // The start line may be below the first line of an entry, it must not become negative.
+    int shift = Math.min(firstLine, info.startLine) - 1;
+    if (shift <= 0) {
+      return null;
+    }
+    code.setDebugInfo(new DexDebugInfo(info.startLine - shift, info.parameters, info.events));
+    return new LineMapping(
+        new Range(firstLine - shift, lastLine - shift), new Range(firstLine, lastLine));
+  }
+
+  LineMapping getLineMapping(DexEncodedMethod method) {
+    return methodMappings.get(method);
+  }
+}
@@ -3,25 +3,26 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.naming;
 
-import com.android.tools.r8.graph.AppInfoWithSubtyping;
 import com.android.tools.r8.graph.DexClass;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.graph.DexProto;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
-import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
-import com.google.common.base.Equivalence.Wrapper;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A pass to rename methods using common, short names.
@@ -67,13 +68,16 @@ import java.util.Set;
  * of the interface this method first originated from, we propose names until we find a matching
  * one. We use the naming state of the interface to not impact name availability in naming states of
  * classes. Hence, skipping over names during interface naming does not impact their availability in
- * the next phase.
+ * the next phase. Interfaces are visited in a fixed order, so the names do not depend on the order
+ * of the subtype sets.
  * <p>
  * In the final stage, we assign names to methods by traversing the subtype tree, now allocating
  * separate naming states for each class starting from the frontier. In the first swoop, we allocate
  * all non-private methods, updating naming states accordingly. In a second swoop, we then allocate
  * private methods, as those may safely use names that are used by a public method further down in
- * the subtyping tree.
+ * the subtyping tree. As all constraints from interfaces have been recorded in the frontier states
+ * by now, the subtrees below different frontiers only share the library states, which are no longer
+ * changed. Hence, the subtrees are processed in parallel.
  * <p>
  * Finally, the computed renamings are returned as a map from {@link DexMethod} to
  * {@link DexString}. The MethodNameMinifier object should not be retained to ensure all
@@ -84,14 +88,13 @@ import java.util.Set;
  */
 public class MethodNameMinifier {
 
-  private final AppInfoWithSubtyping appInfo;
+  private final AppInfoWithLiveness appInfo;
   private final RootSet rootSet;
   private final Map<DexType, NamingState<DexProto>> states = new IdentityHashMap<>();
   private final NamingState<DexProto> globalState;
-  private MethodSignatureEquivalence equivalence = MethodSignatureEquivalence.get();
   private final List<String> dictionary;
 
-  public MethodNameMinifier(AppInfoWithSubtyping appInfo, RootSet rootSet,
+  public MethodNameMinifier(AppInfoWithLiveness appInfo, RootSet rootSet,
       List<String> dictionary) {
     this.appInfo = appInfo;
     this.rootSet = rootSet;
@@ -99,7 +102,8 @@ public class MethodNameMinifier {
     this.globalState = NamingState.createRoot(appInfo.dexItemFactory, dictionary);
   }
 
-  public Map<DexMethod, DexString> computeRenaming(Timing timing) {
+  public Map<DexMethod, DexString> computeRenaming(ExecutorService executorService, Timing timing)
+      throws ExecutionException {
     // Phase 1: Reserve all the names that need to be kept and allocate linked state in the
     //          library part.
     timing.begin("Phase 1");
@@ -120,34 +124,69 @@ public class MethodNameMinifier {
     Map<DexMethod, DexString> renaming = new IdentityHashMap<>();
     assignNamesToInterfaceMethods(frontierMap, renaming, timing);
     timing.end();
-    // Phase 4: Assign names top-down by traversing the subtype hierarchy.
+    // Phase 4: Assign names top-down by traversing the subtype hierarchy below each frontier,
+    //          first for non-private and then for private methods.
     timing.begin("Phase 4");
-    assignNamesToClassesMethods(appInfo.dexItemFactory.objectType, false, renaming);
-    timing.end();
-    // Phase 4: Do the same for private methods.
-    timing.begin("Phase 5");
-    assignNamesToClassesMethods(appInfo.dexItemFactory.objectType, true, renaming);
+    List<DexType> frontiers = new ArrayList<>();
+    collectProgramFrontiers(appInfo.dexItemFactory.objectType, frontierMap, frontiers);
+    List<Future<Map<DexMethod, DexString>>> futures = new ArrayList<>();
+    for (DexType frontier : frontiers) {
+      futures.add(executorService.submit(() -> assignNamesToSubtree(frontier)));
+    }
+    for (Map<DexMethod, DexString> subtreeRenaming : ThreadUtils.awaitFutures(futures)) {
+      renaming.putAll(subtreeRenaming);
+    }
     timing.end();
 
     return renaming;
   }
 
-  private void assignNamesToClassesMethods(DexType type, boolean doPrivates,
-      Map<DexMethod, DexString> renaming) {
+  private boolean isProgramClass(DexType type) {
     DexClass holder = appInfo.definitionFor(type);
-    if (holder != null && !holder.isLibraryClass()) {
-      NamingState<DexProto> state = states
-          .computeIfAbsent(type, k -> states.get(holder.superType).createChild());
-      assignNamesToMethods(holder.directMethods(), state, doPrivates, renaming);
-      assignNamesToMethods(holder.virtualMethods(), state, doPrivates, renaming);
+    return holder != null && !holder.isLibraryClass();
+  }
+
+  private void collectProgramFrontiers(DexType type, Map<DexType, DexType> frontierMap,
+      List<DexType> frontiers) {
+    if (frontierMap.get(type) == type && isProgramClass(type)) {
+      frontiers.add(type);
     }
     type.forAllExtendsSubtypes(
-        subtype -> assignNamesToClassesMethods(subtype, doPrivates, renaming));
+        subtype -> collectProgramFrontiers(subtype, frontierMap, frontiers));
+  }
+
+  private Map<DexMethod, DexString> assignNamesToSubtree(DexType frontier) {
+    // The states below the frontier are local to this subtree.
+    Map<DexType, NamingState<DexProto>> subtreeStates = new IdentityHashMap<>();
+    subtreeStates.put(frontier, states.get(frontier));
+    Map<DexMethod, DexString> renaming = new IdentityHashMap<>();
+    assignNamesToClassesMethods(frontier, false, subtreeStates, renaming);
+    assignNamesToClassesMethods(frontier, true, subtreeStates, renaming);
+    return renaming;
+  }
+
+  private void assignNamesToClassesMethods(DexType type, boolean doPrivates,
+      Map<DexType, NamingState<DexProto>> subtreeStates, Map<DexMethod, DexString> renaming) {
+    DexClass holder = appInfo.definitionFor(type);
+    NamingState<DexProto> state = subtreeStates
+        .computeIfAbsent(type, k -> subtreeStates.get(holder.superType).createChild());
+    assignNamesToMethods(holder.directMethods(), state, doPrivates, renaming);
+    assignNamesToMethods(holder.virtualMethods(), state, doPrivates, renaming);
+    type.forAllExtendsSubtypes(subtype -> {
+      // Program classes below a library or missing class start a new frontier.
+      if (isProgramClass(subtype)) {
+        assignNamesToClassesMethods(subtype, doPrivates, subtreeStates, renaming);
+      }
+    });
   }
 
   private void assignNamesToMethods(DexEncodedMethod[] methods,
       NamingState<DexProto> state, boolean doPrivates, Map<DexMethod, DexString> renaming) {
-    for (DexEncodedMethod encodedMethod : methods) {
+    // Give the shortest names to the most referenced methods.
+    DexEncodedMethod[] sortedMethods = methods.clone();
+    Arrays.sort(sortedMethods, (a, b) ->
+        appInfo.getReferenceCount(b.method) - appInfo.getReferenceCount(a.method));
+    for (DexEncodedMethod encodedMethod : sortedMethods) {
       if (encodedMethod.accessFlags.isPrivate() != doPrivates) {
         continue;
       }
@@ -165,7 +204,7 @@ public class MethodNameMinifier {
     interfaces.add(type);
     collectSuperInterfaces(type, interfaces);
     collectSubInterfaces(type, interfaces);
-    Set<NamingState<DexProto>> reachableStates = new HashSet<>();
+    Set<NamingState<DexProto>> reachableStates = Sets.newIdentityHashSet();
     for (DexType iface : interfaces) {
       // Add the interface itself
       reachableStates.add(states.get(iface));
@@ -181,45 +220,47 @@ public class MethodNameMinifier {
 
   private void assignNamesToInterfaceMethods(Map<DexType, DexType> frontierMap,
       Map<DexMethod, DexString> renaming, Timing timing) {
-    // First compute a map from method signatures to a set of naming states for interfaces and
-    // frontier states of classes that implement them. We add the frontier states so that we can
-    // reserve the names for later method naming.
+    // First compute the groups of interface methods with the same signature, together with the
+    // naming states for interfaces and frontier states of classes that implement them. We add the
+    // frontier states so that we can reserve the names for later method naming.
     timing.begin("Compute map");
-    // A map from DexMethods to all the states linked to interfaces they appear in.
-    Map<Wrapper<DexMethod>, Set<NamingState<DexProto>>> globalStateMap = new HashMap<>();
-    // A map from DexMethods to all the definitions seen. Needed as the Wrapper equalizes them all.
-    Map<Wrapper<DexMethod>, Set<DexMethod>> sourceMethodsMap = new HashMap<>();
-    // A map from DexMethods to the first interface state it was seen in. Used to pick good names.
-    Map<Wrapper<DexMethod>, NamingState<DexProto>> originStates = new HashMap<>();
-    DexType.forAllInterfaces(appInfo.dexItemFactory, iface -> {
-      assert iface.isInterface();
+    // The groups by proto and name, which are canonicalized, so no wrapping is needed.
+    Map<DexProto, Map<DexString, InterfaceMethodGroup>> groupMap = new IdentityHashMap<>();
+    // The groups in the order they were first seen in.
+    List<InterfaceMethodGroup> groups = new ArrayList<>();
+    for (DexType iface : getSortedInterfaces()) {
       DexClass clazz = appInfo.definitionFor(iface);
       if (clazz != null) {
         Set<NamingState<DexProto>> collectedStates = getReachableStates(iface, frontierMap);
-        addStatesToGlobalMapForMethods(clazz.directMethods(), collectedStates, globalStateMap,
-            sourceMethodsMap, originStates, iface);
-        addStatesToGlobalMapForMethods(clazz.virtualMethods(), collectedStates, globalStateMap,
-            sourceMethodsMap, originStates, iface);
+        addStatesToGroupsForMethods(clazz.directMethods(), collectedStates, groupMap, groups,
+            iface);
+        addStatesToGroupsForMethods(clazz.virtualMethods(), collectedStates, groupMap, groups,
+            iface);
       }
-    });
+    }
     timing.end();
     // Go over every method and assign a name.
     timing.begin("Allocate names");
-    // Sort the methods by the number of dependent states, so that we use short names for methods
-    // references in many places.
-    List<Wrapper<DexMethod>> methods = new ArrayList<>(globalStateMap.keySet());
-    methods.sort((a, b) -> globalStateMap.get(b).size() - globalStateMap.get(a).size());
-    for (Wrapper<DexMethod> key : methods) {
-      DexMethod method = key.get();
-      assignNameForInterfaceMethodInAllStates(method,
-          globalStateMap.get(key),
-          sourceMethodsMap.get(key),
-          renaming,
-          originStates.get(key));
+    // Sort the methods by the number of references and then by the number of dependent states, so
+    // that we use short names for methods referenced in many places. The sort is stable, which
+    // keeps the names deterministic.
+    groups.sort((a, b) -> a.referenceCount != b.referenceCount
+        ? b.referenceCount - a.referenceCount
+        : b.states.size() - a.states.size());
+    for (InterfaceMethodGroup group : groups) {
+      assignNameForInterfaceMethodInAllStates(group.sourceMethods.get(0), group.states,
+          group.sourceMethods, renaming, group.originState);
     }
     timing.end();
   }
 
+  private List<DexType> getSortedInterfaces() {
+    List<DexType> interfaces = new ArrayList<>();
+    DexType.forAllInterfaces(appInfo.dexItemFactory, interfaces::add);
+    interfaces.sort(DexType::slowCompareTo);
+    return interfaces;
+  }
+
   private void collectSuperInterfaces(DexType iface, Set<DexType> interfaces) {
     DexClass clazz = appInfo.definitionFor(iface);
     // In cases where we lack the interface's definition, we can at least look at subtypes and
@@ -244,24 +285,28 @@ public class MethodNameMinifier {
     });
   }
 
-  private void addStatesToGlobalMapForMethods(
+  private void addStatesToGroupsForMethods(
       DexEncodedMethod[] methods, Set<NamingState<DexProto>> collectedStates,
-      Map<Wrapper<DexMethod>, Set<NamingState<DexProto>>> globalStateMap,
-      Map<Wrapper<DexMethod>, Set<DexMethod>> sourceMethodsMap,
-      Map<Wrapper<DexMethod>, NamingState<DexProto>> originStates, DexType originInterface) {
-    for (DexEncodedMethod method : methods) {
-      Wrapper<DexMethod> key = equivalence.wrap(method.method);
-      Set<NamingState<DexProto>> stateSet = globalStateMap
-          .computeIfAbsent(key, k -> new HashSet<>());
-      stateSet.addAll(collectedStates);
-      sourceMethodsMap.computeIfAbsent(key, k -> new HashSet<>()).add(method.method);
-      originStates.putIfAbsent(key, states.get(originInterface));
+      Map<DexProto, Map<DexString, InterfaceMethodGroup>> groupMap,
+      List<InterfaceMethodGroup> groups, DexType originInterface) {
+    for (DexEncodedMethod encodedMethod : methods) {
+      DexMethod method = encodedMethod.method;
+      InterfaceMethodGroup group = groupMap
+          .computeIfAbsent(method.proto, k -> new IdentityHashMap<>())
+          .computeIfAbsent(method.name, k -> {
+            InterfaceMethodGroup newGroup = new InterfaceMethodGroup(states.get(originInterface));
+            groups.add(newGroup);
+            return newGroup;
+          });
+      group.states.addAll(collectedStates);
+      group.sourceMethods.add(method);
+      group.referenceCount += appInfo.getReferenceCount(method);
     }
   }
 
   private void assignNameForInterfaceMethodInAllStates(DexMethod method,
       Set<NamingState<DexProto>> collectedStates,
-      Set<DexMethod> sourceMethods,
+      List<DexMethod> sourceMethods,
       Map<DexMethod, DexString> renaming, NamingState<DexProto> originState) {
     boolean isReserved = false;
     if (globalState.isReserved(method.name, method.proto)) {
@@ -352,4 +397,23 @@ public class MethodNameMinifier {
       }
     }
   }
+
+  /**
+   * The interface methods with the same name and proto, which all get the same name.
+   */
+  private static class InterfaceMethodGroup {
+
+    // The state of the interface the method was first seen in. Used to pick good names.
+    private final NamingState<DexProto> originState;
+    // The states of the interfaces the method appears in and of the classes implementing them.
+    private final Set<NamingState<DexProto>> states = Sets.newIdentityHashSet();
+    // The definitions in the interfaces, in the order they were seen in.
+    private final List<DexMethod> sourceMethods = new ArrayList<>();
+    // The number of references to the definitions.
+    private int referenceCount = 0;
+
+    private InterfaceMethodGroup(NamingState<DexProto> originState) {
+      this.originState = originState;
+    }
+  }
 }
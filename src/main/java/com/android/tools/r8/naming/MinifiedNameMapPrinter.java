@@ -11,6 +11,7 @@ import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.graph.DexProgramClass;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.naming.LineNumberRebaser.LineMapping;
 import com.android.tools.r8.naming.MemberNaming.MethodSignature;
 import com.android.tools.r8.utils.DescriptorUtils;
 import com.google.common.collect.Sets;
@@ -23,40 +24,67 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class MinifiedNameMapPrinter {
 
+  // Number of classes rendered by a single task when printing in parallel.
+  private static final int CLASSES_PER_TASK = 256;
+
   private final DexApplication application;
   private final NamingLens namingLens;
+  private final LineNumberRebaser lineNumberRebaser;
   private final Set<DexType> seenTypes = Sets.newIdentityHashSet();
 
-  public MinifiedNameMapPrinter(DexApplication application, NamingLens namingLens) {
+  public MinifiedNameMapPrinter(DexApplication application, NamingLens namingLens,
+      LineNumberRebaser lineNumberRebaser) {
     this.application = application;
     this.namingLens = namingLens;
+    this.lineNumberRebaser = lineNumberRebaser;
   }
 
-  private <T> T[] sortedCopy(T[] source, Comparator<? super T> comparator) {
-    T copy[] = Arrays.copyOf(source, source.length);
-    Arrays.sort(copy, comparator);
-    return copy;
+  /**
+   * The members of a program class, copied so that the class can be modified while its mapping is
+   * being rendered. Dex file writing sorts the member arrays in place.
+   */
+  private static class ClassSnapshot {
+    final DexProgramClass clazz;
+    final DexEncodedField[] instanceFields;
+    final DexEncodedField[] staticFields;
+    final DexEncodedMethod[] directMethods;
+    final DexEncodedMethod[] virtualMethods;
+
+    ClassSnapshot(DexProgramClass clazz) {
+      this.clazz = clazz;
+      this.instanceFields = clazz.instanceFields().clone();
+      this.staticFields = clazz.staticFields().clone();
+      this.directMethods = clazz.directMethods().clone();
+      this.virtualMethods = clazz.virtualMethods().clone();
+    }
   }
 
-  private void write(DexProgramClass clazz, PrintStream out) {
-    seenTypes.add(clazz.type);
+  private void write(ClassSnapshot snapshot, StringBuilder out) {
+    DexProgramClass clazz = snapshot.clazz;
     DexString descriptor = namingLens.lookupDescriptor(clazz.type);
-    out.print(DescriptorUtils.descriptorToJavaType(clazz.type.descriptor.toSourceString()));
-    out.print(" -> ");
-    out.print(DescriptorUtils.descriptorToJavaType(descriptor.toSourceString()));
-    out.println(":");
-    write(sortedCopy(
-        clazz.instanceFields(), Comparator.comparing(DexEncodedField::toSourceString)), out);
-    write(sortedCopy(
-        clazz.staticFields(), Comparator.comparing(DexEncodedField::toSourceString)), out);
-    write(sortedCopy(
-        clazz.directMethods(), Comparator.comparing(DexEncodedMethod::toSourceString)), out);
-    write(sortedCopy(
-        clazz.virtualMethods(), Comparator.comparing(DexEncodedMethod::toSourceString)), out);
+    out.append(DescriptorUtils.descriptorToJavaType(clazz.type.descriptor.toSourceString()));
+    out.append(" -> ");
+    out.append(DescriptorUtils.descriptorToJavaType(descriptor.toSourceString()));
+    out.append(":\n");
+    Comparator<DexEncodedField> fieldOrder = Comparator.comparing(DexEncodedField::toSourceString);
+    Comparator<DexEncodedMethod> methodOrder =
+        Comparator.comparing(DexEncodedMethod::toSourceString);
+    Arrays.sort(snapshot.instanceFields, fieldOrder);
+    write(snapshot.instanceFields, out);
+    Arrays.sort(snapshot.staticFields, fieldOrder);
+    write(snapshot.staticFields, out);
+    Arrays.sort(snapshot.directMethods, methodOrder);
+    write(snapshot.directMethods, out);
+    Arrays.sort(snapshot.virtualMethods, methodOrder);
+    write(snapshot.virtualMethods, out);
   }
 
   private void write(DexType type, PrintStream out) {
@@ -65,44 +93,105 @@ public class MinifiedNameMapPrinter {
       out.print(DescriptorUtils.descriptorToJavaType(type.descriptor.toSourceString()));
       out.print(" -> ");
       out.print(DescriptorUtils.descriptorToJavaType(descriptor.toSourceString()));
-      out.println(":");
+      out.print(":\n");
     }
   }
 
-  private void write(DexEncodedField[] fields, PrintStream out) {
+  private void write(DexEncodedField[] fields, StringBuilder out) {
     for (DexEncodedField encodedField : fields) {
       DexField field = encodedField.field;
       DexString renamed = namingLens.lookupName(field);
       if (renamed != field.name) {
-        out.print("    ");
-        out.print(field.type.toSourceString());
-        out.print(" ");
-        out.print(field.name.toSourceString());
-        out.print(" -> ");
-        out.println(renamed.toSourceString());
+        out.append("    ");
+        out.append(field.type.toSourceString());
+        out.append(" ");
+        out.append(field.name.toSourceString());
+        out.append(" -> ");
+        out.append(renamed.toSourceString());
+        out.append('\n');
       }
     }
   }
 
-  private void write(DexEncodedMethod[] methods, PrintStream out) {
+  private void write(DexEncodedMethod[] methods, StringBuilder out) {
     for (DexEncodedMethod encodedMethod : methods) {
       DexMethod method = encodedMethod.method;
       DexString renamed = namingLens.lookupName(method);
-      if (renamed != method.name) {
+      LineMapping lines =
+          lineNumberRebaser == null ? null : lineNumberRebaser.getLineMapping(encodedMethod);
+      // Methods with rebased lines are listed even when not renamed, to map back their lines.
+      if (renamed != method.name || lines != null) {
         MethodSignature signature = MethodSignature.fromDexMethod(method);
-        out.print("    ");
-        out.print(signature);
-        out.print(" -> ");
-        out.println(renamed.toSourceString());
+        out.append("    ");
+        if (lines != null) {
+          out.append(lines.rebased).append(':');
+        }
+        out.append(signature);
+        if (lines != null) {
+          out.append(':').append(lines.original);
+        }
+        out.append(" -> ");
+        out.append(renamed.toSourceString());
+        out.append('\n');
       }
     }
   }
 
-  public void write(PrintStream out) {
-    // First write out all classes that have been renamed.
+  private List<ClassSnapshot> snapshotClasses() {
     List<DexProgramClass> classes = new ArrayList<>(application.classes());
     classes.sort(Comparator.comparing(DexProgramClass::toSourceString));
-    classes.forEach(clazz -> write(clazz, out));
+    List<ClassSnapshot> snapshots = new ArrayList<>(classes.size());
+    for (DexProgramClass clazz : classes) {
+      seenTypes.add(clazz.type);
+      snapshots.add(new ClassSnapshot(clazz));
+    }
+    return snapshots;
+  }
+
+  private String render(List<ClassSnapshot> snapshots) {
+    StringBuilder builder = new StringBuilder();
+    snapshots.forEach(snapshot -> write(snapshot, builder));
+    return builder.toString();
+  }
+
+  /**
+   * Start rendering the mapping of all program classes on the given executor.
+   *
+   * <p>The class members are copied before this returns, so the classes may be modified, e.g.,
+   * by dex file writing, while the rendering is in progress. The returned chunks are in output
+   * order and must be passed to {@link #write(List, PrintStream)}.
+   */
+  public List<Future<String>> submit(ExecutorService executorService) {
+    List<ClassSnapshot> snapshots = snapshotClasses();
+    List<Future<String>> chunks = new ArrayList<>();
+    for (int i = 0; i < snapshots.size(); i += CLASSES_PER_TASK) {
+      List<ClassSnapshot> chunk =
+          snapshots.subList(i, Math.min(i + CLASSES_PER_TASK, snapshots.size()));
+      chunks.add(executorService.submit(() -> render(chunk)));
+    }
+    return chunks;
+  }
+
+  /**
+   * Write the chunks returned by {@link #submit(ExecutorService)} as they become available,
+   * followed by all types only mentioned in descriptors that have been renamed.
+   */
+  public void write(List<Future<String>> chunks, PrintStream out) throws ExecutionException {
+    try {
+      for (ListIterator<Future<String>> it = chunks.listIterator(); it.hasNext(); ) {
+        out.print(it.next().get());
+        // Drop the chunk once written so the full mapping is never retained.
+        it.set(null);
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Interrupted while waiting for future.", e);
+    }
+    namingLens.forAllRenamedTypes(type -> write(type, out));
+  }
+
+  public void write(PrintStream out) {
+    // First write out all classes that have been renamed.
+    out.print(render(snapshotClasses()));
     // Now write out all types only mentioned in descriptors that have been renamed.
     namingLens.forAllRenamedTypes(type -> write(type, out));
   }
@@ -8,18 +8,19 @@ import com.android.tools.r8.graph.AppInfo;
 import com.android.tools.r8.graph.DexClass;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexField;
-import com.android.tools.r8.graph.DexItem;
 import com.android.tools.r8.graph.DexMethod;
 import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.IndexedDexItem;
 import com.android.tools.r8.optimize.MemberRebindingAnalysis;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
 import com.android.tools.r8.utils.InternalOptions;
 import com.android.tools.r8.utils.Timing;
-import com.google.common.collect.Iterables;
-import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 public class Minifier {
@@ -34,7 +35,8 @@ public class Minifier {
     this.options = options;
   }
 
-  public NamingLens run(Timing timing) {
+  public NamingLens run(ExecutorService executorService, Timing timing)
+      throws ExecutionException {
     assert !options.skipMinification;
     if (!options.allowAccessModification) {
       throw new CompilationError("Minification requires allowaccessmodification.");
@@ -49,7 +51,7 @@ public class Minifier {
     timing.begin("MinifyMethods");
     Map<DexMethod, DexString> methodRenaming =
         new MethodNameMinifier(appInfo, rootSet, options.obfuscationDictionary)
-            .computeRenaming(timing);
+            .computeRenaming(executorService, timing);
     timing.end();
     timing.begin("MinifyFields");
     Map<DexField, DexString> fieldRenaming =
@@ -58,38 +60,67 @@ public class Minifier {
     return new MinifiedRenaming(classRenaming, methodRenaming, fieldRenaming, appInfo);
   }
 
+  /**
+   * Renaming stored in arrays indexed by the ids of the items, as the lookups happen for every
+   * reference while writing. The descriptors of renamed array types are computed up front by the
+   * {@link ClassNameMinifier}, so they are not rebuilt per lookup either.
+   */
   private static class MinifiedRenaming extends NamingLens {
 
     private final AppInfo appInfo;
-    private final Map<DexItem, DexString> renaming = new IdentityHashMap<>();
+    private final Set<DexType> renamedTypes;
+    private final DexString[] typeDescriptors;
+    private final DexString[] methodNames;
+    private final DexString[] fieldNames;
 
     private MinifiedRenaming(Map<DexType, DexString> classRenaming,
         Map<DexMethod, DexString> methodRenaming, Map<DexField, DexString> fieldRenaming,
         AppInfo appInfo) {
       this.appInfo = appInfo;
-      renaming.putAll(classRenaming);
-      renaming.putAll(methodRenaming);
-      renaming.putAll(fieldRenaming);
+      this.renamedTypes = classRenaming.keySet();
+      this.typeDescriptors = toArray(classRenaming);
+      this.methodNames = toArray(methodRenaming);
+      this.fieldNames = toArray(fieldRenaming);
+    }
+
+    private static DexString[] toArray(Map<? extends IndexedDexItem, DexString> renaming) {
+      int maxId = IndexedDexItem.ID_UNKNOWN;
+      for (IndexedDexItem item : renaming.keySet()) {
+        assert item.getId() != IndexedDexItem.ID_UNKNOWN;
+        maxId = Math.max(maxId, item.getId());
+      }
+      DexString[] result = new DexString[maxId + 1];
+      renaming.forEach((item, name) -> result[item.getId()] = name);
+      return result;
+    }
+
+    private static DexString lookup(DexString[] renaming, IndexedDexItem item) {
+      // Items created after minification have no renaming, or no id if they are not canonical.
+      int id = item.getId();
+      return id >= 0 && id < renaming.length ? renaming[id] : null;
     }
 
     @Override
     public DexString lookupDescriptor(DexType type) {
-      return renaming.getOrDefault(type, type.descriptor);
+      DexString renamed = lookup(typeDescriptors, type);
+      return renamed != null ? renamed : type.descriptor;
     }
 
     @Override
     public DexString lookupName(DexMethod method) {
-      return renaming.getOrDefault(method, method.name);
+      DexString renamed = lookup(methodNames, method);
+      return renamed != null ? renamed : method.name;
     }
 
     @Override
     public DexString lookupName(DexField field) {
-      return renaming.getOrDefault(field, field.name);
+      DexString renamed = lookup(fieldNames, field);
+      return renamed != null ? renamed : field.name;
     }
 
     @Override
     void forAllRenamedTypes(Consumer<DexType> consumer) {
-      Iterables.filter(renaming.keySet(), DexType.class).forEach(consumer);
+      renamedTypes.forEach(consumer);
     }
 
     /**
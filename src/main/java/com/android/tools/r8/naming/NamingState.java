@@ -9,16 +9,21 @@ import com.android.tools.r8.graph.DexString;
 import com.android.tools.r8.utils.StringUtils;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Sets;
-import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A naming scope, which is linked to the scope of its parent.
+ * <p>
+ * Children of the same state may be used from different threads, as long as the state itself is
+ * only queried. Hence, the per-proto states are allocated atomically, also in the parents.
+ */
 public class NamingState<T extends CanonicalizedDexItem> {
 
   private final NamingState<T> parent;
-  private final Map<T, InternalState> usedNames = new IdentityHashMap<>();
+  private final Map<T, InternalState> usedNames = new ConcurrentHashMap<>();
   private final DexItemFactory itemFactory;
   private final List<String> dictionary;
 
@@ -49,13 +54,9 @@ public class NamingState<T extends CanonicalizedDexItem> {
     // TODO(herhut): Maybe allocate these sparsely and search via state chain.
     InternalState result = usedNames.get(proto);
     if (result == null) {
-      if (parent != null) {
-        InternalState parentState = parent.getOrCreateInternalStateFor(proto);
-        result = parentState.createChild();
-      } else {
-        result = new InternalState(itemFactory, null, dictionary);
-      }
-      usedNames.put(proto, result);
+      result = usedNames.computeIfAbsent(proto, k -> parent != null
+          ? parent.getOrCreateInternalStateFor(k).createChild()
+          : new InternalState(itemFactory, null, dictionary));
     }
     return result;
   }
@@ -114,20 +115,20 @@ public class NamingState<T extends CanonicalizedDexItem> {
     private Set<DexString> reservedNames = null;
     private Map<DexString, DexString> renamings = null;
     private int nameCount;
-    private final Iterator<String> dictionaryIterator;
+    // Like the name count, the position in the dictionary starts where the parent is at, so the
+    // names do not depend on the order in which siblings are processed.
+    private final List<String> dictionary;
+    private int dictionaryIndex;
 
     private InternalState(DexItemFactory itemFactory, InternalState parentInternalState,
-        Iterator<String> dictionaryIterator) {
+        List<String> dictionary) {
       this.itemFactory = itemFactory;
       this.parentInternalState = parentInternalState;
       this.nameCount =
           parentInternalState == null ? INITIAL_NAME_COUNT : parentInternalState.nameCount;
-      this.dictionaryIterator = dictionaryIterator;
-    }
-
-    private InternalState(DexItemFactory itemFactory, InternalState parentInternalState,
-        List<String> dictionary) {
-      this(itemFactory, parentInternalState, dictionary.iterator());
+      this.dictionary = dictionary;
+      this.dictionaryIndex =
+          parentInternalState == null ? 0 : parentInternalState.dictionaryIndex;
     }
 
     private boolean isReserved(DexString name) {
@@ -142,7 +143,7 @@ public class NamingState<T extends CanonicalizedDexItem> {
     }
 
     public InternalState createChild() {
-      return new InternalState(itemFactory, this, dictionaryIterator);
+      return new InternalState(itemFactory, this, dictionary);
     }
 
     public void reserveName(DexString name) {
@@ -182,8 +183,8 @@ public class NamingState<T extends CanonicalizedDexItem> {
     }
 
     protected String nextSuggestedName() {
-      if (dictionaryIterator.hasNext()) {
-        return dictionaryIterator.next();
+      if (dictionaryIndex < dictionary.size()) {
+        return dictionary.get(dictionaryIndex++);
       } else {
         return StringUtils.numberToIdentifier(EMPTY_CHAR_ARRARY, nameCount++, false);
       }
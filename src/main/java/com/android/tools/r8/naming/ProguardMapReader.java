@@ -9,12 +9,14 @@ import com.android.tools.r8.naming.MemberNaming.MethodSignature;
 import com.android.tools.r8.naming.MemberNaming.Range;
 import com.android.tools.r8.naming.MemberNaming.Signature;
 import com.android.tools.r8.naming.MemberNaming.SingleLineRange;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.google.common.collect.ImmutableMap;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -23,6 +25,11 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 /**
@@ -62,16 +69,33 @@ import java.util.function.Consumer;
  */
 public class ProguardMapReader implements AutoCloseable {
 
+  // Minimal number of lines handed to a single task when parsing in parallel. Chunks are only
+  // split at class boundaries, so they can be larger.
+  private static final int CHUNK_SIZE = 16 * 1024;
+  // Maximal number of chunks waiting to be parsed. Further chunks are parsed by the reading
+  // thread until the parsing catches up, so the text of only a few chunks is held at once.
+  private static final int MAX_PENDING_CHUNKS = 4;
+
   private final BufferedReader reader;
+  // Caches for canonicalizing strings and signatures, may be shared by readers parsing in
+  // parallel. This saves 10% of heap space for large programs.
+  private final Map<String, String> cache;
+  private final Map<Signature, Signature> signatures;
 
   public void close() throws IOException {
-    if (reader != null) {
-      reader.close();
-    }
+    reader.close();
   }
 
-  private ProguardMapReader(BufferedReader reader) throws IOException {
+  private ProguardMapReader(BufferedReader reader) {
+    this(reader, 0, new HashMap<>(), new HashMap<>());
+  }
+
+  private ProguardMapReader(BufferedReader reader, int firstLineNo, Map<String, String> cache,
+      Map<Signature, Signature> signatures) {
     this.reader = reader;
+    this.cache = cache;
+    this.signatures = signatures;
+    this.lineNo = firstLineNo;
   }
 
   public static ClassNameMapper mapperFromInputStream(InputStream in) throws IOException {
@@ -81,6 +105,96 @@ public class ProguardMapReader implements AutoCloseable {
     }
   }
 
+  /**
+   * Parses the mapping using the given executor.
+   *
+   * <p>The mapping is split into chunks at class boundaries, and the chunks are parsed in
+   * parallel. Must not be called from a task running on the executor, as it waits for the
+   * chunks, see {@link #submitChunks} for that.
+   */
+  public static ClassNameMapper mapperFromInputStream(InputStream in, ExecutorService executor)
+      throws IOException, ExecutionException {
+    return mapperFromChunks(ThreadUtils.awaitFutures(submitChunks(in, executor)));
+  }
+
+  /**
+   * Reads the mapping as a stream and submits tasks parsing it in chunks to the given executor.
+   *
+   * <p>Only the text of the chunks waiting to be parsed is held, when more are pending the chunk
+   * is parsed right away. This does not wait for other tasks, so it can be called from a task
+   * running on the executor. The results, in order, must be combined with
+   * {@link #mapperFromChunks}.
+   */
+  public static List<Future<Map<String, ClassNaming>>> submitChunks(
+      InputStream in, ExecutorService executor) throws IOException {
+    ChunkSubmitter submitter = new ChunkSubmitter(executor);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF8"))) {
+      StringBuilder chunk = new StringBuilder();
+      int chunkLines = 0;
+      int firstLineNo = 0;
+      int lineNo = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // Only split in front of a class mapping, ie, a line not starting with whitespace.
+        if (chunkLines >= CHUNK_SIZE
+            && !line.isEmpty() && !Character.isWhitespace(line.charAt(0))) {
+          submitter.submit(chunk.toString(), firstLineNo);
+          chunk.setLength(0);
+          chunkLines = 0;
+          firstLineNo = lineNo;
+        }
+        chunk.append(line).append('\n');
+        chunkLines++;
+        lineNo++;
+      }
+      if (chunkLines > 0) {
+        submitter.submit(chunk.toString(), firstLineNo);
+      }
+    }
+    return submitter.futures;
+  }
+
+  private static class ChunkSubmitter {
+
+    private final ExecutorService executor;
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+    private final Map<Signature, Signature> signatures = new ConcurrentHashMap<>();
+    private final List<Future<Map<String, ClassNaming>>> futures = new ArrayList<>();
+    // Index of the first chunk which might not have been parsed yet.
+    private int firstPending = 0;
+
+    ChunkSubmitter(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    void submit(String text, int firstLineNo) throws IOException {
+      while (firstPending < futures.size() && futures.get(firstPending).isDone()) {
+        firstPending++;
+      }
+      if (futures.size() - firstPending < MAX_PENDING_CHUNKS) {
+        futures.add(executor.submit(() -> parseText(text, firstLineNo)));
+      } else {
+        futures.add(CompletableFuture.completedFuture(parseText(text, firstLineNo)));
+      }
+    }
+
+    private Map<String, ClassNaming> parseText(String text, int firstLineNo)
+        throws IOException {
+      BufferedReader reader = new BufferedReader(new StringReader(text));
+      try (ProguardMapReader proguardReader =
+          new ProguardMapReader(reader, firstLineNo, cache, signatures)) {
+        return proguardReader.parseChunk();
+      }
+    }
+  }
+
+  /** Combines the results of parsing a mapping in chunks, see {@link #submitChunks}. */
+  public static ClassNameMapper mapperFromChunks(List<Map<String, ClassNaming>> chunks) {
+    ImmutableMap.Builder<String, ClassNaming> builder = ImmutableMap.builder();
+    chunks.forEach(builder::putAll);
+    return new ClassNameMapper(builder.build());
+  }
+
   public static ClassNameMapper mapperFromFile(Path path) throws IOException {
     return mapperFromInputStream(Files.newInputStream(path));
   }
@@ -123,10 +237,14 @@ public class ProguardMapReader implements AutoCloseable {
   private boolean skipLine() throws IOException {
     lineNo++;
     lineOffset = 0;
-    line = reader.readLine();
+    line = readLine();
     return hasLine();
   }
 
+  private String readLine() throws IOException {
+    return reader.readLine();
+  }
+
   private boolean hasLine() {
     return line != null;
   }
@@ -146,10 +264,13 @@ public class ProguardMapReader implements AutoCloseable {
   }
 
   public ClassNameMapper parse() throws IOException {
+    return new ClassNameMapper(parseChunk());
+  }
+
+  private Map<String, ClassNaming> parseChunk() throws IOException {
     // Read the first line.
-    line = reader.readLine();
-    Map<String, ClassNaming> classNames = parseClassMappings();
-    return new ClassNameMapper(classNames);
+    line = readLine();
+    return parseClassMappings();
   }
 
   // Parsing of entries
@@ -286,17 +407,10 @@ public class ProguardMapReader implements AutoCloseable {
     }
   }
 
-  // Cache for canonicalizing strings.
-  // This saves 10% of heap space for large programs.
-  final HashMap<String, String> cache = new HashMap<>();
-
   private String substring(int start) {
     String result = line.substring(start, lineOffset);
-    if (cache.containsKey(result)) {
-      return cache.get(result);
-    }
-    cache.put(result, result);
-    return result;
+    String cached = cache.putIfAbsent(result, result);
+    return cached == null ? result : cached;
   }
 
   private String parseMethodName() {
@@ -349,7 +463,8 @@ public class ProguardMapReader implements AutoCloseable {
     } else {
       signature = new FieldSignature(name, type);
     }
-    return signature;
+    Signature cached = signatures.putIfAbsent(signature, signature);
+    return cached == null ? signature : cached;
   }
 
   private void skipArrow() {
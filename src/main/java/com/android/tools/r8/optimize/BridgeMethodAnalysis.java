@@ -111,6 +111,11 @@ public class BridgeMethodAnalysis {
       return previousLense.lookupField(field, context);
     }
 
+    @Override
+    public int lookupTypeTag(DexMethod method, DexEncodedMethod context) {
+      return previousLense.lookupTypeTag(method, context);
+    }
+
     @Override
     public boolean isContextFree() {
       return false;
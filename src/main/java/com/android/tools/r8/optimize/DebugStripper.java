@@ -17,9 +17,14 @@ import com.android.tools.r8.naming.MemberNaming;
 import com.android.tools.r8.naming.MemberNaming.Range;
 import com.android.tools.r8.naming.MemberNaming.Signature;
 import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.ThreadUtils;
 import it.unimi.dsi.fastutil.objects.Reference2IntMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class DebugStripper {
 
@@ -172,6 +177,19 @@ public class DebugStripper {
     }
   }
 
+  /**
+   * Processes the classes in parallel. Classes are independent, as all state is either local to
+   * a class or, as for the signatures in the {@link ClassNameMapper}, safe to share.
+   */
+  public void processClasses(Iterable<DexProgramClass> classes, ExecutorService executor)
+      throws ExecutionException {
+    List<Future<?>> futures = new ArrayList<>();
+    for (DexProgramClass clazz : classes) {
+      futures.add(executor.submit(() -> processClass(clazz)));
+    }
+    ThreadUtils.awaitFutures(futures);
+  }
+
   public void processClass(DexProgramClass clazz) {
     if (!clazz.hasMethodsOrFields()) {
       return;
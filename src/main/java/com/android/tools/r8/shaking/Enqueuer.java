@@ -36,6 +36,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
@@ -74,6 +76,11 @@ public class Enqueuer {
   private Map<DexType, Set<DexField>> instanceFieldsRead = Maps.newIdentityHashMap();
   private Map<DexType, Set<DexField>> staticFieldsRead = Maps.newIdentityHashMap();
   private Map<DexType, Set<DexField>> staticFieldsWritten = Maps.newIdentityHashMap();
+  /**
+   * Set of static fields written by a method other than the class initializer of their holder.
+   * These are actual field definitions.
+   */
+  private Set<DexField> staticFieldsWrittenOutsideClassInitializer = Sets.newIdentityHashSet();
 
   /**
    * This map keeps a view of all virtual methods that are reachable from virtual invokes. A method
@@ -148,6 +155,24 @@ public class Enqueuer {
    */
   private final Map<DexType, Set<DexAnnotation>> deferredAnnotations = new IdentityHashMap<>();
 
+  /**
+   * The number of references to methods, fields and types from the code of live methods, as
+   * written in the code. Method and field references are kept by how they resolve, and are only
+   * resolved to their definitions once tracing is done, see {@link #collectReferenceCounts}.
+   */
+  private final Reference2IntOpenHashMap<DexMethod> virtualReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+  private final Reference2IntOpenHashMap<DexMethod> directReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+  private final Reference2IntOpenHashMap<DexMethod> staticReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+  private final Reference2IntOpenHashMap<DexField> instanceFieldReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+  private final Reference2IntOpenHashMap<DexField> staticFieldReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+  private final Reference2IntOpenHashMap<DexType> typeReferenceCounts =
+      new Reference2IntOpenHashMap<>();
+
   public Enqueuer(AppInfoWithSubtyping appInfo) {
     this.appInfo = appInfo;
   }
@@ -176,6 +201,13 @@ public class Enqueuer {
     return seen.computeIfAbsent(item.getHolder(), (ignore) -> Sets.newIdentityHashSet()).add(item);
   }
 
+  private void countReference(DexType type) {
+    DexType baseType = type.toBaseType(appInfo.dexItemFactory);
+    if (baseType.isClassType()) {
+      typeReferenceCounts.addTo(baseType, 1);
+    }
+  }
+
   private class UseRegistry extends com.android.tools.r8.graph.UseRegistry {
 
     private final DexEncodedMethod currentMethod;
@@ -186,6 +218,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInvokeVirtual(DexMethod method) {
+      virtualReferenceCounts.addTo(method, 1);
       if (!registerItemWithTarget(virtualInvokes, method)) {
         return false;
       }
@@ -198,6 +231,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInvokeDirect(DexMethod method) {
+      directReferenceCounts.addTo(method, 1);
       if (!registerItemWithTarget(directInvokes, method)) {
         return false;
       }
@@ -210,6 +244,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInvokeStatic(DexMethod method) {
+      staticReferenceCounts.addTo(method, 1);
       if (!registerItemWithTarget(staticInvokes, method)) {
         return false;
       }
@@ -222,6 +257,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInvokeInterface(DexMethod method) {
+      virtualReferenceCounts.addTo(method, 1);
       if (!registerItemWithTarget(virtualInvokes, method)) {
         return false;
       }
@@ -234,6 +270,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInvokeSuper(DexMethod method) {
+      virtualReferenceCounts.addTo(method, 1);
       if (!registerItemWithTarget(superInvokes, method)) {
         return false;
       }
@@ -246,6 +283,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInstanceFieldWrite(DexField field) {
+      instanceFieldReferenceCounts.addTo(field, 1);
       if (!registerItemWithTarget(instanceFieldsWritten, field)) {
         return false;
       }
@@ -259,6 +297,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerInstanceFieldRead(DexField field) {
+      instanceFieldReferenceCounts.addTo(field, 1);
       if (!registerItemWithTarget(instanceFieldsRead, field)) {
         return false;
       }
@@ -271,6 +310,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerNewInstance(DexType type) {
+      countReference(type);
       if (instantiatedTypes.contains(type)) {
         return false;
       }
@@ -288,6 +328,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerStaticFieldRead(DexField field) {
+      staticFieldReferenceCounts.addTo(field, 1);
       if (!registerItemWithTarget(staticFieldsRead, field)) {
         return false;
       }
@@ -300,6 +341,13 @@ public class Enqueuer {
 
     @Override
     public boolean registerStaticFieldWrite(DexField field) {
+      staticFieldReferenceCounts.addTo(field, 1);
+      DexField target = tryLookupStaticField(field);
+      if (!currentMethod.accessFlags.isConstructor()
+          || !currentMethod.accessFlags.isStatic()
+          || currentMethod.method.getHolder() != target.getHolder()) {
+        staticFieldsWrittenOutsideClassInitializer.add(target);
+      }
       if (!registerItemWithTarget(staticFieldsWritten, field)) {
         return false;
       }
@@ -313,6 +361,7 @@ public class Enqueuer {
 
     @Override
     public boolean registerTypeReference(DexType type) {
+      countReference(type);
       DexType baseType = type.toBaseType(appInfo.dexItemFactory);
       if (baseType.isClassType()) {
         markTypeAsLive(baseType);
@@ -895,6 +944,10 @@ public class Enqueuer {
     return target == null ? field : target.field;
   }
 
+  Set<DexField> collectStaticFieldsWrittenOutsideClassInitializer() {
+    return Collections.unmodifiableSet(staticFieldsWrittenOutsideClassInitializer);
+  }
+
   Set<DexField> collectFieldsRead() {
     return Sets.union(collectReachedFields(instanceFieldsRead, this::tryLookupInstanceField),
         collectReachedFields(staticFieldsRead, this::tryLookupStaticField));
@@ -905,6 +958,52 @@ public class Enqueuer {
         collectReachedFields(staticFieldsWritten, this::tryLookupStaticField));
   }
 
+  /**
+   * Collects the reference counts with method and field references counted for the definitions
+   * they resolve to, as the minifiers name definitions. Each distinct reference is resolved once.
+   * References that do not resolve are counted as written.
+   */
+  Reference2IntMap<DexItem> collectReferenceCounts() {
+    Reference2IntOpenHashMap<DexItem> result = new Reference2IntOpenHashMap<>();
+    for (Reference2IntMap.Entry<DexType> entry : typeReferenceCounts.reference2IntEntrySet()) {
+      result.addTo(entry.getKey(), entry.getIntValue());
+    }
+    resolveReferenceCounts(virtualReferenceCounts, this::tryLookupVirtualMethod, result);
+    resolveReferenceCounts(directReferenceCounts, this::tryLookupDirectMethod, result);
+    resolveReferenceCounts(staticReferenceCounts, this::tryLookupStaticMethod, result);
+    resolveReferenceCounts(instanceFieldReferenceCounts, this::tryLookupInstanceField, result);
+    resolveReferenceCounts(staticFieldReferenceCounts, this::tryLookupStaticField, result);
+    return result;
+  }
+
+  private <T extends Descriptor<?, T>> void resolveReferenceCounts(
+      Reference2IntMap<T> counts, Function<T, T> lookup, Reference2IntOpenHashMap<DexItem> result) {
+    for (Reference2IntMap.Entry<T> entry : counts.reference2IntEntrySet()) {
+      T item = entry.getKey();
+      T resolved = item.getHolder().isClassType() ? lookup.apply(item) : item;
+      result.addTo(resolved, entry.getIntValue());
+      DexType holder = resolved.getHolder().toBaseType(appInfo.dexItemFactory);
+      if (holder.isClassType()) {
+        result.addTo(holder, entry.getIntValue());
+      }
+    }
+  }
+
+  private DexMethod tryLookupVirtualMethod(DexMethod method) {
+    DexEncodedMethod target = appInfo.lookupVirtualDefinition(method.holder, method);
+    return target == null ? method : target.method;
+  }
+
+  private DexMethod tryLookupDirectMethod(DexMethod method) {
+    DexEncodedMethod target = appInfo.lookupDirectTarget(method);
+    return target == null ? method : target.method;
+  }
+
+  private DexMethod tryLookupStaticMethod(DexMethod method) {
+    DexEncodedMethod target = appInfo.lookupStaticTarget(method);
+    return target == null ? method : target.method;
+  }
+
   private static class Action {
 
     final Kind kind;
@@ -1032,6 +1131,11 @@ public class Enqueuer {
      * Set of all field ids used in static field writes.
      */
     public final Set<DexField> staticFieldWrites;
+    /**
+     * Set of all static fields which may be written outside the class initializer of their holder.
+     * This is actual field definitions.
+     */
+    public final Set<DexField> staticFieldsWrittenOutsideClassInitializer;
     /**
      * Set of all methods referenced in virtual invokes;
      */
@@ -1060,6 +1164,10 @@ public class Enqueuer {
      * All items with assumevalues rule.
      */
     public final Map<DexItem, ProguardMemberRule> assumedValues;
+    /**
+     * Number of references to methods, fields and types from the code of live methods.
+     */
+    private final Reference2IntMap<DexItem> referenceCounts;
 
     private AppInfoWithLiveness(AppInfoWithSubtyping appInfo, Enqueuer enqueuer) {
       super(appInfo);
@@ -1074,6 +1182,8 @@ public class Enqueuer {
       this.staticFieldWrites = enqueuer.collectStaticFieldsWritten();
       this.fieldsRead = enqueuer.collectFieldsRead();
       this.fieldsWritten = enqueuer.collectFieldsWritten();
+      this.staticFieldsWrittenOutsideClassInitializer =
+          enqueuer.collectStaticFieldsWrittenOutsideClassInitializer();
       this.pinnedItems = Collections.unmodifiableSet(enqueuer.pinnedItems);
       this.virtualInvokes = joinInvokedMethods(enqueuer.virtualInvokes);
       this.superInvokes = joinInvokedMethods(enqueuer.superInvokes);
@@ -1081,6 +1191,7 @@ public class Enqueuer {
       this.staticInvokes = joinInvokedMethods(enqueuer.staticInvokes);
       this.noSideEffects = enqueuer.rootSet.noSideEffects;
       this.assumedValues = enqueuer.rootSet.assumedValues;
+      this.referenceCounts = enqueuer.collectReferenceCounts();
       assert Sets.intersection(instanceFieldReads, staticFieldReads).size() == 0;
       assert Sets.intersection(instanceFieldWrites, staticFieldWrites).size() == 0;
     }
@@ -1099,6 +1210,8 @@ public class Enqueuer {
       this.fieldsRead = previous.fieldsRead;
       // TODO(herhut): We remove fields that are only written, so maybe update this.
       this.fieldsWritten = previous.fieldsWritten;
+      this.staticFieldsWrittenOutsideClassInitializer =
+          previous.staticFieldsWrittenOutsideClassInitializer;
       this.pinnedItems = previous.pinnedItems;
       this.noSideEffects = previous.noSideEffects;
       this.assumedValues = previous.assumedValues;
@@ -1106,23 +1219,30 @@ public class Enqueuer {
       this.superInvokes = previous.superInvokes;
       this.directInvokes = previous.directInvokes;
       this.staticInvokes = previous.staticInvokes;
+      this.referenceCounts = previous.referenceCounts;
       assert Sets.intersection(instanceFieldReads, staticFieldReads).size() == 0;
       assert Sets.intersection(instanceFieldWrites, staticFieldWrites).size() == 0;
     }
 
-    private AppInfoWithLiveness(AppInfoWithLiveness previous, GraphLense lense) {
+    private AppInfoWithLiveness(AppInfoWithLiveness previous, GraphLense lense,
+        Set<DexField> synthesizedFields) {
       super(previous, lense);
       this.liveTypes = previous.liveTypes;
       this.instantiatedTypes = rewriteItems(previous.instantiatedTypes, lense::lookupType);
       this.targetedMethods = rewriteItems(previous.targetedMethods, lense::lookupMethod);
       this.liveMethods = rewriteItems(previous.liveMethods, lense::lookupMethod);
-      this.liveFields = rewriteItems(previous.liveFields, lense::lookupField);
-      this.instanceFieldReads = rewriteItems(previous.instanceFieldReads, lense::lookupField);
-      this.instanceFieldWrites = rewriteItems(previous.instanceFieldWrites, lense::lookupField);
+      this.liveFields = rewriteItems(previous.liveFields, lense::lookupField, synthesizedFields);
+      this.instanceFieldReads =
+          rewriteItems(previous.instanceFieldReads, lense::lookupField, synthesizedFields);
+      this.instanceFieldWrites =
+          rewriteItems(previous.instanceFieldWrites, lense::lookupField, synthesizedFields);
       this.staticFieldReads = rewriteItems(previous.staticFieldReads, lense::lookupField);
       this.staticFieldWrites = rewriteItems(previous.staticFieldWrites, lense::lookupField);
-      this.fieldsRead = rewriteItems(previous.fieldsRead, lense::lookupField);
-      this.fieldsWritten = rewriteItems(previous.fieldsWritten, lense::lookupField);
+      this.fieldsRead = rewriteItems(previous.fieldsRead, lense::lookupField, synthesizedFields);
+      this.fieldsWritten =
+          rewriteItems(previous.fieldsWritten, lense::lookupField, synthesizedFields);
+      this.staticFieldsWrittenOutsideClassInitializer = rewriteItems(
+          previous.staticFieldsWrittenOutsideClassInitializer, lense::lookupField);
       // TODO(herhut): Migrate these to Descriptors, as well.
       this.pinnedItems = previous.pinnedItems;
       this.noSideEffects = previous.noSideEffects;
@@ -1131,6 +1251,7 @@ public class Enqueuer {
       this.superInvokes = rewriteItems(previous.superInvokes, lense::lookupMethod);
       this.directInvokes = rewriteItems(previous.directInvokes, lense::lookupMethod);
       this.staticInvokes = rewriteItems(previous.staticInvokes, lense::lookupMethod);
+      this.referenceCounts = rewriteReferenceCounts(previous.referenceCounts, lense);
       assert Sets.intersection(instanceFieldReads, staticFieldReads).size() == 0;
       assert Sets.intersection(instanceFieldWrites, staticFieldWrites).size() == 0;
     }
@@ -1152,13 +1273,43 @@ public class Enqueuer {
 
     private static <T> ImmutableSet<T> rewriteItems(Set<T> original,
         BiFunction<T, DexEncodedMethod, T> rewrite) {
+      return rewriteItems(original, rewrite, Collections.emptySet());
+    }
+
+    private static <T> ImmutableSet<T> rewriteItems(Set<T> original,
+        BiFunction<T, DexEncodedMethod, T> rewrite, Set<T> additional) {
       ImmutableSet.Builder<T> builder = ImmutableSet.builder();
       for (T item : original) {
         builder.add(rewrite.apply(item, null));
       }
+      builder.addAll(additional);
       return builder.build();
     }
 
+    private static Reference2IntMap<DexItem> rewriteReferenceCounts(
+        Reference2IntMap<DexItem> original, GraphLense lense) {
+      Reference2IntOpenHashMap<DexItem> result = new Reference2IntOpenHashMap<>();
+      for (Reference2IntMap.Entry<DexItem> entry : original.reference2IntEntrySet()) {
+        DexItem item = entry.getKey();
+        if (item instanceof DexMethod) {
+          item = lense.lookupMethod((DexMethod) item, null);
+        } else if (item instanceof DexField) {
+          item = lense.lookupField((DexField) item, null);
+        } else {
+          item = lense.lookupType((DexType) item, null);
+        }
+        result.addTo(item, entry.getIntValue());
+      }
+      return result;
+    }
+
+    /**
+     * Returns how often the method, field or type is referenced from the code of live methods.
+     */
+    public int getReferenceCount(DexItem item) {
+      return referenceCounts.getInt(item);
+    }
+
     @Override
     public boolean hasLiveness() {
       return true;
@@ -1178,8 +1329,17 @@ public class Enqueuer {
     }
 
     public AppInfoWithLiveness rewrittenWithLense(GraphLense lense) {
+      return rewrittenWithLense(lense, Collections.emptySet());
+    }
+
+    /**
+     * Rewrites the liveness information with the given lense, adding instance fields that were
+     * synthesized together with the code that reads and writes them.
+     */
+    public AppInfoWithLiveness rewrittenWithLense(GraphLense lense,
+        Set<DexField> synthesizedFields) {
       assert lense.isContextFree();
-      return new AppInfoWithLiveness(this, lense);
+      return new AppInfoWithLiveness(this, lense, synthesizedFields);
     }
   }
 
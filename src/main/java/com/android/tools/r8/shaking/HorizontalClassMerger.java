@@ -0,0 +1,1037 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.shaking;
+
+import com.android.tools.r8.code.Const16;
+import com.android.tools.r8.code.Iget;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.InvokeDirectRange;
+import com.android.tools.r8.code.Iput;
+import com.android.tools.r8.code.MoveFrom16;
+import com.android.tools.r8.code.MoveResult;
+import com.android.tools.r8.code.MoveResultObject;
+import com.android.tools.r8.code.MoveResultWide;
+import com.android.tools.r8.code.Nop;
+import com.android.tools.r8.code.Return;
+import com.android.tools.r8.code.ReturnObject;
+import com.android.tools.r8.code.ReturnVoid;
+import com.android.tools.r8.code.ReturnWide;
+import com.android.tools.r8.code.SparseSwitch;
+import com.android.tools.r8.code.SparseSwitchPayload;
+import com.android.tools.r8.dex.Constants;
+import com.android.tools.r8.dex.IndexedItemCollection;
+import com.android.tools.r8.graph.DexAccessFlags;
+import com.android.tools.r8.graph.DexAnnotation;
+import com.android.tools.r8.graph.DexAnnotationSet;
+import com.android.tools.r8.graph.DexAnnotationSetRefList;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCallSite;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexEncodedField;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.graph.DexField;
+import com.android.tools.r8.graph.DexItem;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexMethodHandle;
+import com.android.tools.r8.graph.DexProgramClass;
+import com.android.tools.r8.graph.DexProto;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.graph.DexTypeList;
+import com.android.tools.r8.graph.GraphLense;
+import com.android.tools.r8.graph.UseRegistry;
+import com.android.tools.r8.ir.code.MoveType;
+import com.android.tools.r8.logging.Log;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.utils.FieldSignatureEquivalence;
+import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
+import com.android.tools.r8.utils.Timing;
+import com.google.common.base.Equivalence.Wrapper;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Merges sibling classes that are only used through their supertypes into a single class.
+ * <p>
+ * Instantiated classes with the same superclass, interfaces and package, which are not used as a
+ * type in signatures, casts, instance-of checks, class constants or annotations, are grouped and
+ * each group is merged into its first class. If several classes of a group define the same
+ * virtual method or a constructor with the same signature, the merged class gets an int field
+ * holding the type tag, i.e., the index of the class in the group an instance was created as.
+ * The methods then become private methods of the merged class, and a method with the original
+ * signature switches on the type tag to call the right one. A constructor defined by several
+ * classes takes the type tag as an additional argument.
+ * <p>
+ * Like the {@link SimpleClassMerger}, the class merger only fixes the structure of the graph.
+ * Fixup of instructions is deferred via a {@link GraphLense} to the Ir building phase, which also
+ * passes the type tags, see {@link GraphLense#lookupTypeTag}.
+ */
+public class HorizontalClassMerger {
+
+  // Bounds the size of merged constructors, as the original constructors have to be inlined.
+  private static final int MAX_GROUP_SIZE = 16;
+  private static final int MAX_CONSTRUCTOR_REFERENCES = 32;
+  private static final String CONSTRUCTOR_NAME = "constructor";
+  private static final String TYPE_TAG_NAME = "$typeTag";
+
+  private final DexApplication application;
+  private final AppInfoWithLiveness appInfo;
+  private final GraphLense graphLense;
+  private final DexItemFactory dexItemFactory;
+  private final Timing timing;
+  private final Map<DexType, DexType> mergedClasses = new IdentityHashMap<>();
+  private final Map<DexMethod, DexMethod> methodMap = new IdentityHashMap<>();
+  private final Map<DexField, DexField> fieldMap = new IdentityHashMap<>();
+  private final Reference2IntMap<DexMethod> typeTags = new Reference2IntOpenHashMap<>();
+  private final Set<DexField> typeTagFields = Sets.newIdentityHashSet();
+  private final Map<DexEncodedMethod, Boolean> simpleConstructors = new IdentityHashMap<>();
+  private Set<DexItem> pinnedReferences;
+  private int numberOfMerges = 0;
+
+  public HorizontalClassMerger(DexApplication application, AppInfoWithLiveness appInfo,
+      GraphLense graphLense, Timing timing) {
+    this.application = application;
+    this.appInfo = appInfo;
+    this.graphLense = graphLense;
+    this.dexItemFactory = application.dexItemFactory;
+    this.timing = timing;
+    typeTags.defaultReturnValue(GraphLense.NO_TYPE_TAG);
+  }
+
+  public GraphLense run(ExecutorService executorService) throws ExecutionException {
+    timing.begin("collect");
+    List<DexProgramClass> candidates = collectCandidates(executorService);
+    timing.end();
+    timing.begin("merge");
+    for (List<DexProgramClass> group : computeGroups(candidates)) {
+      new GroupMerger(group).merge();
+    }
+    timing.end();
+    if (Log.ENABLED) {
+      Log.debug(getClass(), "Merged %d classes.", numberOfMerges);
+    }
+    if (mergedClasses.isEmpty()) {
+      return graphLense;
+    }
+    return new MergedClassesLense(graphLense, mergedClasses, methodMap, fieldMap, typeTags,
+        dexItemFactory);
+  }
+
+  /**
+   * The type tag fields added to the merged classes. They are read and written by the code of
+   * the merged classes only.
+   */
+  public Set<DexField> getTypeTagFields() {
+    return typeTagFields;
+  }
+
+  private List<DexProgramClass> collectCandidates(ExecutorService executorService)
+      throws ExecutionException {
+    pinnedReferences = computePinnedReferences();
+    List<DexProgramClass> candidates = new ArrayList<>();
+    for (DexProgramClass clazz : application.classes()) {
+      if (isMergeCandidate(clazz)) {
+        candidates.add(clazz);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return candidates;
+    }
+    Set<DexType> excludedTypes = collectExcludedTypes(executorService);
+    candidates.removeIf(
+        clazz -> excludedTypes.contains(clazz.type) || !hasSimpleConstructors(clazz));
+    candidates.sort((a, b) -> a.type.slowCompareTo(b.type));
+    return candidates;
+  }
+
+  private Set<DexItem> computePinnedReferences() {
+    // The members of classes touched by earlier merges have been replaced, so also compare the
+    // references after the lense.
+    Set<DexItem> result = Sets.newIdentityHashSet();
+    for (DexItem item : appInfo.pinnedItems) {
+      if (item instanceof DexClass) {
+        result.add(((DexClass) item).type);
+      } else if (item instanceof DexEncodedMethod) {
+        DexMethod method = ((DexEncodedMethod) item).method;
+        result.add(method);
+        result.add(graphLense.lookupMethod(method, null));
+      } else if (item instanceof DexEncodedField) {
+        DexField field = ((DexEncodedField) item).field;
+        result.add(field);
+        result.add(graphLense.lookupField(field, null));
+      }
+    }
+    return result;
+  }
+
+  private boolean isMergeCandidate(DexProgramClass clazz) {
+    DexAccessFlags accessFlags = clazz.accessFlags;
+    if (accessFlags.isInterface() || accessFlags.isAbstract() || accessFlags.isEnum()
+        || !appInfo.instantiatedTypes.contains(clazz.type)
+        || pinnedReferences.contains(clazz.type)
+        || !appInfo.subtypes(clazz.type).isEmpty()
+        || clazz.hasClassInitializer()
+        || application.mainDexList.contains(clazz.type)
+        || !hasOnlySystemAnnotations(clazz.annotations)) {
+      return false;
+    }
+    // Enum constants and exceptions are known to the runtime by their class.
+    DexClass superClass = appInfo.definitionFor(clazz.superType);
+    if (superClass == null
+        || superClass.accessFlags.isEnum()
+        || clazz.type.isSubtypeOf(dexItemFactory.throwableType, appInfo)) {
+      return false;
+    }
+    for (DexType iface : clazz.interfaces.values) {
+      if (appInfo.definitionFor(iface) == null) {
+        return false;
+      }
+    }
+    boolean hasConstructor = false;
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      if (!isMergeableMethod(method)) {
+        return false;
+      }
+      hasConstructor |= method.accessFlags.isConstructor();
+    }
+    for (DexEncodedMethod method : clazz.virtualMethods()) {
+      if (!isMergeableMethod(method)) {
+        return false;
+      }
+    }
+    return hasConstructor
+        && areMergeableFields(clazz.staticFields())
+        && areMergeableFields(clazz.instanceFields());
+  }
+
+  private boolean isMergeableMethod(DexEncodedMethod method) {
+    DexAccessFlags accessFlags = method.accessFlags;
+    // Static synchronized methods lock the class.
+    return !pinnedReferences.contains(method.method)
+        && !accessFlags.isNative()
+        && !accessFlags.isAbstract()
+        && (!accessFlags.isStatic()
+            || !(accessFlags.isSynchronized() || accessFlags.isDeclaredSynchronized()))
+        && hasOnlySystemAnnotations(method.annotations)
+        && method.parameterAnnotations.isEmpty();
+  }
+
+  private boolean areMergeableFields(DexEncodedField[] fields) {
+    for (DexEncodedField field : fields) {
+      if (pinnedReferences.contains(field.field)
+          || !hasOnlySystemAnnotations(field.annotations)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasOnlySystemAnnotations(DexAnnotationSet annotations) {
+    for (DexAnnotation annotation : annotations.annotations) {
+      if (annotation.visibility != DexAnnotation.VISIBILITY_SYSTEM) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Set<DexType> collectExcludedTypes(ExecutorService executorService)
+      throws ExecutionException {
+    List<Future<Set<DexType>>> futures = new ArrayList<>();
+    for (DexProgramClass clazz : application.classes()) {
+      futures.add(executorService.submit(() -> new ExcludedTypesCollector().collect(clazz)));
+    }
+    Set<DexType> result = Sets.newIdentityHashSet();
+    for (Set<DexType> excludedTypes : ThreadUtils.awaitFutures(futures)) {
+      result.addAll(excludedTypes);
+    }
+    return result;
+  }
+
+  private boolean hasSimpleConstructors(DexProgramClass clazz) {
+    for (DexEncodedMethod method : clazz.directMethods()) {
+      if (method.accessFlags.isConstructor() && !isSimpleConstructor(method, clazz)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the constructor only calls constructors of superclasses with simple constructors and
+   * methods of library classes.
+   * <p>
+   * The original constructors of merged classes are force inlined into the new constructors. A
+   * simple constructor cannot end up calling them, which would prevent the inlining.
+   */
+  private boolean isSimpleConstructor(DexEncodedMethod constructor, DexClass holder) {
+    Boolean result = simpleConstructors.get(constructor);
+    if (result == null) {
+      ConstructorChecker checker = new ConstructorChecker(holder);
+      if (constructor.getCode() != null) {
+        constructor.getCode().registerReachableDefinitions(checker);
+      }
+      result = checker.isSimple();
+      simpleConstructors.put(constructor, result);
+    }
+    return result;
+  }
+
+  private boolean isLibraryType(DexType type) {
+    DexClass clazz = appInfo.definitionFor(type);
+    return clazz != null && !clazz.isProgramClass();
+  }
+
+  private List<List<DexProgramClass>> computeGroups(List<DexProgramClass> candidates) {
+    // Classes can only be merged if they override the same methods of their supertypes, so the
+    // merged class does not change dispatch for any of them.
+    Map<List<Object>, List<Group>> groupsByShape = new LinkedHashMap<>();
+    for (DexProgramClass clazz : candidates) {
+      List<Object> shape = Arrays.asList(clazz.superType, clazz.interfaces,
+          clazz.type.getPackageDescriptor(), clazz.accessFlags.isPublic(),
+          computeOverriddenSignatures(clazz));
+      List<Group> groups = groupsByShape.computeIfAbsent(shape, k -> new ArrayList<>());
+      boolean added = false;
+      for (Group group : groups) {
+        if (group.add(clazz)) {
+          added = true;
+          break;
+        }
+      }
+      if (!added) {
+        Group group = new Group();
+        group.add(clazz);
+        groups.add(group);
+      }
+    }
+    List<List<DexProgramClass>> result = new ArrayList<>();
+    for (List<Group> groups : groupsByShape.values()) {
+      for (Group group : groups) {
+        if (group.members.size() > 1) {
+          result.add(group.members);
+        }
+      }
+    }
+    return result;
+  }
+
+  private Set<Wrapper<DexMethod>> computeOverriddenSignatures(DexProgramClass clazz) {
+    Set<Wrapper<DexMethod>> result = new HashSet<>();
+    for (DexEncodedMethod method : clazz.virtualMethods()) {
+      if (isDefinedInSupertype(clazz, method.method)) {
+        result.add(MethodSignatureEquivalence.get().wrap(method.method));
+      }
+    }
+    return result;
+  }
+
+  private boolean isDefinedInSupertype(DexClass clazz, DexMethod method) {
+    if (appInfo.lookupVirtualDefinition(clazz.superType, method) != null) {
+      return true;
+    }
+    for (DexType iface : clazz.interfaces.values) {
+      if (appInfo.lookupVirtualDefinition(iface, method) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private DexProto appendTypeTag(DexProto proto) {
+    DexType[] parameters = Arrays.copyOf(proto.parameters.values, proto.parameters.values.length + 1);
+    parameters[parameters.length - 1] = dexItemFactory.intType;
+    return dexItemFactory.createProto(proto.returnType, parameters);
+  }
+
+  private static int argumentRegisters(DexProto proto) {
+    int result = 1;
+    for (DexType parameter : proto.parameters.values) {
+      result += MoveType.fromDexType(parameter).requiredRegisters();
+    }
+    return result;
+  }
+
+  private DexString makeMergedName(String nameString, DexType holder) {
+    return dexItemFactory
+        .createString(nameString + "$" + holder.toSourceString().replace('.', '$'));
+  }
+
+  private class Group {
+
+    private final List<DexProgramClass> members = new ArrayList<>();
+    private Map<DexProto, Integer> constructorCounts = new IdentityHashMap<>();
+
+    private boolean add(DexProgramClass clazz) {
+      if (members.size() == MAX_GROUP_SIZE) {
+        return false;
+      }
+      Map<DexProto, Integer> counts = new IdentityHashMap<>(constructorCounts);
+      for (DexEncodedMethod method : clazz.directMethods()) {
+        if (method.accessFlags.isConstructor()) {
+          counts.merge(method.method.proto, 1, Integer::sum);
+        }
+      }
+      // A constructor defined by several classes gets an int argument, which must neither clash
+      // with another constructor nor exceed the number of argument registers.
+      for (Map.Entry<DexProto, Integer> entry : counts.entrySet()) {
+        if (entry.getValue() > 1
+            && (counts.containsKey(appendTypeTag(entry.getKey()))
+                || argumentRegisters(entry.getKey()) + 1 > Constants.U8BIT_MAX)) {
+          return false;
+        }
+      }
+      members.add(clazz);
+      constructorCounts = counts;
+      return true;
+    }
+  }
+
+  private class GroupMerger {
+
+    private final List<DexProgramClass> group;
+    private final DexProgramClass target;
+    private final Reference2IntMap<DexType> tags = new Reference2IntOpenHashMap<>();
+    private final Set<Wrapper<DexMethod>> methodSignatures = new HashSet<>();
+    private final Map<Wrapper<DexField>, DexEncodedField> fieldsBySignature = new HashMap<>();
+    private final List<DexEncodedMethod> directMethods = new ArrayList<>();
+    private final List<DexEncodedMethod> virtualMethods = new ArrayList<>();
+    private final List<DexEncodedField> staticFields = new ArrayList<>();
+    private final List<DexEncodedField> instanceFields = new ArrayList<>();
+    private DexField typeTagField;
+
+    private GroupMerger(List<DexProgramClass> group) {
+      this.group = group;
+      this.target = group.get(0);
+      for (int i = 0; i < group.size(); i++) {
+        tags.put(group.get(i).type, i);
+      }
+    }
+
+    private void merge() {
+      // Step 1: Collect the methods by signature, in the order of the classes in the group.
+      Map<Wrapper<DexMethod>, List<DexEncodedMethod>> virtuals = new LinkedHashMap<>();
+      Map<DexProto, List<DexEncodedMethod>> constructors = new LinkedHashMap<>();
+      List<DexEncodedMethod> others = new ArrayList<>();
+      for (DexProgramClass clazz : group) {
+        for (DexEncodedMethod method : clazz.virtualMethods()) {
+          virtuals.computeIfAbsent(MethodSignatureEquivalence.get().wrap(method.method),
+              k -> new ArrayList<>()).add(method);
+        }
+        for (DexEncodedMethod method : clazz.directMethods()) {
+          if (method.accessFlags.isConstructor()) {
+            constructors.computeIfAbsent(method.method.proto, k -> new ArrayList<>()).add(method);
+          } else {
+            others.add(method);
+          }
+        }
+      }
+      if (virtuals.values().stream().anyMatch(methods -> methods.size() > 1)
+          || constructors.values().stream().anyMatch(methods -> methods.size() > 1)) {
+        typeTagField = createTypeTagField();
+      }
+      // Step 2: Merge methods. Methods defined by a single class keep their signature, if they
+      // do not clash with a method of an earlier class.
+      virtuals.values().forEach(this::mergeVirtualMethods);
+      constructors.values().forEach(this::mergeConstructors);
+      others.forEach(this::mergeDirectMethod);
+      // Step 3: Merge fields.
+      for (DexProgramClass clazz : group) {
+        for (DexEncodedField field : clazz.staticFields()) {
+          mergeField(field, staticFields);
+        }
+        for (DexEncodedField field : clazz.instanceFields()) {
+          mergeField(field, instanceFields);
+        }
+      }
+      if (typeTagField != null) {
+        instanceFields.add(new DexEncodedField(typeTagField,
+            new DexAccessFlags(Constants.ACC_PRIVATE | Constants.ACC_FINAL
+                | Constants.ACC_SYNTHETIC),
+            DexAnnotationSet.empty(), null));
+        typeTagFields.add(typeTagField);
+      }
+      // Now destructively update the classes.
+      target.directMethods = directMethods.toArray(new DexEncodedMethod[directMethods.size()]);
+      target.virtualMethods = virtualMethods.toArray(new DexEncodedMethod[virtualMethods.size()]);
+      target.staticFields = staticFields.toArray(new DexEncodedField[staticFields.size()]);
+      target.instanceFields = instanceFields.toArray(new DexEncodedField[instanceFields.size()]);
+      for (DexProgramClass clazz : group) {
+        if (clazz == target) {
+          continue;
+        }
+        // Unlink the old class to ease tree shaking.
+        clazz.superType = dexItemFactory.objectType;
+        clazz.directMethods = null;
+        clazz.virtualMethods = null;
+        clazz.instanceFields = null;
+        clazz.staticFields = null;
+        clazz.interfaces = DexTypeList.empty();
+        mergedClasses.put(clazz.type, target.type);
+        numberOfMerges++;
+        if (Log.ENABLED) {
+          Log.info(HorizontalClassMerger.class, "Merged class %s into %s.",
+              clazz.toSourceString(), target.toSourceString());
+        }
+      }
+    }
+
+    private DexField createTypeTagField() {
+      Set<DexString> names = Sets.newIdentityHashSet();
+      for (DexProgramClass clazz : group) {
+        for (DexEncodedField field : clazz.staticFields()) {
+          names.add(field.field.name);
+        }
+        for (DexEncodedField field : clazz.instanceFields()) {
+          names.add(field.field.name);
+        }
+      }
+      String name = TYPE_TAG_NAME;
+      while (names.contains(dexItemFactory.createString(name))) {
+        name += "$";
+      }
+      return dexItemFactory.createField(target.type, dexItemFactory.intType, name);
+    }
+
+    private void mergeVirtualMethods(List<DexEncodedMethod> definitions) {
+      DexEncodedMethod first = definitions.get(0);
+      if (definitions.size() == 1) {
+        addMethod(virtualMethods, moveMethod(first, first.method.name));
+        return;
+      }
+      // Turn the definitions into private methods and dispatch to them on the type tag.
+      DexMethod dispatch =
+          dexItemFactory.createMethod(target.type, first.method.proto, first.method.name);
+      int[] keys = new int[definitions.size()];
+      DexMethod[] targets = new DexMethod[definitions.size()];
+      for (int i = 0; i < definitions.size(); i++) {
+        DexEncodedMethod method = definitions.get(i);
+        DexType holder = method.method.holder;
+        DexEncodedMethod renamed =
+            moveMethod(method, makeMergedName(method.method.name.toSourceString(), holder));
+        renamed.accessFlags.unsetPublic();
+        renamed.accessFlags.unsetProtected();
+        renamed.accessFlags.unsetBridge();
+        renamed.accessFlags.setPrivate();
+        addMethod(directMethods, renamed);
+        methodMap.put(method.method, dispatch);
+        keys[i] = tags.getInt(holder);
+        targets[i] = renamed.method;
+      }
+      DexCode code = buildDispatchCode(2, argumentRegisters(first.method.proto),
+          Arrays.asList(new Iget(0, 2, typeTagField)), keys, targets, first.method.proto);
+      addMethod(virtualMethods, new DexEncodedMethod(dispatch,
+          new DexAccessFlags(mostVisible(definitions)), DexAnnotationSet.empty(),
+          DexAnnotationSetRefList.empty(), code));
+    }
+
+    private void mergeConstructors(List<DexEncodedMethod> definitions) {
+      DexEncodedMethod first = definitions.get(0);
+      if (typeTagField == null) {
+        addMethod(directMethods, moveMethod(first, first.method.name));
+        return;
+      }
+      // Turn the constructors into private methods, which are force inlined into a new
+      // constructor that sets the type tag.
+      boolean shared = definitions.size() > 1;
+      DexProto proto = shared ? appendTypeTag(first.method.proto) : first.method.proto;
+      DexMethod dispatch = dexItemFactory.createMethod(target.type, proto, first.method.name);
+      int[] keys = new int[definitions.size()];
+      DexMethod[] targets = new DexMethod[definitions.size()];
+      for (int i = 0; i < definitions.size(); i++) {
+        DexEncodedMethod method = definitions.get(i);
+        DexType holder = method.method.holder;
+        DexEncodedMethod renamed = moveMethod(method, makeMergedName(CONSTRUCTOR_NAME, holder));
+        renamed.markForceInline();
+        renamed.accessFlags.unsetConstructor();
+        renamed.accessFlags.unsetPublic();
+        renamed.accessFlags.unsetProtected();
+        renamed.accessFlags.setPrivate();
+        addMethod(directMethods, renamed);
+        methodMap.put(method.method, dispatch);
+        keys[i] = tags.getInt(holder);
+        targets[i] = renamed.method;
+        if (shared) {
+          typeTags.put(method.method, keys[i]);
+        }
+      }
+      // Store the type tag first, so it is set when the superclass constructor calls a virtual
+      // method.
+      int arguments = argumentRegisters(proto);
+      Instruction loadTypeTag = shared
+          ? new MoveFrom16(0, arguments)
+          : new Const16(0, keys[0]);
+      DexCode code = buildDispatchCode(1, arguments,
+          Arrays.asList(loadTypeTag, new Iput(0, 1, typeTagField)), keys, targets,
+          first.method.proto);
+      int accessFlags = Constants.ACC_CONSTRUCTOR | mostVisible(definitions);
+      if (definitions.stream().allMatch(method -> method.accessFlags.isPrivate())) {
+        accessFlags |= Constants.ACC_PRIVATE;
+      }
+      addMethod(directMethods, new DexEncodedMethod(dispatch, new DexAccessFlags(accessFlags),
+          DexAnnotationSet.empty(), DexAnnotationSetRefList.empty(), code));
+    }
+
+    private void mergeDirectMethod(DexEncodedMethod method) {
+      DexString name = method.method.name;
+      if (methodSignatures.contains(MethodSignatureEquivalence.get().wrap(method.method))) {
+        name = makeMergedName(name.toSourceString(), method.method.holder);
+      }
+      addMethod(directMethods, moveMethod(method, name));
+    }
+
+    private DexEncodedMethod moveMethod(DexEncodedMethod method, DexString name) {
+      DexMethod newMethod = dexItemFactory.createMethod(target.type, method.method.proto, name);
+      if (newMethod != method.method) {
+        methodMap.put(method.method, newMethod);
+      }
+      return method.toTypeSubstitutedMethod(newMethod);
+    }
+
+    private void addMethod(List<DexEncodedMethod> methods, DexEncodedMethod method) {
+      boolean added = methodSignatures.add(MethodSignatureEquivalence.get().wrap(method.method));
+      assert added;
+      methods.add(method);
+    }
+
+    private void mergeField(DexEncodedField field, List<DexEncodedField> fields) {
+      DexString name = field.field.name;
+      DexEncodedField existing =
+          fieldsBySignature.get(FieldSignatureEquivalence.get().wrap(field.field));
+      if (existing != null) {
+        if (!field.accessFlags.isStatic() && existing.accessFlags.equals(field.accessFlags)) {
+          // An instance is only ever created as one of the merged classes, so they can share
+          // their instance fields.
+          fieldMap.put(field.field, existing.field);
+          return;
+        }
+        name = makeMergedName(name.toSourceString(), field.field.clazz);
+      }
+      DexField newField = dexItemFactory.createField(target.type, field.field.type, name);
+      if (newField != field.field) {
+        fieldMap.put(field.field, newField);
+      }
+      DexEncodedField result = field.toTypeSubstitutedField(newField);
+      fieldsBySignature.put(FieldSignatureEquivalence.get().wrap(newField), result);
+      fields.add(result);
+    }
+
+    private int mostVisible(List<DexEncodedMethod> methods) {
+      int result = 0;
+      for (DexEncodedMethod method : methods) {
+        if (method.accessFlags.isPublic()) {
+          return Constants.ACC_PUBLIC;
+        }
+        if (method.accessFlags.isProtected()) {
+          result = Constants.ACC_PROTECTED;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Builds the code of a method that switches on the type tag in v0 to invoke one of the
+     * targets. The receiver is in the register after the locals and is passed on together with
+     * the arguments. The first target is also the default.
+     */
+    private DexCode buildDispatchCode(int locals, int arguments, List<Instruction> prefix,
+        int[] keys, DexMethod[] targets, DexProto targetProto) {
+      List<Instruction> instructions = new ArrayList<>(prefix);
+      SparseSwitch sparseSwitch = null;
+      if (targets.length > 1) {
+        sparseSwitch = new SparseSwitch(0);
+        instructions.add(sparseSwitch);
+      }
+      int targetArguments = argumentRegisters(targetProto);
+      DexType returnType = targetProto.returnType;
+      int[] caseStarts = new int[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+        caseStarts[i] = instructions.size();
+        instructions.add(new InvokeDirectRange(locals, targetArguments, targets[i]));
+        if (returnType.isVoidType()) {
+          instructions.add(new ReturnVoid());
+          continue;
+        }
+        switch (MoveType.fromDexType(returnType)) {
+          case SINGLE:
+            instructions.add(new MoveResult(0));
+            instructions.add(new Return(0));
+            break;
+          case WIDE:
+            instructions.add(new MoveResultWide(0));
+            instructions.add(new ReturnWide(0));
+            break;
+          default:
+            instructions.add(new MoveResultObject(0));
+            instructions.add(new ReturnObject(0));
+            break;
+        }
+      }
+      int offset = setOffsets(instructions, 0);
+      if (sparseSwitch != null) {
+        // The payload has to be 4-byte aligned.
+        if (offset % 2 != 0) {
+          Nop nop = new Nop();
+          nop.setOffset(offset);
+          instructions.add(nop);
+          offset += nop.getSize();
+        }
+        int[] caseKeys = Arrays.copyOfRange(keys, 1, keys.length);
+        int[] caseTargets = new int[caseKeys.length];
+        for (int i = 1; i < targets.length; i++) {
+          assert keys[i - 1] < keys[i];
+          caseTargets[i - 1] =
+              instructions.get(caseStarts[i]).getOffset() - sparseSwitch.getOffset();
+        }
+        SparseSwitchPayload payload = new SparseSwitchPayload(caseKeys, caseTargets);
+        payload.setOffset(offset);
+        sparseSwitch.setPayloadOffset(offset - sparseSwitch.getOffset());
+        instructions.add(payload);
+      }
+      return new DexCode(locals + arguments, arguments, targetArguments,
+          instructions.toArray(new Instruction[instructions.size()]), new DexCode.Try[0],
+          new DexCode.TryHandler[0], null, null);
+    }
+
+    private int setOffsets(List<Instruction> instructions, int offset) {
+      for (Instruction instruction : instructions) {
+        instruction.setOffset(offset);
+        offset += instruction.getSize();
+      }
+      return offset;
+    }
+  }
+
+  /**
+   * Collects the types that are referenced as such and not only through their supertypes, so
+   * they cannot be merged.
+   */
+  private class ExcludedTypesCollector extends UseRegistry implements IndexedItemCollection {
+
+    private final Set<DexType> excludedTypes = Sets.newIdentityHashSet();
+
+    private Set<DexType> collect(DexProgramClass clazz) {
+      collectAnnotations(clazz.annotations);
+      for (DexEncodedField field : clazz.staticFields()) {
+        exclude(field.field.type);
+        collectAnnotations(field.annotations);
+      }
+      for (DexEncodedField field : clazz.instanceFields()) {
+        exclude(field.field.type);
+        collectAnnotations(field.annotations);
+      }
+      clazz.forEachMethod(method -> {
+        addProto(method.method.proto);
+        collectAnnotations(method.annotations);
+        for (DexAnnotationSet annotations : method.parameterAnnotations.values) {
+          collectAnnotations(annotations);
+        }
+        if (method.getCode() != null) {
+          method.getCode().registerReachableDefinitions(this);
+        }
+      });
+      return excludedTypes;
+    }
+
+    private void collectAnnotations(DexAnnotationSet annotations) {
+      for (DexAnnotation annotation : annotations.annotations) {
+        // System annotations only refer to the classes of the merged members.
+        if (annotation.visibility != DexAnnotation.VISIBILITY_SYSTEM) {
+          annotation.collectIndexedItems(this);
+        }
+      }
+    }
+
+    private boolean exclude(DexType type) {
+      // The code has not been rewritten with the lense yet.
+      return excludedTypes.add(graphLense.lookupType(type.toBaseType(dexItemFactory), null));
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return false;
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return exclude(type);
+    }
+
+    @Override
+    public boolean registerCallSiteReference(DexType type) {
+      return exclude(type);
+    }
+
+    @Override
+    public boolean addClass(DexProgramClass dexProgramClass) {
+      return exclude(dexProgramClass.type);
+    }
+
+    @Override
+    public boolean addField(DexField field) {
+      exclude(field.clazz);
+      return exclude(field.type);
+    }
+
+    @Override
+    public boolean addMethod(DexMethod method) {
+      exclude(method.holder);
+      return addProto(method.proto);
+    }
+
+    @Override
+    public boolean addString(DexString string) {
+      return false;
+    }
+
+    @Override
+    public boolean addProto(DexProto proto) {
+      exclude(proto.returnType);
+      for (DexType parameter : proto.parameters.values) {
+        exclude(parameter);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean addType(DexType type) {
+      return exclude(type);
+    }
+
+    @Override
+    public boolean addCallSite(DexCallSite callSite) {
+      return addProto(callSite.methodProto);
+    }
+
+    @Override
+    public boolean addMethodHandle(DexMethodHandle methodHandle) {
+      return exclude(methodHandle.isMethodHandle()
+          ? methodHandle.asMethod().holder
+          : methodHandle.asField().clazz);
+    }
+  }
+
+  private class ConstructorChecker extends UseRegistry {
+
+    private final DexClass holder;
+    private int references = 0;
+    private boolean simple = true;
+
+    private ConstructorChecker(DexClass holder) {
+      this.holder = holder;
+    }
+
+    private boolean isSimple() {
+      return simple;
+    }
+
+    private boolean check(boolean allowed) {
+      references++;
+      simple &= allowed && references <= MAX_CONSTRUCTOR_REFERENCES;
+      return false;
+    }
+
+    private boolean checkInvoke(DexMethod method) {
+      return check(isLibraryType(graphLense.lookupMethod(method, null).holder));
+    }
+
+    @Override
+    public boolean registerInvokeVirtual(DexMethod method) {
+      return checkInvoke(method);
+    }
+
+    @Override
+    public boolean registerInvokeDirect(DexMethod method) {
+      DexMethod target = graphLense.lookupMethod(method, null);
+      if (isLibraryType(target.holder)) {
+        return check(true);
+      }
+      if (target.holder != holder.superType || target.name != dexItemFactory.constructorMethodName) {
+        return check(false);
+      }
+      DexClass superClass = appInfo.definitionFor(target.holder);
+      DexEncodedMethod definition = superClass.findDirectTarget(target);
+      return check(definition != null && isSimpleConstructor(definition, superClass));
+    }
+
+    @Override
+    public boolean registerInvokeStatic(DexMethod method) {
+      return checkInvoke(method);
+    }
+
+    @Override
+    public boolean registerInvokeInterface(DexMethod method) {
+      return checkInvoke(method);
+    }
+
+    @Override
+    public boolean registerInvokeSuper(DexMethod method) {
+      return checkInvoke(method);
+    }
+
+    @Override
+    public boolean registerInstanceFieldWrite(DexField field) {
+      return check(true);
+    }
+
+    @Override
+    public boolean registerInstanceFieldRead(DexField field) {
+      return check(true);
+    }
+
+    @Override
+    public boolean registerNewInstance(DexType type) {
+      return check(isLibraryType(graphLense.lookupType(type, null)));
+    }
+
+    @Override
+    public boolean registerStaticFieldRead(DexField field) {
+      return check(true);
+    }
+
+    @Override
+    public boolean registerStaticFieldWrite(DexField field) {
+      return check(true);
+    }
+
+    @Override
+    public boolean registerTypeReference(DexType type) {
+      return check(true);
+    }
+
+    @Override
+    public boolean registerCallSiteReference(DexType type) {
+      return check(false);
+    }
+  }
+
+  private static class MergedClassesLense extends GraphLense {
+
+    private final GraphLense previousLense;
+    private final Map<DexType, DexType> mergedClasses;
+    private final Map<DexMethod, DexMethod> methodMap;
+    private final Map<DexField, DexField> fieldMap;
+    private final Reference2IntMap<DexMethod> typeTags;
+    private final DexItemFactory dexItemFactory;
+
+    private MergedClassesLense(GraphLense previousLense, Map<DexType, DexType> mergedClasses,
+        Map<DexMethod, DexMethod> methodMap, Map<DexField, DexField> fieldMap,
+        Reference2IntMap<DexMethod> typeTags, DexItemFactory dexItemFactory) {
+      this.previousLense = previousLense;
+      this.mergedClasses = mergedClasses;
+      this.methodMap = methodMap;
+      this.fieldMap = fieldMap;
+      this.typeTags = typeTags;
+      this.dexItemFactory = dexItemFactory;
+    }
+
+    @Override
+    public DexType lookupType(DexType type, DexEncodedMethod context) {
+      // Merged classes are never the base type of an array type.
+      DexType previous = previousLense.lookupType(type, context);
+      return mergedClasses.getOrDefault(previous, previous);
+    }
+
+    @Override
+    public DexMethod lookupMethod(DexMethod method, DexEncodedMethod context) {
+      DexMethod previous = previousLense.lookupMethod(method, context);
+      DexMethod result = methodMap.get(previous);
+      if (result != null) {
+        return result;
+      }
+      // References to inherited methods are moved to the merged class.
+      DexType holder = mergedClasses.get(previous.holder);
+      return holder == null
+          ? previous
+          : dexItemFactory.createMethod(holder, previous.proto, previous.name);
+    }
+
+    @Override
+    public DexField lookupField(DexField field, DexEncodedMethod context) {
+      DexField previous = previousLense.lookupField(field, context);
+      DexField result = fieldMap.get(previous);
+      if (result != null) {
+        return result;
+      }
+      DexType holder = mergedClasses.get(previous.clazz);
+      return holder == null
+          ? previous
+          : dexItemFactory.createField(holder, previous.type, previous.name);
+    }
+
+    @Override
+    public int lookupTypeTag(DexMethod method, DexEncodedMethod context) {
+      int previous = previousLense.lookupTypeTag(method, context);
+      if (previous != NO_TYPE_TAG) {
+        return previous;
+      }
+      return typeTags.getInt(previousLense.lookupMethod(method, context));
+    }
+
+    @Override
+    public boolean isContextFree() {
+      return previousLense.isContextFree();
+    }
+  }
+}
@@ -24,14 +24,17 @@ import com.android.tools.r8.optimize.InvokeSingleTargetExtractor;
 import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
 import com.android.tools.r8.utils.FieldSignatureEquivalence;
 import com.android.tools.r8.utils.MethodSignatureEquivalence;
+import com.android.tools.r8.utils.ThreadUtils;
 import com.android.tools.r8.utils.Timing;
 import com.google.common.base.Equivalence;
 import com.google.common.base.Equivalence.Wrapper;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntMap;
 import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,8 +42,12 @@ import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -125,9 +132,9 @@ public class SimpleClassMerger {
     return isProgramClass(dexMethod.proto.returnType);
   }
 
-  public GraphLense run() {
+  public GraphLense run(ExecutorService executorService) throws ExecutionException {
     timing.begin("merge");
-    GraphLense mergingGraphLense = mergeClasses(graphLense);
+    GraphLense mergingGraphLense = mergeClasses(graphLense, executorService);
     timing.end();
     timing.begin("fixup");
     GraphLense result = new TreeFixer().fixupTypeReferences(mergingGraphLense);
@@ -135,46 +142,64 @@ public class SimpleClassMerger {
     return result;
   }
 
-  private GraphLense mergeClasses(GraphLense graphLense) {
+  private GraphLense mergeClasses(GraphLense graphLense, ExecutorService executorService)
+      throws ExecutionException {
+    // Visit the candidates in a fixed order, so the merge decisions do not depend on the order of
+    // the classes in the application.
+    List<DexProgramClass> candidates = new ArrayList<>();
     for (DexProgramClass clazz : application.classes()) {
       if (isMergeCandidate(clazz)) {
-        DexClass targetClass = appInfo.definitionFor(clazz.type.getSingleSubtype());
-        if (appInfo.pinnedItems.contains(targetClass)) {
-          // We have to keep the target class intact, so we cannot merge it.
-          continue;
-        }
-        if (mergedClasses.containsKey(targetClass.type)) {
-          // TODO(herhut): Traverse top-down.
-          continue;
-        }
-        if (clazz.hasClassInitializer() && targetClass.hasClassInitializer()) {
-          // TODO(herhut): Handle class initializers.
-          if (Log.ENABLED) {
-            Log.info(getClass(), "Cannot merge %s into %s due to static initializers.",
-                clazz.toSourceString(), targetClass.toSourceString());
-          }
-          continue;
-        }
-        // Guard against the case where we have two methods that may get the same signature
-        // if we replace types. This is rare, so we approximate and err on the safe side here.
-        if (new CollisionDetector(clazz.type, targetClass.type, getInvokes(), mergedClasses)
-            .mayCollide()) {
-          if (Log.ENABLED) {
-            Log.info(getClass(), "Cannot merge %s into %s due to conflict.", clazz.toSourceString(),
-                targetClass.toSourceString());
-          }
-          continue;
+        candidates.add(clazz);
+      }
+    }
+    candidates.sort((a, b) -> a.type.slowCompareTo(b.type));
+    boolean[] mayCollide = computeCollisions(candidates, executorService);
+    // The classes other classes have been merged into, see computeCollisions.
+    Set<DexType> mergeTargets = Sets.newIdentityHashSet();
+    for (int i = 0; i < candidates.size(); i++) {
+      DexProgramClass clazz = candidates.get(i);
+      DexClass targetClass = appInfo.definitionFor(clazz.type.getSingleSubtype());
+      if (appInfo.pinnedItems.contains(targetClass)) {
+        // We have to keep the target class intact, so we cannot merge it.
+        continue;
+      }
+      if (mergedClasses.containsKey(targetClass.type)) {
+        // TODO(herhut): Traverse top-down.
+        continue;
+      }
+      if (clazz.hasClassInitializer() && targetClass.hasClassInitializer()) {
+        // TODO(herhut): Handle class initializers.
+        if (Log.ENABLED) {
+          Log.info(getClass(), "Cannot merge %s into %s due to static initializers.",
+              clazz.toSourceString(), targetClass.toSourceString());
         }
-        boolean merged = new ClassMerger(clazz, targetClass).merge();
+        continue;
+      }
+      // Guard against the case where we have two methods that may get the same signature
+      // if we replace types. This is rare, so we approximate and err on the safe side here.
+      if (mergeTargets.contains(clazz.type) || mergeTargets.contains(targetClass.type)) {
+        mayCollide[i] = new CollisionDetector(clazz.type, targetClass.type, getInvokes(),
+            mergedClasses).mayCollide();
+      }
+      if (mayCollide[i]) {
         if (Log.ENABLED) {
-          if (merged) {
-            numberOfMerges++;
-            Log.info(getClass(), "Merged class %s into %s.", clazz.toSourceString(),
-                targetClass.toSourceString());
-          } else {
-            Log.info(getClass(), "Aborted merge for class %s into %s.",
-                clazz.toSourceString(), targetClass.toSourceString());
-          }
+          Log.info(getClass(), "Cannot merge %s into %s due to conflict.", clazz.toSourceString(),
+              targetClass.toSourceString());
+        }
+        continue;
+      }
+      boolean merged = new ClassMerger(clazz, targetClass).merge();
+      if (merged) {
+        mergeTargets.add(targetClass.type);
+      }
+      if (Log.ENABLED) {
+        if (merged) {
+          numberOfMerges++;
+          Log.info(getClass(), "Merged class %s into %s.", clazz.toSourceString(),
+              targetClass.toSourceString());
+        } else {
+          Log.info(getClass(), "Aborted merge for class %s into %s.",
+              clazz.toSourceString(), targetClass.toSourceString());
         }
       }
     }
@@ -184,6 +209,35 @@ public class SimpleClassMerger {
     return renamedMembersLense.build(graphLense, application.dexItemFactory);
   }
 
+  /**
+   * Checks for all candidates in parallel whether merging them may give two methods the same
+   * signature, which is the expensive part of merging.
+   *
+   * <p>The check only depends on earlier merges through the types merged into the source or the
+   * target of a candidate. It is done without any merged types here, and repeated when merging
+   * for the candidates whose source or target other classes have been merged into.
+   */
+  private boolean[] computeCollisions(List<DexProgramClass> candidates,
+      ExecutorService executorService) throws ExecutionException {
+    boolean[] result = new boolean[candidates.size()];
+    Collection<DexMethod> invokes = getInvokes();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      DexProgramClass clazz = candidates.get(i);
+      DexClass targetClass = appInfo.definitionFor(clazz.type.getSingleSubtype());
+      if (appInfo.pinnedItems.contains(targetClass)) {
+        continue;
+      }
+      int index = i;
+      futures.add(executorService.submit(() -> {
+        result[index] =
+            new CollisionDetector(clazz.type, targetClass.type, invokes, null).mayCollide();
+      }));
+    }
+    ThreadUtils.awaitFutures(futures);
+    return result;
+  }
+
   private class ClassMerger {
 
     private static final String CONSTRUCTOR_NAME = "constructor";
@@ -60,6 +60,7 @@ public class AndroidApp {
   private final Resource proguardSeeds;
   private final Resource packageDistribution;
   private final Resource mainDexList;
+  private final Resource startupProfile;
 
   // See factory methods and AndroidApp.Builder below.
   private AndroidApp(
@@ -71,7 +72,8 @@ public class AndroidApp {
       Resource proguardMap,
       Resource proguardSeeds,
       Resource packageDistribution,
-      Resource mainDexList) {
+      Resource mainDexList,
+      Resource startupProfile) {
     this.programResources = programResources;
     this.classpathResources = classpathResources;
     this.libraryResources = libraryResources;
@@ -81,6 +83,7 @@ public class AndroidApp {
     this.proguardSeeds = proguardSeeds;
     this.packageDistribution = packageDistribution;
     this.mainDexList = mainDexList;
+    this.startupProfile = startupProfile;
   }
 
   /**
@@ -252,6 +255,20 @@ public class AndroidApp {
     return mainDexList == null ? null : mainDexList.getStream(closer);
   }
 
+  /**
+   * True if the startup profile resource exists.
+   */
+  public boolean hasStartupProfile() {
+    return startupProfile != null;
+  }
+
+  /**
+   * Get the input stream of the startup profile resource if it exists.
+   */
+  public InputStream getStartupProfile(Closer closer) throws IOException {
+    return startupProfile == null ? null : startupProfile.getStream(closer);
+  }
+
   /**
    * Write the dex program resources and proguard resource to @code{output}.
    */
@@ -379,6 +396,7 @@ public class AndroidApp {
     private Resource proguardSeeds;
     private Resource packageDistribution;
     private Resource mainDexList;
+    private Resource startupProfile;
 
     // See AndroidApp::builder().
     private Builder() {
@@ -395,6 +413,7 @@ public class AndroidApp {
       proguardSeeds = app.proguardSeeds;
       packageDistribution = app.packageDistribution;
       mainDexList = app.mainDexList;
+      startupProfile = app.startupProfile;
     }
 
     /**
@@ -585,6 +604,22 @@ public class AndroidApp {
       return this;
     }
 
+    /**
+     * Set the startup-profile file.
+     */
+    public Builder setStartupProfileFile(Path file) {
+      startupProfile = file == null ? null : Resource.fromFile(null, file);
+      return this;
+    }
+
+    /**
+     * Set the startup-profile data.
+     */
+    public Builder setStartupProfileData(byte[] content) {
+      startupProfile = content == null ? null : Resource.fromBytes(null, content);
+      return this;
+    }
+
     /**
      * Build final AndroidApp.
      */
@@ -598,7 +633,8 @@ public class AndroidApp {
           proguardMap,
           proguardSeeds,
           packageDistribution,
-          mainDexList);
+          mainDexList,
+          startupProfile);
     }
 
     private List<Resource> resources(ClassKind classKind) {
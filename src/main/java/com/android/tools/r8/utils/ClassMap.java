@@ -10,11 +10,12 @@ import com.android.tools.r8.graph.DexClass;
 import com.android.tools.r8.graph.DexType;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -26,19 +27,23 @@ public abstract class ClassMap<T extends DexClass> {
   // For each type which has ever been queried stores one class loaded from
   // resources provided by different resource providers.
   //
-  // NOTE: all access must be synchronized on `classes`.
-  private final Map<DexType, Supplier<T>> classes;
+  // NOTE: reads are lock-free, all modifications must be synchronized on `classes`.
+  private final ConcurrentHashMap<DexType, Supplier<T>> classes;
 
   // Class provider if available.
   //
   // If the class provider is `null` it indicates that all classes are already present
   // in a map referenced by `classes` and thus the collection is fully loaded.
   //
-  // NOTE: all access must be synchronized on `classes`.
-  private ClassProvider<T> classProvider;
+  // NOTE: may be read without synchronization, all writes must be synchronized on `classes`.
+  private volatile ClassProvider<T> classProvider;
 
-  ClassMap(Map<DexType, Supplier<T>> classes, ClassProvider<T> classProvider) {
-    this.classes = classes == null ? new IdentityHashMap<>() : classes;
+  // Statistics on how much of the collection is actually used.
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+
+  ClassMap(ConcurrentHashMap<DexType, Supplier<T>> classes, ClassProvider<T> classProvider) {
+    this.classes = classes == null ? new ConcurrentHashMap<>() : classes;
     this.classProvider = classProvider;
     assert this.classProvider == null || this.classProvider.getClassKind() == getClassKind();
   }
@@ -52,31 +57,52 @@ public abstract class ClassMap<T extends DexClass> {
   /** Kind of the classes supported by this collection. */
   abstract ClassKind getClassKind();
 
+  /** Number of lookups performed on this collection. */
+  public long getLookupCount() {
+    return lookups.sum();
+  }
+
+  /** Number of classes loaded from the class provider on request. */
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
   @Override
   public String toString() {
-    synchronized (classes) {
-      return classes.size() + " loaded, provider: " +
-          (classProvider == null ? "none" : classProvider.toString());
-    }
+    ClassProvider<T> classProvider = this.classProvider;
+    return classes.size() + " loaded, " + getLookupCount() + " lookups, "
+        + getLoadCount() + " loads, provider: "
+        + (classProvider == null ? "none" : classProvider.toString());
   }
 
   /** Returns a definition for a class or `null` if there is no such class in the collection. */
   public T get(DexType type) {
-    Supplier<T> supplier;
+    lookups.increment();
+    if (type == null) {
+      // E.g., the super type of java.lang.Object. The concurrent map does not allow null keys.
+      return null;
+    }
 
-    synchronized (classes) {
-      supplier = classes.get(type);
-
-      // Get class supplier, create it if it does not
-      // exist and the collection is NOT fully loaded.
-      if (supplier == null) {
-        if (classProvider == null) {
-          // There is no supplier, but the collection is fully loaded.
-          return null;
-        }
+    // Fast path: the type has been queried before, or the collection is fully loaded.
+    Supplier<T> supplier = classes.get(type);
+    if (supplier == null) {
+      if (classProvider == null) {
+        // There is no supplier, but the collection is fully loaded.
+        return null;
+      }
 
-        supplier = new ConcurrentClassLoader<>(this, this.classProvider, type);
-        classes.put(type, supplier);
+      synchronized (classes) {
+        // Get class supplier, create it if it does not
+        // exist and the collection is NOT fully loaded.
+        supplier = classes.get(type);
+        if (supplier == null) {
+          if (classProvider == null) {
+            // The collection has been force-loaded concurrently.
+            return null;
+          }
+          supplier = new ConcurrentClassLoader<>(this, this.classProvider, type);
+          classes.put(type, supplier);
+        }
       }
     }
 
@@ -197,6 +223,7 @@ public abstract class ClassMap<T extends DexClass> {
       synchronized (this) {
         if (!ready) {
           assert classMap != null && provider != null && type != null;
+          classMap.loads.increment();
           provider.collectClass(type, createdClass -> {
             assert createdClass != null;
             assert classMap.getClassKind().isOfKind(createdClass);
@@ -3,11 +3,13 @@
 // BSD-style license that can be found in the LICENSE file.
 package com.android.tools.r8.utils;
 
+import com.android.tools.r8.LambdaClassCache;
 import com.android.tools.r8.dex.Constants;
 import com.android.tools.r8.errors.CompilationError;
 import com.android.tools.r8.graph.DexEncodedMethod;
 import com.android.tools.r8.graph.DexItemFactory;
 import com.android.tools.r8.ir.conversion.CallGraph;
+import com.android.tools.r8.ir.optimize.InliningCostModel;
 import com.android.tools.r8.shaking.ProguardConfigurationRule;
 import com.android.tools.r8.shaking.ProguardTypeMatcher;
 import com.google.common.collect.ImmutableList;
@@ -36,7 +38,12 @@ public class InternalOptions {
   // Skipping optimizations.
   public boolean skipDebugInfoOpt = false;
   public boolean skipDebugLineNumberOpt = false;
+  // Start the lines of each method at line 1 when minifying, recording the original lines in the
+  // mapping file, so more methods share their debug info.
+  public boolean rebaseDebugLineNumbers = false;
   public boolean skipClassMerging = true;
+  // Merge sibling classes only used through their supertypes, distinguishing them by a type tag.
+  public boolean skipHorizontalClassMerging = true;
 
   // Number of threads to use while processing the dex files.
   public int numberOfThreads = NOT_SPECIFIED;
@@ -58,6 +65,8 @@ public class InternalOptions {
 
   // Application writing mode.
   public OutputMode outputMode = OutputMode.Indexed;
+  // Compiled lambda classes shared with other compilations, only used with FilePerClass output.
+  public LambdaClassCache lambdaClassCache = null;
 
   public boolean useTreeShaking = true;
   public boolean printUsage = false;
@@ -79,9 +88,13 @@ public class InternalOptions {
   public boolean removeSwitchMaps = true;
   public boolean disableAssertions = true;
   public final OutlineOptions outline = new OutlineOptions();
+  public final InliningOptions inlining = new InliningOptions();
   public boolean debugKeepRules = false;
   public final AttributeRemovalOptions attributeRemoval = new AttributeRemovalOptions();
   public boolean allowParameterName = false;
+  // Keep the instructions of dex code read from dex files and of processed methods packed into
+  // code units until they are written, see PackedInstructions.
+  public boolean packDexCode = false;
 
   public boolean debug = false;
   public final TestingOptions testing = new TestingOptions();
@@ -140,6 +153,25 @@ public class InternalOptions {
     public int threshold = 20;
   }
 
+  public static class InliningOptions {
+
+    // Size in instructions up to which methods with simple code are inlined.
+    public int simpleInlineeSize = 5;
+    // Additional size allowed for each argument that is a constant at the call site.
+    public int constantArgumentBonus = 2;
+    // Size in instructions above which methods are never inlined because of simple code.
+    public int maxSimpleInlineeSize = 9;
+    // Size in instructions a method may grow to by inlining.
+    public int callerInstructionBudget = 1500;
+    // Number of instructions all methods together may grow by inlining methods with simple code.
+    // A negative value means no limit.
+    public long totalInstructionBudget = -1;
+    // Decides on inlining methods with simple code. Defaults to SizeInliningCostModel if null.
+    public InliningCostModel costModel = null;
+    // Print the inlining decisions for each method.
+    public boolean printReport = false;
+  }
+
   public static class TestingOptions {
     public Function<List<DexEncodedMethod>, List<DexEncodedMethod>> irOrdering;
   }
@@ -0,0 +1,127 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.errors.CompilationError;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * Immutable snapshot of library classes which can be shared by many compilations.
+ *
+ * <p>Dex items carry per-compilation state (sorted and per-file indices, subtype information),
+ * so library classes created in one item factory can not be handed to another compilation.
+ * Instead the snapshot holds the library class files with all method code removed, which is
+ * everything needed to create library classes. The snapshot does not reference any item factory
+ * and is safe to use from concurrent compilations. Each compilation only creates the library
+ * classes it actually looks up, through its lazily loaded {@link LibraryClassCollection}.
+ *
+ * <p>Compared to keeping the archive content in memory, a snapshot only saves the space taken by
+ * method code and the reading of the archive. The library classes a compilation looks up are
+ * still parsed and created in that compilation's item factory.
+ */
+public final class LibraryClassSnapshot implements ClassFileResourceProvider {
+  private final Map<String, byte[]> content;
+
+  private LibraryClassSnapshot(Map<String, byte[]> content) {
+    this.content = content;
+  }
+
+  @Override
+  public Set<String> getClassDescriptors() {
+    return content.keySet();
+  }
+
+  @Override
+  public Resource getResource(String descriptor) {
+    byte[] bytes = content.get(descriptor);
+    if (bytes == null) {
+      return null;
+    }
+    return Resource.fromBytes(Resource.Kind.CLASSFILE, bytes, Collections.singleton(descriptor));
+  }
+
+  /** Number of classes in the snapshot. */
+  public int size() {
+    return content.size();
+  }
+
+  @Override
+  public String toString() {
+    return "library snapshot(" + content.size() + ")";
+  }
+
+  /** Create a snapshot of the classes in the given library archives. */
+  public static LibraryClassSnapshot fromArchives(
+      Collection<Path> archives, ExecutorService executor)
+      throws IOException, ExecutionException {
+    List<ClassFileResourceProvider> providers = new ArrayList<>(archives.size());
+    for (Path archive : archives) {
+      providers.add(PreloadedClassFileProvider.fromArchive(archive));
+    }
+    return fromResourceProviders(providers, executor);
+  }
+
+  /**
+   * Create a snapshot of all classes provided by the given resource providers.
+   *
+   * <p>If several providers define a class with the same descriptor the first one is kept, in
+   * line with how conflicting library classes are resolved by {@link LibraryClassCollection}.
+   */
+  public static LibraryClassSnapshot fromResourceProviders(
+      List<ClassFileResourceProvider> providers, ExecutorService executor)
+      throws ExecutionException {
+    Map<String, byte[]> stripped = new ConcurrentHashMap<>();
+    List<Future<?>> futures = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    for (ClassFileResourceProvider provider : providers) {
+      for (String descriptor : provider.getClassDescriptors()) {
+        if (!seen.add(descriptor)) {
+          continue;
+        }
+        futures.add(executor.submit(() -> {
+          Resource resource = provider.getResource(descriptor);
+          assert resource != null;
+          try (Closer closer = Closer.create()) {
+            byte[] bytes = ByteStreams.toByteArray(resource.getStream(closer));
+            stripped.put(descriptor, stripCode(bytes));
+          } catch (IOException e) {
+            throw new CompilationError("Failed to load library class: " + descriptor, e);
+          }
+        }));
+      }
+    }
+    ThreadUtils.awaitFutures(futures);
+    return new LibraryClassSnapshot(ImmutableMap.copyOf(stripped));
+  }
+
+  // Rewrite the class file without any method bodies, the code of library methods is never used.
+  private static byte[] stripCode(byte[] bytes) {
+    ClassReader reader = new ClassReader(bytes);
+    ClassWriter writer = new ClassWriter(0);
+    reader.accept(writer, SKIP_CODE | SKIP_FRAMES);
+    return writer.toByteArray();
+  }
+}
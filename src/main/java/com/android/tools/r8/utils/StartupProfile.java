@@ -0,0 +1,177 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexString;
+import com.android.tools.r8.graph.DexType;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classes and methods used while an application starts, in the order they are first used.
+ *
+ * <p>The profile is read from a text file with one class or method descriptor per line, as in the
+ * human readable profiles of ART:
+ *
+ * <pre>
+ *   Lcom/example/Main;
+ *   HSPLcom/example/Main;->onCreate(Landroid/os/Bundle;)V
+ * </pre>
+ *
+ * The flags in front of a method are ignored. The holder of a method is a startup class as well.
+ * Empty lines and lines starting with '#' are skipped.
+ */
+public class StartupProfile {
+
+  private static final StartupProfile EMPTY = new StartupProfile();
+
+  private final List<DexType> classes = new ArrayList<>();
+  private final Map<DexType, Integer> classIndexes = new IdentityHashMap<>();
+  private final Map<DexMethod, Integer> methodIndexes = new IdentityHashMap<>();
+
+  private StartupProfile() {
+  }
+
+  public static StartupProfile empty() {
+    return EMPTY;
+  }
+
+  public static StartupProfile parse(InputStream input, DexItemFactory itemFactory) {
+    StartupProfile result = new StartupProfile();
+    try {
+      BufferedReader file =
+          new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+      String line;
+      while ((line = file.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        int classStart = line.indexOf('L');
+        int methodStart = line.indexOf("->");
+        if (classStart < 0 || !line.substring(0, classStart).matches("[HSP]*")) {
+          throw illegalEntry(line);
+        }
+        if (methodStart < 0) {
+          result.addClass(parseType(line, line.substring(classStart), itemFactory));
+        } else {
+          result.addMethod(parseMethod(line, classStart, methodStart, itemFactory));
+        }
+      }
+    } catch (IOException e) {
+      throw new CompilationError("Cannot load startup-profile.");
+    }
+    return result;
+  }
+
+  private static DexType parseType(String line, String descriptor, DexItemFactory itemFactory) {
+    if (!DescriptorUtils.isClassDescriptor(descriptor)) {
+      throw illegalEntry(line);
+    }
+    return itemFactory.createType(descriptor);
+  }
+
+  private static DexMethod parseMethod(
+      String line, int classStart, int methodStart, DexItemFactory itemFactory) {
+    int parametersStart = line.indexOf('(', methodStart);
+    int parametersEnd = line.indexOf(')', methodStart);
+    if (parametersStart < 0 || parametersEnd < parametersStart) {
+      throw illegalEntry(line);
+    }
+    DexType holder = parseType(line, line.substring(classStart, methodStart), itemFactory);
+    List<DexString> parameters = new ArrayList<>();
+    int index = parametersStart + 1;
+    while (index < parametersEnd) {
+      int end = parseTypeDescriptor(line, index, parametersEnd, false);
+      parameters.add(itemFactory.createString(line.substring(index, end)));
+      index = end;
+    }
+    if (parseTypeDescriptor(line, parametersEnd + 1, line.length(), true) != line.length()) {
+      throw illegalEntry(line);
+    }
+    return itemFactory.createMethod(
+        holder.descriptor,
+        itemFactory.createString(line.substring(methodStart + 2, parametersStart)),
+        itemFactory.createString(line.substring(parametersEnd + 1)),
+        parameters.toArray(new DexString[parameters.size()]));
+  }
+
+  /**
+   * Checks the type descriptor starting at start, which must end before end, and returns the
+   * index after it.
+   */
+  private static int parseTypeDescriptor(String line, int start, int end, boolean allowVoid) {
+    int index = start;
+    while (index < end && line.charAt(index) == '[') {
+      index++;
+    }
+    if (index == end) {
+      throw illegalEntry(line);
+    }
+    char c = line.charAt(index);
+    if (c == 'L') {
+      int classEnd = line.indexOf(';', index);
+      if (classEnd < 0 || classEnd >= end
+          || !DescriptorUtils.isClassDescriptor(line.substring(index, classEnd + 1))) {
+        throw illegalEntry(line);
+      }
+      return classEnd + 1;
+    }
+    if ("ZBSCIJFD".indexOf(c) < 0 && (c != 'V' || !allowVoid || index != start)) {
+      throw illegalEntry(line);
+    }
+    return index + 1;
+  }
+
+  private static CompilationError illegalEntry(String line) {
+    return new CompilationError("Illegal startup-profile entry '" + line + "'.");
+  }
+
+  private void addClass(DexType type) {
+    if (!classIndexes.containsKey(type)) {
+      classIndexes.put(type, classes.size());
+      classes.add(type);
+    }
+  }
+
+  private void addMethod(DexMethod method) {
+    addClass(method.holder);
+    methodIndexes.putIfAbsent(method, methodIndexes.size());
+  }
+
+  public boolean isEmpty() {
+    return classes.isEmpty();
+  }
+
+  /**
+   * The startup classes in the order they are first used.
+   */
+  public List<DexType> getClasses() {
+    return classes;
+  }
+
+  /**
+   * Position of the class among the startup classes, or -1 if it is not used during startup.
+   */
+  public int getClassIndex(DexType type) {
+    return classIndexes.getOrDefault(type, -1);
+  }
+
+  /**
+   * Position of the method among the startup methods, or -1 if it is not used during startup.
+   */
+  public int getMethodIndex(DexMethod method) {
+    return methodIndexes.getOrDefault(method, -1);
+  }
+}
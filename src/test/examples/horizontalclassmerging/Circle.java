@@ -0,0 +1,23 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package horizontalclassmerging;
+
+public class Circle implements Shape {
+
+  private final long radius;
+
+  public Circle(long radius) {
+    this.radius = radius;
+  }
+
+  @Override
+  public int area() {
+    return (int) (3 * radius * radius);
+  }
+
+  @Override
+  public String name() {
+    return "circle";
+  }
+}
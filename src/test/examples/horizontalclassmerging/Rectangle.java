@@ -0,0 +1,25 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package horizontalclassmerging;
+
+public class Rectangle implements Shape {
+
+  private final int width;
+  private final int height;
+
+  public Rectangle(int width) {
+    this.width = width;
+    this.height = width + 1;
+  }
+
+  @Override
+  public int area() {
+    return width * height;
+  }
+
+  @Override
+  public String name() {
+    return "rectangle " + height;
+  }
+}
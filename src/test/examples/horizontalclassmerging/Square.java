@@ -0,0 +1,23 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package horizontalclassmerging;
+
+public class Square implements Shape {
+
+  private final int width;
+
+  public Square(int width) {
+    this.width = width;
+  }
+
+  @Override
+  public int area() {
+    return width * width;
+  }
+
+  @Override
+  public String name() {
+    return "square";
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package horizontalclassmerging;
+
+public class Test {
+
+  public static void main(String... args) {
+    Shape[] shapes = {
+        new Circle(args.length + 1),
+        new Rectangle(args.length + 2),
+        new Square(args.length + 3),
+        new Triangle(args.length + 4)
+    };
+    for (Shape shape : shapes) {
+      // Triangle is referenced as a type, so it cannot be merged.
+      if (shape instanceof Triangle) {
+        System.out.print("* ");
+      }
+      System.out.println(shape.name() + " " + shape.area());
+    }
+  }
+}
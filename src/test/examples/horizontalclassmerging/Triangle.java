@@ -0,0 +1,23 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package horizontalclassmerging;
+
+public class Triangle implements Shape {
+
+  private final int base;
+
+  public Triangle(int base) {
+    this.base = base;
+  }
+
+  @Override
+  public int area() {
+    return base * base / 2;
+  }
+
+  @Override
+  public String name() {
+    return "triangle";
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package minificationcounts;
+
+public class Base {
+
+  public int first;
+  public int second;
+  public int used;
+
+  public int first() {
+    return first;
+  }
+
+  public int second() {
+    return second;
+  }
+
+  public int used() {
+    return used;
+  }
+}
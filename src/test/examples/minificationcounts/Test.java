@@ -0,0 +1,16 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package minificationcounts;
+
+public class Test {
+
+  public static void main(String[] args) {
+    // The inherited members are only referenced through the subclass.
+    Sub sub = new Sub();
+    sub.used = args.length;
+    System.out.println(sub.used() + sub.used);
+    System.out.println(sub.used() * sub.used);
+    System.out.println(sub.used() - sub.used);
+  }
+}
@@ -0,0 +1,26 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package shaking17;
+
+public class Shaking {
+
+  private static int count;
+  private static long total;
+  private static int written;
+
+  static {
+    count = 3;
+    total = 42L;
+    written = 1;
+  }
+
+  public static void main(String[] args) {
+    written = args.length;
+    System.out.println(sum());
+  }
+
+  public static long sum() {
+    return count + total + written;
+  }
+}
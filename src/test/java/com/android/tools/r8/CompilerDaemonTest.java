@@ -0,0 +1,67 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+package com.android.tools.r8;
+
+import com.android.tools.r8.utils.FileUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompilerDaemonTest extends TestBase {
+
+  private static final Path INPUT_JAR =
+      Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic" + FileUtils.JAR_EXTENSION);
+
+  private String d8Request(Path out) {
+    return "d8 --lib " + ToolHelper.getDefaultAndroidJar() + " --output " + out + " " + INPUT_JAR;
+  }
+
+  @Test
+  public void testRepeatedRequests() throws IOException {
+    ExecutorService executor = Executors.newWorkStealingPool(2);
+    try {
+      CompilerDaemon daemon = new CompilerDaemon(executor);
+      for (int i = 0; i < 3; i++) {
+        Path out = temp.newFolder("outdex" + i).toPath();
+        String response = daemon.process(d8Request(out));
+        Assert.assertTrue(response, response.startsWith("OK "));
+        Assert.assertTrue(Files.isRegularFile(out.resolve(FileUtils.DEFAULT_DEX_FILENAME)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testServe() throws IOException {
+    Path out = temp.newFolder("outdex").toPath();
+    String requests = String.join("\n",
+        d8Request(out),
+        "dx --help",
+        "quit",
+        d8Request(out));
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    ExecutorService executor = Executors.newWorkStealingPool(2);
+    try {
+      boolean exhausted = new CompilerDaemon(executor).serve(
+          new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), responses);
+      Assert.assertFalse(exhausted);
+    } finally {
+      executor.shutdown();
+    }
+    String[] lines = responses.toString(StandardCharsets.UTF_8.name()).split("\n");
+    Assert.assertEquals(2, lines.length);
+    Assert.assertTrue(lines[0], lines[0].startsWith("OK "));
+    Assert.assertTrue(lines[1], lines[1].startsWith("ERROR "));
+  }
+}
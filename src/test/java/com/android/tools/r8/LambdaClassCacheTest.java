@@ -0,0 +1,129 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8;
+
+import com.android.tools.r8.utils.FileUtils;
+import com.android.tools.r8.utils.OutputMode;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LambdaClassCacheTest {
+
+  private static final Path INPUT_JAR = Paths.get(
+      ToolHelper.EXAMPLES_ANDROID_O_BUILD_DIR, "lambdadesugaring" + FileUtils.JAR_EXTENSION);
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  // Compile to a dex file per class and return the dex files by class descriptor.
+  private static Map<String, byte[]> compile(LambdaClassCache cache)
+      throws IOException, CompilationException {
+    D8Command command = D8Command.builder()
+        .addLibraryFiles(Paths.get(ToolHelper.getDefaultAndroidJar()))
+        .addProgramFiles(INPUT_JAR)
+        .setOutputMode(OutputMode.FilePerClass)
+        .setLambdaClassCache(cache)
+        .build();
+    Map<String, byte[]> result = new HashMap<>();
+    try (Closer closer = Closer.create()) {
+      for (Resource resource : D8.run(command).getDexResources()) {
+        Set<String> descriptors = resource.getClassDescriptors();
+        Assert.assertEquals(1, descriptors.size());
+        result.put(descriptors.iterator().next(),
+            ByteStreams.toByteArray(resource.getStream(closer)));
+      }
+    }
+    return result;
+  }
+
+  private static void assertSameOutput(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+    Assert.assertEquals(expected.keySet(), actual.keySet());
+    expected.forEach(
+        (descriptor, dex) -> Assert.assertArrayEquals(descriptor, dex, actual.get(descriptor)));
+  }
+
+  @Test
+  public void sharedCache() throws Exception {
+    Map<String, byte[]> expected = compile(null);
+
+    LambdaClassCache cache = new LambdaClassCache();
+    assertSameOutput(expected, compile(cache));
+    int size = cache.size();
+    Assert.assertTrue(size > 0);
+    // All lambda classes are taken from the cache the second time.
+    assertSameOutput(expected, compile(cache));
+    Assert.assertEquals(size, cache.size());
+  }
+
+  @Test
+  public void persistedCache() throws Exception {
+    Map<String, byte[]> expected = compile(null);
+
+    Path file = temp.getRoot().toPath().resolve("lambdas.cache");
+    LambdaClassCache cache = LambdaClassCache.read(file);
+    Assert.assertEquals(0, cache.size());
+    compile(cache);
+    cache.write(file);
+
+    LambdaClassCache persisted = LambdaClassCache.read(file);
+    Assert.assertEquals(cache.size(), persisted.size());
+    assertSameOutput(expected, compile(persisted));
+    Assert.assertEquals(cache.size(), persisted.size());
+  }
+
+  @Test
+  public void cacheOfOtherVersionIsDropped() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("lambdas.cache");
+    LambdaClassCache cache = new LambdaClassCache();
+    cache.put("a", new byte[] {1});
+    cache.write(file);
+    Assert.assertEquals(1, LambdaClassCache.read(file).size());
+
+    // Rewrite the header with another version label, keeping the entries.
+    byte[] content = Files.readAllBytes(file);
+    int labelLength = ((content[8] & 0xff) << 8) | (content[9] & 0xff);
+    try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+      output.write(content, 0, 8);
+      output.writeUTF(Version.LABEL + "-other");
+      output.write(content, 10 + labelLength, content.length - 10 - labelLength);
+    }
+    Assert.assertEquals(0, LambdaClassCache.read(file).size());
+  }
+
+  @Test
+  public void leastRecentlyUsedAreDropped() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("lambdas.cache");
+    LambdaClassCache cache = new LambdaClassCache(2);
+    cache.put("a", new byte[] {1});
+    cache.put("b", new byte[] {2});
+    cache.put("c", new byte[] {3});
+    Assert.assertNotNull(cache.lookup("a"));
+    cache.write(file);
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNull(cache.lookup("b"));
+
+    LambdaClassCache persisted = LambdaClassCache.read(file, 2);
+    Assert.assertEquals(2, persisted.size());
+    Assert.assertArrayEquals(new byte[] {1}, persisted.lookup("a"));
+    Assert.assertArrayEquals(new byte[] {3}, persisted.lookup("c"));
+    Assert.assertNull(persisted.lookup("b"));
+
+    // Reading with a smaller size keeps the most recently used.
+    LambdaClassCache smaller = LambdaClassCache.read(file, 1);
+    Assert.assertEquals(1, smaller.size());
+    Assert.assertArrayEquals(new byte[] {1}, smaller.lookup("a"));
+  }
+}
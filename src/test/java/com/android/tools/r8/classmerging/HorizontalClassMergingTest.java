@@ -0,0 +1,79 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.classmerging;
+
+import com.android.tools.r8.CompilationException;
+import com.android.tools.r8.R8Command;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.ToolHelper.ProcessResult;
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.utils.DexInspector;
+import com.android.tools.r8.utils.DexInspector.ClassSubject;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HorizontalClassMergingTest {
+
+  private static final Path EXAMPLE_JAR = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR)
+      .resolve("horizontalclassmerging.jar");
+  private static final Path EXAMPLE_KEEP = Paths.get(ToolHelper.EXAMPLES_DIR)
+      .resolve("horizontalclassmerging").resolve("keep-rules.txt");
+  private static final String EXAMPLE_MAIN = "horizontalclassmerging.Test";
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  private DexInspector inspector;
+
+  @Before
+  public void runR8()
+      throws IOException, ProguardRuleParserException, ExecutionException, CompilationException {
+    ToolHelper.runR8(
+        R8Command.builder()
+            .setOutputPath(Paths.get(temp.getRoot().getCanonicalPath()))
+            .addProgramFiles(EXAMPLE_JAR)
+            .addProguardConfigurationFiles(EXAMPLE_KEEP)
+            .setMinification(false)
+            .build(), o -> o.skipHorizontalClassMerging = false);
+    inspector = new DexInspector(
+        Paths.get(temp.getRoot().getCanonicalPath()).resolve("classes.dex"));
+  }
+
+  @Test
+  public void testSiblingsHaveBeenMerged() {
+    // Rectangle and Square should be merged into Circle, the first class of the group.
+    ClassSubject circle = inspector.clazz("horizontalclassmerging.Circle");
+    Assert.assertTrue(circle.isPresent());
+    Assert.assertFalse(inspector.clazz("horizontalclassmerging.Rectangle").isPresent());
+    Assert.assertFalse(inspector.clazz("horizontalclassmerging.Square").isPresent());
+    // All classes define area() and name(), so the merged class needs a type tag.
+    Assert.assertTrue(circle.field("int", "$typeTag").isPresent());
+  }
+
+  @Test
+  public void testTypeReferenceWasDetected() {
+    Assert.assertTrue(inspector.clazz("horizontalclassmerging.Triangle").isPresent());
+  }
+
+  @Test
+  public void testMergedOutputIsIdentical() throws IOException {
+    // The merged program uses the type tag to dispatch to the methods and constructors of the
+    // merged classes, so it must print the same as the original program.
+    ProcessResult javaResult =
+        ToolHelper.runJava(ImmutableList.of(EXAMPLE_JAR.toString()), EXAMPLE_MAIN);
+    Assert.assertEquals(javaResult.stderr, 0, javaResult.exitCode);
+    String artOutput = ToolHelper.runArtNoVerificationErrors(
+        Paths.get(temp.getRoot().getCanonicalPath()).resolve("classes.dex").toString(),
+        EXAMPLE_MAIN);
+    Assert.assertEquals(javaResult.stdout, artOutput);
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.dex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.CompilationException;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.FileUtils;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.dexbacked.DexReader;
+import org.jf.dexlib2.dexbacked.reference.DexBackedMethodReference;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the order of the class defs, the code items and the string data in a dex file written
+ * with a startup profile.
+ */
+public class StartupLayoutTest {
+
+  private static final Path EXAMPLE_JAR = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR)
+      .resolve("horizontalclassmerging.jar");
+  private static final String PKG = "Lhorizontalclassmerging/";
+
+  private static final List<String> PROFILE = ImmutableList.of(
+      PKG + "Triangle;",
+      "HSP" + PKG + "Test;->main([Ljava/lang/String;)V",
+      "HSP" + PKG + "Square;->name()Ljava/lang/String;",
+      "HSP" + PKG + "Triangle;->area()I");
+
+  @Rule
+  public TemporaryFolder temp = ToolHelper.getTemporaryFolderForTest();
+
+  private DexBackedDexFile dexFile;
+
+  @Before
+  public void compileWithStartupProfile() throws IOException, CompilationException {
+    Path profile = temp.newFile("startup.txt").toPath();
+    FileUtils.writeTextFile(profile, PROFILE);
+    Path out = temp.newFolder("out").toPath();
+    ToolHelper.runD8(D8Command.parse(new String[] {
+        EXAMPLE_JAR.toString(),
+        "--output", out.toString(),
+        "--startup-profile", profile.toString()
+    }).build());
+    dexFile = new DexBackedDexFile(Opcodes.forApi(Constants.DEFAULT_ANDROID_API),
+        Files.readAllBytes(out.resolve(FileUtils.DEFAULT_DEX_FILENAME)));
+  }
+
+  @Test
+  public void startupClassDefsFirst() {
+    List<String> classes = new ArrayList<>();
+    for (int i = 0; i < dexFile.getClassCount(); i++) {
+      classes.add(dexFile.getType(dexFile.readSmallUint(dexFile.getClassDefItemOffset(i))));
+    }
+    // The startup classes come first in profile order, the interface Shape is moved in front of
+    // Triangle as it is a super type. The other classes follow sorted by name.
+    assertEquals(
+        ImmutableList.of(
+            PKG + "Shape;",
+            PKG + "Triangle;",
+            PKG + "Test;",
+            PKG + "Square;",
+            PKG + "Circle;",
+            PKG + "Rectangle;"),
+        classes);
+  }
+
+  @Test
+  public void startupCodeFirst() {
+    Map<String, Integer> codeOffsets = collectCodeOffsets();
+    int mainOffset = codeOffsets.remove(PKG + "Test;->main");
+    int squareNameOffset = codeOffsets.remove(PKG + "Square;->name");
+    int triangleAreaOffset = codeOffsets.remove(PKG + "Triangle;->area");
+    assertTrue(mainOffset < squareNameOffset);
+    assertTrue(squareNameOffset < triangleAreaOffset);
+    for (Map.Entry<String, Integer> entry : codeOffsets.entrySet()) {
+      assertTrue(entry.getKey(), triangleAreaOffset < entry.getValue());
+    }
+  }
+
+  @Test
+  public void startupStringDataFirst() {
+    // Without a profile the string data is sorted, so "circle" would come before "square".
+    // "square" is used by the startup method Square.name, while "circle" is only used by
+    // Circle.name.
+    assertTrue(stringDataOffset("square") < stringDataOffset("circle"));
+    assertTrue(stringDataOffset("square") < stringDataOffset("rectangle "));
+    // The startup class Triangle is loaded before the class Rectangle.
+    assertTrue(stringDataOffset(PKG + "Triangle;") < stringDataOffset(PKG + "Rectangle;"));
+  }
+
+  private int stringDataOffset(String string) {
+    for (int i = 0; i < dexFile.getStringCount(); i++) {
+      if (dexFile.getString(i).equals(string)) {
+        return dexFile.readSmallUint(dexFile.getStringIdItemOffset(i));
+      }
+    }
+    throw new AssertionError("String not found: " + string);
+  }
+
+  // Maps "holder->name" of every method with code to the offset of its code item.
+  private Map<String, Integer> collectCodeOffsets() {
+    Map<String, Integer> result = new HashMap<>();
+    for (int i = 0; i < dexFile.getClassCount(); i++) {
+      int classDataOffset = dexFile.readSmallUint(dexFile.getClassDefItemOffset(i) + 24);
+      if (classDataOffset == 0) {
+        continue;
+      }
+      DexReader reader = dexFile.readerAt(classDataOffset);
+      int staticFields = reader.readSmallUleb128();
+      int instanceFields = reader.readSmallUleb128();
+      int directMethods = reader.readSmallUleb128();
+      int virtualMethods = reader.readSmallUleb128();
+      for (int j = 0; j < staticFields + instanceFields; j++) {
+        reader.readSmallUleb128();  // field_idx_diff
+        reader.readSmallUleb128();  // access_flags
+      }
+      int methodIndex = 0;
+      for (int j = 0; j < directMethods + virtualMethods; j++) {
+        if (j == directMethods) {
+          methodIndex = 0;
+        }
+        methodIndex += reader.readSmallUleb128();
+        reader.readSmallUleb128();  // access_flags
+        int codeOffset = reader.readSmallUleb128();
+        if (codeOffset != 0) {
+          DexBackedMethodReference method = dexFile.getMethods().get(methodIndex);
+          result.put(method.getDefiningClass() + "->" + method.getName(), codeOffset);
+        }
+      }
+    }
+    return result;
+  }
+}
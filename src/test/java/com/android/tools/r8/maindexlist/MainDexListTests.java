@@ -183,6 +183,25 @@ public class MainDexListTests extends TestBase {
     verifyMainDexContains(MANY_CLASSES, getManyClassesMultiDexAppPath(), false);
   }
 
+  @Test
+  public void startupClassesInMainDex() throws Throwable {
+    // The last classes of the second package do not fit into the main dex file, unless they are
+    // used during startup.
+    List<String> startupClasses = ImmutableList.of(
+        MANY_CLASSES.get(MANY_CLASSES.size() - 1), MANY_CLASSES.get(MANY_CLASSES.size() - 3));
+    Path startupProfile = temp.newFile().toPath();
+    FileUtils.writeTextFile(
+        startupProfile, ListUtils.map(startupClasses, DescriptorUtils::javaTypeToDescriptor));
+    DexInspector inspector = compileAndInspectMainDex(getManyClassesMultiDexAppPath(), null);
+    for (String clazz : startupClasses) {
+      assertFalse(inspector.clazz(clazz).isPresent());
+    }
+    inspector = compileAndInspectMainDex(getManyClassesMultiDexAppPath(), startupProfile);
+    for (String clazz : startupClasses) {
+      assertTrue("Startup class " + clazz + " not in main dex", inspector.clazz(clazz).isPresent());
+    }
+  }
+
   @Test
   public void validEntries() throws IOException {
     List<String> list = ImmutableList.of(
@@ -385,6 +404,24 @@ public class MainDexListTests extends TestBase {
     }
   }
 
+  private DexInspector compileAndInspectMainDex(Path app, Path startupProfile)
+      throws IOException, CompilationException, ExecutionException, ProguardRuleParserException {
+    Path outDir = temp.newFolder().toPath();
+    R8Command command =
+        R8Command.builder()
+            .addProgramFiles(app)
+            .setStartupProfileFile(startupProfile)
+            .setMinApiLevel(Constants.ANDROID_L_API) // Allow native multidex.
+            .setOutputPath(outDir)
+            .setTreeShaking(false)
+            .setMinification(false)
+            .build();
+    ToolHelper.runR8(command);
+    assertTrue("Output run only produced one dex file.",
+        1 < Files.list(outDir).filter(FileUtils::isDexFile).count());
+    return new DexInspector(AndroidApp.fromProgramFiles(outDir.resolve("classes.dex")));
+  }
+
   private void verifyMainDexContains(List<String> mainDex, Path app, boolean singleDexApp)
       throws Throwable {
     doVerifyMainDexContains(mainDex, app, singleDexApp, false);
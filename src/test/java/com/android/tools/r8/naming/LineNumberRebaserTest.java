@@ -0,0 +1,94 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexClass;
+import com.android.tools.r8.graph.DexDebugInfo;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.android.tools.r8.naming.LineNumberRebaser.LineMapping;
+import com.android.tools.r8.smali.SmaliTestBase;
+import java.util.Collections;
+import org.junit.Test;
+
+public class LineNumberRebaserTest extends SmaliTestBase {
+
+  private void addMethod(SmaliBuilder builder, String name, int line) {
+    builder.addStaticMethod("int", name, Collections.emptyList(), 1,
+        "  .line " + line,
+        "  const/4 v0, 0",
+        "  .line " + (line + 2),
+        "  return v0");
+  }
+
+  private DexDebugInfo getDebugInfo(DexEncodedMethod method) {
+    return method.getCode().asDexCode().getDebugInfo();
+  }
+
+  @Test
+  public void methodsWithSameLineDeltasShareDebugInfo() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    addMethod(builder, "first", 10);
+    addMethod(builder, "second", 20);
+    addMethod(builder, "third", 1);
+    DexApplication application = buildApplication(builder);
+    DexEncodedMethod first = getMethod(application, DEFAULT_CLASS_NAME, "int", "first",
+        Collections.emptyList());
+    DexEncodedMethod second = getMethod(application, DEFAULT_CLASS_NAME, "int", "second",
+        Collections.emptyList());
+    DexEncodedMethod third = getMethod(application, DEFAULT_CLASS_NAME, "int", "third",
+        Collections.emptyList());
+    assertNotEquals(getDebugInfo(first), getDebugInfo(second));
+
+    LineNumberRebaser rebaser = new LineNumberRebaser();
+    rebaser.run(application.classes());
+    assertEquals(getDebugInfo(first), getDebugInfo(second));
+    assertEquals(getDebugInfo(third), getDebugInfo(first));
+
+    LineMapping firstLines = rebaser.getLineMapping(first);
+    assertEquals(new MemberNaming.Range(1, 3), firstLines.rebased);
+    assertEquals(new MemberNaming.Range(10, 12), firstLines.original);
+    LineMapping secondLines = rebaser.getLineMapping(second);
+    assertEquals(new MemberNaming.Range(1, 3), secondLines.rebased);
+    assertEquals(new MemberNaming.Range(20, 22), secondLines.original);
+    // Methods already starting at line 1 are left alone.
+    assertNull(rebaser.getLineMapping(third));
+  }
+
+  @Test
+  public void sharedCodeIsRebasedOnce() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    addMethod(builder, "first", 10);
+    addMethod(builder, "second", 20);
+    DexApplication application = buildApplication(builder);
+    DexEncodedMethod first = getMethod(application, DEFAULT_CLASS_NAME, "int", "first",
+        Collections.emptyList());
+    DexEncodedMethod second = getMethod(application, DEFAULT_CLASS_NAME, "int", "second",
+        Collections.emptyList());
+    // Let the second method share the code of the first.
+    DexClass clazz = getClass(application, DEFAULT_CLASS_NAME);
+    DexEncodedMethod sharing = new DexEncodedMethod(second.method, second.accessFlags,
+        second.annotations, second.parameterAnnotations, first.getCode());
+    for (int i = 0; i < clazz.directMethods.length; i++) {
+      if (clazz.directMethods[i] == second) {
+        clazz.directMethods[i] = sharing;
+      }
+    }
+
+    LineNumberRebaser rebaser = new LineNumberRebaser();
+    rebaser.run(application.classes());
+    assertSame(first.getCode(), sharing.getCode());
+    assertEquals(1, getDebugInfo(first).startLine);
+    LineMapping firstLines = rebaser.getLineMapping(first);
+    assertEquals(new MemberNaming.Range(1, 3), firstLines.rebased);
+    assertEquals(new MemberNaming.Range(10, 12), firstLines.original);
+    // The second method maps to the lines of the shared code, not to lines shifted twice.
+    assertSame(firstLines, rebaser.getLineMapping(sharing));
+  }
+}
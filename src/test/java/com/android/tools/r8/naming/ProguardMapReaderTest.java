@@ -4,8 +4,17 @@
 package com.android.tools.r8.naming;
 
 import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.utils.ThreadUtils;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -34,4 +43,54 @@ public class ProguardMapReaderTest {
     ClassNameMapper mapper = ProguardMapReader.mapperFromString(EXAMPLE_MAP_WITH_PACKAGE_INFO);
     Assert.assertTrue(mapper.getObfuscatedToOriginalMapping().isEmpty());
   }
+
+  private static String largeMap(int classes) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < classes; i++) {
+      builder.append("foo.bar.Class").append(i).append(" -> a.C").append(i).append(":\n");
+      for (int j = 0; j < 5; j++) {
+        builder.append("    int field").append(j).append(" -> f").append(j).append("\n");
+        builder.append("    ").append(j + 1).append(":").append(j + 2)
+            .append(":void method").append(j).append("(java.lang.String) -> m")
+            .append(j).append("\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  @Test
+  public void parseLargeMapInParallel() throws IOException, ExecutionException {
+    String map = largeMap(5000);
+    ClassNameMapper sequential = ProguardMapReader.mapperFromString(map);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ClassNameMapper parallel = ProguardMapReader.mapperFromInputStream(
+          new ByteArrayInputStream(map.getBytes(StandardCharsets.UTF_8)), executor);
+      Assert.assertEquals(sequential, parallel);
+      Assert.assertEquals(sequential.toString(), parallel.toString());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void submitChunksFromTaskOnSingleThread() throws Exception {
+    // Reading from the only thread of the executor queues the first chunks, and parses the
+    // others itself once too many are pending.
+    String map = largeMap(20000);
+    ClassNameMapper sequential = ProguardMapReader.mapperFromString(map);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      List<Future<Map<String, ClassNaming>>> chunks = executor.submit(() ->
+          ProguardMapReader.submitChunks(
+              new ByteArrayInputStream(map.getBytes(StandardCharsets.UTF_8)), executor)).get();
+      Assert.assertTrue(chunks.size() > 4);
+      ClassNameMapper parallel =
+          ProguardMapReader.mapperFromChunks(ThreadUtils.awaitFutures(chunks));
+      Assert.assertEquals(sequential, parallel);
+      Assert.assertEquals(sequential.toString(), parallel.toString());
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,97 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.naming;
+
+import com.android.tools.r8.ToolHelper;
+import com.android.tools.r8.dex.ApplicationReader;
+import com.android.tools.r8.graph.AppInfoWithSubtyping;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexType;
+import com.android.tools.r8.shaking.Enqueuer;
+import com.android.tools.r8.shaking.Enqueuer.AppInfoWithLiveness;
+import com.android.tools.r8.shaking.ProguardConfigurationParser;
+import com.android.tools.r8.shaking.ProguardRuleParserException;
+import com.android.tools.r8.shaking.RootSetBuilder;
+import com.android.tools.r8.shaking.RootSetBuilder.RootSet;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import com.android.tools.r8.utils.Timing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the Enqueuer counts references to inherited members for their definitions. The
+ * minifier runs right after tracing, as member rebinding would otherwise rewrite the references
+ * to the definitions.
+ */
+public class ReferenceCountMinificationTest {
+
+  private static final Path EXAMPLE_JAR = Paths.get(ToolHelper.EXAMPLES_BUILD_DIR)
+      .resolve("minificationcounts.jar");
+  private static final Path EXAMPLE_KEEP = Paths.get(ToolHelper.EXAMPLES_DIR)
+      .resolve("minificationcounts").resolve("keep-rules.txt");
+
+  private DexItemFactory factory;
+  private DexType base;
+  private NamingLens namingLens;
+
+  @Before
+  public void traceAndMinify()
+      throws IOException, ProguardRuleParserException, ExecutionException {
+    Timing timing = new Timing("ReferenceCountMinificationTest");
+    InternalOptions options = new InternalOptions();
+    AndroidApp app = AndroidApp.builder()
+        .addProgramFiles(EXAMPLE_JAR)
+        .addLibraryFiles(Paths.get(ToolHelper.getDefaultAndroidJar()))
+        .build();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      DexApplication application = new ApplicationReader(app, options, timing).read(executor);
+      factory = application.dexItemFactory;
+      ProguardConfigurationParser parser = new ProguardConfigurationParser(factory);
+      parser.parse(EXAMPLE_KEEP);
+      AppInfoWithSubtyping appInfo = new AppInfoWithSubtyping(application);
+      RootSet rootSet =
+          new RootSetBuilder(application, appInfo, parser.getConfig().getRules()).run(executor);
+      AppInfoWithLiveness liveness = new Enqueuer(appInfo).traceApplication(rootSet, timing);
+      namingLens = new Minifier(liveness, rootSet, options).run(executor, timing);
+    } finally {
+      executor.shutdown();
+    }
+    base = factory.createType("Lminificationcounts/Base;");
+  }
+
+  @Test
+  public void testInheritedMethodReferencedThroughSubclassGetsFirstName() {
+    // Base.used() is only referenced as Sub.used(), but is named before the unreferenced methods.
+    Assert.assertEquals("a", methodName("used"));
+    Assert.assertNotEquals("a", methodName("first"));
+    Assert.assertNotEquals("a", methodName("second"));
+  }
+
+  @Test
+  public void testInheritedFieldReferencedThroughSubclassGetsFirstName() {
+    // Base.used is only referenced as Sub.used, but is named before the unreferenced fields.
+    Assert.assertEquals("a", fieldName("used"));
+    Assert.assertNotEquals("a", fieldName("first"));
+    Assert.assertNotEquals("a", fieldName("second"));
+  }
+
+  private String methodName(String name) {
+    return namingLens.lookupName(
+        factory.createMethod(base, factory.createProto(factory.intType), name)).toString();
+  }
+
+  private String fieldName(String name) {
+    return namingLens.lookupName(factory.createField(base, factory.intType, name)).toString();
+  }
+}
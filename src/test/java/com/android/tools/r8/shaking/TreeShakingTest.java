@@ -366,6 +366,17 @@ public class TreeShakingTest {
         subclass.method("double", "anotherMethod", ImmutableList.of("double")).isPresent());
   }
 
+  private static void shaking17OnlyReadsFieldWrittenOutsideClassInitializer(
+      DexInspector inspector) {
+    ClassSubject mainClass = inspector.clazz("shaking17.Shaking");
+    MethodSubject sumMethod = mainClass.method("long", "sum", Collections.emptyList());
+    Assert.assertTrue(sumMethod.isPresent());
+    Iterator<FieldAccessInstructionSubject> iterator =
+        sumMethod.iterateInstructions(InstructionSubject::isFieldAccess);
+    Assert.assertTrue(iterator.hasNext() && iterator.next().holder().is("shaking17.Shaking"));
+    Assert.assertFalse(iterator.hasNext());
+  }
+
   private static List<String> names =
       ImmutableList.of("pqr", "vw$", "abc", "def", "stu", "ghi", "jkl", "ea", "xyz_", "mno");
 
@@ -535,6 +546,7 @@ public class TreeShakingTest {
             "shaking14",
             "shaking15",
             "shaking16",
+            "shaking17",
             "inlining",
             "minification",
             "assumenosideeffects1",
@@ -600,6 +612,9 @@ public class TreeShakingTest {
             TreeShakingTest::shaking14EnsureRightStaticMethodsLive);
     inspections.put("shaking15:keep-rules.txt",
         TreeShakingTest::shaking15testDictionary);
+    inspections
+        .put("shaking17:keep-rules.txt",
+            TreeShakingTest::shaking17OnlyReadsFieldWrittenOutsideClassInitializer);
     inspections
         .put("annotationremoval:keep-rules.txt",
             TreeShakingTest::annotationRemovalHasNoInnerClassAnnotations);
@@ -0,0 +1,61 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.smali;
+
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.code.AddInt;
+import com.android.tools.r8.code.AddInt2Addr;
+import com.android.tools.r8.code.ArrayLength;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import org.junit.Test;
+
+public class GlobalValueNumberingTest extends SmaliTestBase {
+
+  private static int count(DexCode code, Class<?>... classes) {
+    int count = 0;
+    for (Instruction instruction : code.instructions) {
+      for (Class<?> clazz : classes) {
+        if (clazz.isInstance(instruction)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void commutativeBinop() {
+    DexEncodedMethod method = oneMethodApplication(
+        "int",
+        ImmutableList.of("int", "int"),
+        2,
+        "  add-int v0, p0, p1",
+        "  add-int v1, p1, p0",
+        "  mul-int v0, v0, v1",
+        "  return v0");
+    DexCode code = method.getCode().asDexCode();
+    assertEquals(1, count(code, AddInt.class, AddInt2Addr.class));
+  }
+
+  @Test
+  public void arrayLength() {
+    DexEncodedMethod method = oneMethodApplication(
+        "int",
+        Collections.singletonList("int[]"),
+        2,
+        "  array-length v0, p0",
+        "  if-eqz v0, :label_1",
+        "  array-length v1, p0",
+        "  add-int/2addr v0, v1",
+        ":label_1",
+        "  return v0");
+    DexCode code = method.getCode().asDexCode();
+    assertEquals(1, count(code, ArrayLength.class));
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.smali;
+
+import static org.junit.Assert.assertEquals;
+
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.InvokeStatic;
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.Collections;
+import org.junit.Test;
+
+public class InliningCostModelTest extends SmaliTestBase {
+
+  private MethodSignature constantArgument;
+  private MethodSignature nonConstantArgument;
+
+  private SmaliBuilder buildCallers() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    // Larger than the size inlined for any call site, but small enough to be inlined with a
+    // constant argument.
+    builder.addStaticMethod(
+        "int",
+        DEFAULT_METHOD_NAME,
+        Collections.singletonList("int"),
+        1,
+        "    mul-int/lit8        v0, p0, 3",
+        "    add-int/lit8        v0, v0, 1",
+        "    mul-int/lit8        v0, v0, 5",
+        "    add-int/lit8        v0, v0, 2",
+        "    mul-int/lit8        v0, v0, 7",
+        "    add-int/lit8        v0, v0, 3",
+        "    return              v0");
+    constantArgument = builder.addStaticMethod(
+        "int",
+        "constantArgument",
+        Collections.emptyList(),
+        1,
+        "    const/4             v0, 2",
+        "    invoke-static       { v0 }, LTest;->method(I)I",
+        "    move-result         v0",
+        "    return              v0");
+    nonConstantArgument = builder.addStaticMethod(
+        "int",
+        "nonConstantArgument",
+        Collections.singletonList("int"),
+        1,
+        "    invoke-static       { p0 }, LTest;->method(I)I",
+        "    move-result         v0",
+        "    return              v0");
+    return builder;
+  }
+
+  private int countInvokes(DexApplication application, MethodSignature signature) {
+    DexCode code = getMethod(application, signature).getCode().asDexCode();
+    int count = 0;
+    for (Instruction instruction : code.instructions) {
+      if (instruction instanceof InvokeStatic) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void constantArgumentAllowsLargerInlinee() {
+    SmaliBuilder builder = buildCallers();
+    InternalOptions options = new InternalOptions();
+    DexApplication application =
+        processApplication(buildApplication(builder, options), options);
+    assertEquals(0, countInvokes(application, constantArgument));
+    assertEquals(1, countInvokes(application, nonConstantArgument));
+  }
+
+  @Test
+  public void customCostModel() {
+    SmaliBuilder builder = buildCallers();
+    InternalOptions options = new InternalOptions();
+    options.inlining.costModel = (invoke, target, targetSize, callerGrowth) -> false;
+    DexApplication application =
+        processApplication(buildApplication(builder, options), options);
+    assertEquals(1, countInvokes(application, constantArgument));
+    assertEquals(1, countInvokes(application, nonConstantArgument));
+  }
+
+  @Test
+  public void totalBudget() {
+    SmaliBuilder builder = buildCallers();
+    InternalOptions options = new InternalOptions();
+    options.inlining.totalInstructionBudget = 0;
+    DexApplication application =
+        processApplication(buildApplication(builder, options), options);
+    assertEquals(1, countInvokes(application, constantArgument));
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.smali;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.graph.DexApplication;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.utils.AndroidApp;
+import com.android.tools.r8.utils.InternalOptions;
+import java.util.Collections;
+import org.junit.Test;
+
+public class PackedInstructionsTest extends SmaliTestBase {
+
+  private SmaliBuilder buildTestClass() {
+    SmaliBuilder builder = new SmaliBuilder(DEFAULT_CLASS_NAME);
+    builder.addStaticMethod("void", DEFAULT_METHOD_NAME, Collections.singletonList("int"), 3,
+        "  sget-object v0, Ljava/lang/System;->out:Ljava/io/PrintStream;",
+        "  const-string v1, \"first\"",
+        "  invoke-virtual {v0, v1}, Ljava/io/PrintStream;->println(Ljava/lang/String;)V",
+        "  packed-switch p0, :switch_data",
+        "  const-string/jumbo v1, \"second\"",
+        "  invoke-virtual {v0, v1}, Ljava/io/PrintStream;->println(Ljava/lang/String;)V",
+        "  const-class v1, LTest;",
+        "  invoke-virtual {v0, v1}, Ljava/io/PrintStream;->println(Ljava/lang/Object;)V",
+        ":return",
+        "  return-void",
+        ":switch_data",
+        "  .packed-switch 0x0",
+        "    :return",
+        "  .end packed-switch");
+    return builder;
+  }
+
+  private DexCode getCode(DexApplication application) {
+    return getMethod(application, DEFAULT_CLASS_NAME, "void", DEFAULT_METHOD_NAME,
+        Collections.singletonList("int")).getCode().asDexCode();
+  }
+
+  // Both reads use the same options, so the items referenced are canonicalized by the same
+  // factory and the instructions can be compared.
+  private DexCode readCode(SmaliBuilder builder, InternalOptions options, boolean packDexCode) {
+    options.packDexCode = packDexCode;
+    return getCode(buildApplication(builder, options));
+  }
+
+  @Test
+  public void packedCodeUnpacksToSameInstructions() {
+    SmaliBuilder builder = buildTestClass();
+    InternalOptions options = new InternalOptions();
+    DexCode code = readCode(builder, options, false);
+    DexCode packed = readCode(builder, options, true);
+    assertFalse(code.isPacked());
+    assertTrue(packed.isPacked());
+    assertNull(packed.instructions);
+    assertEquals(code.instructions.length, packed.getInstructionCount());
+    assertEquals(code.codeSizeInBytes(), packed.codeSizeInBytes());
+    assertArrayEquals(code.instructions, packed.getInstructions());
+    assertArrayEquals(code.instructions, code.pack().getInstructions());
+    assertEquals(packed, code.pack());
+  }
+
+  @Test
+  public void packedCodeIsWrittenWithFileIndexes() {
+    SmaliBuilder builder = buildTestClass();
+    InternalOptions options = new InternalOptions();
+    options.packDexCode = true;
+    DexApplication application = buildApplication(builder, options);
+    assertTrue(getCode(application).isPacked());
+    // The indexes of the items in the written file differ from the local indexes in the packed
+    // code, as the application has more strings, types and methods than the code references.
+    AndroidApp output = writeDex(application, options);
+    options.packDexCode = false;
+    DexCode writtenCode = getCode(buildApplication(output, options));
+    assertArrayEquals(readCode(builder, options, false).instructions, writtenCode.instructions);
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.smali;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.code.Const4;
+import com.android.tools.r8.code.Instruction;
+import com.android.tools.r8.code.Return;
+import com.android.tools.r8.graph.DexCode;
+import com.android.tools.r8.graph.DexEncodedMethod;
+import java.util.Collections;
+import org.junit.Test;
+
+public class SparseConditionalConstantPropagationTest extends SmaliTestBase {
+
+  private static void assertReturnsConstant(DexCode code, int value) {
+    Instruction last = code.instructions[code.instructions.length - 1];
+    Instruction beforeLast = code.instructions[code.instructions.length - 2];
+    assertTrue(last instanceof Return);
+    assertTrue(beforeLast instanceof Const4);
+    assertEquals(value, ((Const4) beforeLast).B);
+  }
+
+  @Test
+  public void constantThroughLoopPhi() {
+    // The branch assigning 2 is never taken, as the loop phi for v0 is always 1.
+    DexEncodedMethod method = oneMethodApplication(
+        "int",
+        Collections.singletonList("int"),
+        2,
+        "  const v0, 1",
+        ":loop",
+        "  if-eqz p0, :exit",
+        "  const v1, 1",
+        "  if-eq v0, v1, :same",
+        "  const v0, 2",
+        ":same",
+        "  add-int/lit8 p0, p0, -1",
+        "  goto :loop",
+        ":exit",
+        "  return v0");
+    DexCode code = method.getCode().asDexCode();
+    for (Instruction instruction : code.instructions) {
+      assertFalse(instruction instanceof Const4 && ((Const4) instruction).B == 2);
+    }
+  }
+
+  @Test
+  public void constantThroughBranches() {
+    // Both branches compute 6, so the result is a constant.
+    DexEncodedMethod method = oneMethodApplication(
+        "int",
+        Collections.singletonList("int"),
+        2,
+        "  const v0, 2",
+        "  if-eqz p0, :other",
+        "  const v1, 3",
+        "  mul-int v0, v0, v1",
+        "  goto :join",
+        ":other",
+        "  const v1, 4",
+        "  add-int v0, v0, v1",
+        ":join",
+        "  return v0");
+    DexCode code = method.getCode().asDexCode();
+    assertReturnsConstant(code, 6);
+  }
+}
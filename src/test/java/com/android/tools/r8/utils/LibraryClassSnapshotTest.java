@@ -0,0 +1,69 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.CompilationException;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.D8Output;
+import com.android.tools.r8.Resource;
+import com.android.tools.r8.ToolHelper;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LibraryClassSnapshotTest {
+
+  private static final Path INPUT_JAR =
+      Paths.get(ToolHelper.EXAMPLES_BUILD_DIR, "arithmetic" + FileUtils.JAR_EXTENSION);
+
+  private static byte[] compile(ClassFileResourceProvider library)
+      throws IOException, CompilationException {
+    D8Output output = D8.run(D8Command.builder()
+        .addLibraryResourceProvider(library)
+        .addProgramFiles(INPUT_JAR)
+        .build());
+    List<Resource> dexResources = output.getDexResources();
+    Assert.assertEquals(1, dexResources.size());
+    try (Closer closer = Closer.create()) {
+      return ByteStreams.toByteArray(dexResources.get(0).getStream(closer));
+    }
+  }
+
+  @Test
+  public void sharedSnapshot() throws Exception {
+    Path androidJar = Paths.get(ToolHelper.getDefaultAndroidJar());
+    byte[] expected = compile(PreloadedClassFileProvider.fromArchive(androidJar));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      LibraryClassSnapshot snapshot =
+          LibraryClassSnapshot.fromArchives(Collections.singletonList(androidJar), executor);
+      Assert.assertTrue(snapshot.size() > 0);
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(() -> compile(snapshot)));
+      }
+      for (Future<byte[]> result : results) {
+        Assert.assertArrayEquals(expected, result.get());
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright (c) 2017, the R8 project authors. Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+package com.android.tools.r8.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.r8.errors.CompilationError;
+import com.android.tools.r8.graph.DexItemFactory;
+import com.android.tools.r8.graph.DexMethod;
+import com.android.tools.r8.graph.DexType;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class StartupProfileTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private StartupProfile parse(DexItemFactory factory, String... lines) {
+    byte[] content = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    return StartupProfile.parse(new ByteArrayInputStream(content), factory);
+  }
+
+  @Test
+  public void validEntries() {
+    DexItemFactory factory = new DexItemFactory();
+    StartupProfile profile = parse(factory,
+        "# Comment",
+        "La/Main;",
+        "",
+        "HSPLa/b/C;->run([ILjava/lang/String;J)[La/Main;",
+        "La/Main;",
+        "PLa/b/D;-><init>()V");
+    DexType main = factory.createType("La/Main;");
+    DexType c = factory.createType("La/b/C;");
+    DexType d = factory.createType("La/b/D;");
+    assertEquals(ImmutableList.of(main, c, d), profile.getClasses());
+    assertEquals(0, profile.getClassIndex(main));
+    assertEquals(2, profile.getClassIndex(d));
+    assertEquals(-1, profile.getClassIndex(factory.createType("La/b/E;")));
+
+    DexType[] parameters = {factory.createType("[I"), factory.stringType, factory.longType};
+    DexMethod run = factory.createMethod(
+        c, factory.createProto(factory.createType("[La/Main;"), parameters), "run");
+    DexMethod init = factory.createMethod(d, factory.createProto(factory.voidType), "<init>");
+    assertEquals(0, profile.getMethodIndex(run));
+    assertEquals(1, profile.getMethodIndex(init));
+    assertEquals(-1, profile.getMethodIndex(
+        factory.createMethod(main, factory.createProto(factory.voidType), "<init>")));
+  }
+
+  @Test
+  public void emptyProfile() {
+    StartupProfile profile = parse(new DexItemFactory(), "# Nothing", "");
+    assertTrue(profile.isEmpty());
+  }
+
+  @Test
+  public void invalidClassEntry() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "a.b.C");
+  }
+
+  @Test
+  public void invalidMethodEntry() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(La/b/D)V");
+  }
+
+  @Test
+  public void invalidPrimitiveParameter() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(IQ)V");
+  }
+
+  @Test
+  public void voidParameter() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(V)V");
+  }
+
+  @Test
+  public void invalidReturnType() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(I)Q");
+  }
+
+  @Test
+  public void voidArrayReturnType() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(I)[V");
+  }
+
+  @Test
+  public void multipleReturnTypes() {
+    thrown.expect(CompilationError.class);
+    parse(new DexItemFactory(), "HSPLa/b/C;->run(I)II");
+  }
+}